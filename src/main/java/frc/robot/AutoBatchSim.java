@@ -0,0 +1,297 @@
+package frc.robot;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.simulation.DriverStationSim;
+import edu.wpi.first.wpilibj.simulation.SimHooks;
+import edu.wpi.first.wpilibj2.command.Command;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+import org.littletonrobotics.junction.Logger;
+
+/**
+ * Runs PathPlanner autos in simulation as fast as the CPU allows, without a GUI or driver station,
+ * and reports how each one went.
+ *
+ * <p>WPILib allows one robot per process, so {@link #main} starts a worker process per auto on the
+ * same classpath, running as many at once as there are cores. Each worker boots the normal robot
+ * in simulation with the auto name in the {@value #autoProperty} system property. The robot then
+ * turns off loop timing and pauses the HAL clock, and {@link Worker#periodic()} steps the clock by
+ * exactly one loop period at the end of every loop. The worker enables autonomous, runs the auto
+ * until it ends or {@link #timeoutSecs} pass, prints one result line, and exits. Each worker also
+ * writes a log to {@value #logDirectory} for viewing in AdvantageScope.
+ *
+ * <p>For each auto, the report has the time to complete, the distance between the true pose and
+ * the path target, the distance between the true pose and the pose estimate, and percentiles of
+ * the wall clock time each main loop took.
+ */
+public final class AutoBatchSim {
+  /** System property holding the auto a worker process runs. */
+  public static final String autoProperty = "autobatch.auto";
+
+  /** Longest simulated time an auto may run before it is reported as timed out. */
+  public static final double timeoutSecs = 20.0;
+
+  /** System property holding the log file name of a worker, without the extension. */
+  public static final String logNameProperty = "autobatch.logname";
+
+  /** Folder the workers write their logs to. */
+  public static final String logDirectory = "logs/autobatch";
+
+  /** Prefix of the line a worker prints its result on, see {@link Worker}. */
+  static final String resultPrefix = "AUTOBATCH_RESULT ";
+  private static final double loopPeriodSecs = 0.02;
+
+  private AutoBatchSim() {}
+
+  /**
+   * Runs every auto in the deploy directory, or only the autos named in the arguments, and prints
+   * a summary table.
+   */
+  public static void main(String... args) throws Exception {
+    List<String> autoNames = new ArrayList<>(Arrays.asList(args));
+    if (autoNames.isEmpty()) {
+      File[] autoFiles = new File("src/main/deploy/pathplanner/autos").listFiles();
+      for (File file : autoFiles != null ? autoFiles : new File[0]) {
+        if (file.getName().endsWith(".auto")) {
+          autoNames.add(file.getName().substring(0, file.getName().length() - ".auto".length()));
+        }
+      }
+      autoNames.sort(null);
+    }
+    if (autoNames.isEmpty()) {
+      System.out.println("No autos found in src/main/deploy/pathplanner/autos");
+      return;
+    }
+
+    // Run the workers in parallel, each in its own process
+    int threadCount = Math.min(autoNames.size(), Runtime.getRuntime().availableProcessors());
+    ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+    long startNanos = System.nanoTime();
+    List<Future<String>> results = new ArrayList<>();
+    for (String autoName : autoNames) {
+      results.add(executor.submit(() -> runWorker(autoName)));
+    }
+    System.out.println(
+        String.format(
+            Locale.ROOT,
+            "%-24s %8s %8s %8s %8s %8s %8s %8s %8s",
+            "Auto",
+            "TimeS",
+            "TrackAvg",
+            "TrackMax",
+            "EstAvg",
+            "EstMax",
+            "LoopP50",
+            "LoopP95",
+            "LoopP99"));
+    for (Future<String> result : results) {
+      System.out.println(result.get());
+    }
+    executor.shutdown();
+    System.out.println(
+        String.format(
+            Locale.ROOT,
+            "%d autos in %.1f s wall time, errors in meters, loop times in ms",
+            autoNames.size(),
+            (System.nanoTime() - startNanos) / 1e9));
+  }
+
+  /** Runs one auto in a worker process and returns its row of the summary table. */
+  private static String runWorker(String autoName) throws IOException, InterruptedException {
+    String result = runProcess(Main.class, List.of(autoProperty + "=" + autoName), resultPrefix);
+    if (result == null) {
+      return String.format(Locale.ROOT, "%-24s failed", autoName);
+    }
+    return String.format(Locale.ROOT, "%-24s %s", autoName, result);
+  }
+
+  /**
+   * Runs a class in a new process on the same classpath and native library path, and waits for it
+   * to exit.
+   *
+   * @param mainClass The class whose main method runs.
+   * @param systemProperties System properties for the process, as "key=value".
+   * @param resultPrefix Prefix of the output line holding the result.
+   * @return The rest of the last output line starting with the prefix, or null if there was none.
+   */
+  static String runProcess(Class<?> mainClass, List<String> systemProperties, String resultPrefix)
+      throws IOException, InterruptedException {
+    List<String> command = new ArrayList<>();
+    command.add(ProcessHandle.current().info().command().orElse("java"));
+    for (String property : systemProperties) {
+      command.add("-D" + property);
+    }
+    command.add("-Djava.library.path=" + System.getProperty("java.library.path"));
+    command.add("-cp");
+    command.add(System.getProperty("java.class.path"));
+    command.add(mainClass.getName());
+    ProcessBuilder builder = new ProcessBuilder(command);
+    builder.redirectErrorStream(true);
+    Process process = builder.start();
+
+    // Keep reading so the process never blocks on a full pipe
+    String result = null;
+    try (BufferedReader reader =
+        new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.startsWith(resultPrefix)) {
+          result = line.substring(resultPrefix.length());
+        }
+      }
+    }
+    process.waitFor();
+    return result;
+  }
+
+  /** Returns whether this process is a worker, and the robot should run in batch mode. */
+  public static boolean isWorker() {
+    return System.getProperty(autoProperty) != null;
+  }
+
+  /** Returns the name of the auto this worker runs. */
+  public static String getWorkerAutoName() {
+    return System.getProperty(autoProperty);
+  }
+
+  /** Returns the path of the log this worker writes, named after the auto unless overridden. */
+  public static String getWorkerLogPath() {
+    String logName = System.getProperty(logNameProperty, getWorkerAutoName());
+    return logDirectory + "/" + logName + ".wpilog";
+  }
+
+  /** Runs one auto inside the robot program of a worker process and measures it. */
+  public static class Worker {
+    private final Command auto;
+    private final Supplier<Pose2d> truePose;
+    private final Supplier<Pose2d> estimatedPose;
+    private final Supplier<Pose2d> targetPose;
+
+    private final double[] loopMillis = new double[(int) (timeoutSecs / loopPeriodSecs) + 100];
+    private int loopCount = 0;
+    private long lastLoopNanos = 0;
+    private double startTimestamp = Double.NaN;
+    private double trackingErrorSum = 0.0;
+    private double trackingErrorMax = 0.0;
+    private int trackingSamples = 0;
+    private double estimateErrorSum = 0.0;
+    private double estimateErrorMax = 0.0;
+    private int estimateSamples = 0;
+
+    /**
+     * Creates a worker for an auto.
+     *
+     * @param auto The auto command.
+     * @param truePose Supplier for the pose of the simulated robot.
+     * @param estimatedPose Supplier for the pose estimate.
+     * @param targetPose Supplier for the pose the path follower is aiming for, or null between
+     *     paths.
+     */
+    public Worker(
+        Command auto,
+        Supplier<Pose2d> truePose,
+        Supplier<Pose2d> estimatedPose,
+        Supplier<Pose2d> targetPose) {
+      this.auto = auto;
+      this.truePose = truePose;
+      this.estimatedPose = estimatedPose;
+      this.targetPose = targetPose;
+    }
+
+    /** Pauses the clock and enables autonomous. Must be called from simulationInit. */
+    public void start() {
+      SimHooks.pauseTiming();
+      DriverStationSim.setDsAttached(true);
+      DriverStationSim.setAutonomous(true);
+      DriverStationSim.setEnabled(true);
+      DriverStationSim.notifyNewData();
+    }
+
+    /** Returns the auto command, to schedule from autonomousInit. */
+    public Command getAuto() {
+      return auto;
+    }
+
+    /**
+     * Records this loop, then steps the clock to the next loop. Must be called at the end of every
+     * simulationPeriodic, and exits the process once the auto ends.
+     */
+    public void periodic() {
+      long nanos = System.nanoTime();
+      if (lastLoopNanos != 0 && loopCount < loopMillis.length) {
+        loopMillis[loopCount++] = (nanos - lastLoopNanos) / 1e6;
+      }
+      lastLoopNanos = nanos;
+
+      double timestamp = Timer.getFPGATimestamp();
+      if (auto.isScheduled()) {
+        if (Double.isNaN(startTimestamp)) {
+          startTimestamp = timestamp;
+        }
+        Pose2d pose = truePose.get();
+        Pose2d target = targetPose.get();
+        if (target != null) {
+          double error = pose.getTranslation().getDistance(target.getTranslation());
+          trackingErrorSum += error;
+          trackingErrorMax = Math.max(trackingErrorMax, error);
+          trackingSamples++;
+        }
+        double error = pose.getTranslation().getDistance(estimatedPose.get().getTranslation());
+        estimateErrorSum += error;
+        estimateErrorMax = Math.max(estimateErrorMax, error);
+        estimateSamples++;
+        if (timestamp - startTimestamp > timeoutSecs) {
+          finish(Double.POSITIVE_INFINITY);
+        }
+      } else if (!Double.isNaN(startTimestamp)) {
+        finish(timestamp - startTimestamp);
+      } else if (loopCount >= loopMillis.length) {
+        finish(Double.POSITIVE_INFINITY); // Never started
+      }
+      SimHooks.stepTiming(loopPeriodSecs);
+    }
+
+    /** Prints the result line and exits. */
+    private void finish(double completionSecs) {
+      double[] sortedLoopMillis = Arrays.copyOf(loopMillis, loopCount);
+      Arrays.sort(sortedLoopMillis);
+      System.out.println(
+          resultPrefix
+              + String.format(
+                  Locale.ROOT,
+                  "%8s %8.3f %8.3f %8.3f %8.3f %8.2f %8.2f %8.2f",
+                  Double.isInfinite(completionSecs)
+                      ? "timeout"
+                      : String.format(Locale.ROOT, "%.2f", completionSecs),
+                  trackingSamples > 0 ? trackingErrorSum / trackingSamples : 0.0,
+                  trackingErrorMax,
+                  estimateSamples > 0 ? estimateErrorSum / estimateSamples : 0.0,
+                  estimateErrorMax,
+                  percentile(sortedLoopMillis, 0.50),
+                  percentile(sortedLoopMillis, 0.95),
+                  percentile(sortedLoopMillis, 0.99)));
+      Logger.end();
+      System.exit(0);
+    }
+
+    /** Returns the value at a fraction of the way through sorted values. */
+    private static double percentile(double[] sortedValues, double fraction) {
+      if (sortedValues.length == 0) {
+        return 0.0;
+      }
+      int index = (int) Math.ceil(fraction * sortedValues.length) - 1;
+      return sortedValues[Math.max(0, Math.min(index, sortedValues.length - 1))];
+    }
+  }
+}
@@ -0,0 +1,373 @@
+package frc.robot;
+
+import static frc.robot.subsystems.drive.DriveConstants.*;
+
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.controller.ProfiledPIDController;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import frc.robot.commands.DriveCommands;
+import frc.robot.subsystems.drive.DriveSimulation;
+import frc.robot.subsystems.drive.DriveSimulation.SimModule;
+import frc.robot.subsystems.vision.VisionConstants;
+import frc.robot.util.GainOverrides;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Searches for controller gains by simulating many gain sets in parallel, and prints the gain sets
+ * ranked from best to worst.
+ *
+ * <p>Each scenario tunes a pair of gains:
+ *
+ * <ul>
+ *   <li>"turnStep" turns every module a quarter turn, tuning the Spark turn position loop.
+ *   <li>"driveStep" drives straight ahead from rest, tuning the Spark drive velocity loop.
+ *   <li>"headingStep" turns the robot a quarter turn with the controller from {@link
+ *       DriveCommands#createAngleController()}.
+ *   <li>"auto:Name" runs a PathPlanner auto, tuning the path following gains.
+ * </ul>
+ *
+ * <p>Every simulation runs in its own process, as many at once as there are cores, with the gains
+ * passed in through {@link GainOverrides}. Step scenarios run {@link DriveSimulation} directly for
+ * {@link #stepDurationSecs}, and are ranked by the integral of time-weighted absolute error, which
+ * favors a fast settle without overshoot. Autos run through {@link AutoBatchSim}, and are ranked
+ * by the mean distance from the path target. The search tries {@link #gridPoints} values of each
+ * gain across its range, then a finer grid around the best gain set, {@link #refineRounds} times.
+ * The current gains are always run first, for comparison.
+ *
+ * <p>The simulated modules run the same drive and turn gains as the Sparks, converted to volts.
+ * The motor models are only approximate, so tuned module gains must still be checked on the robot.
+ * The heading and path gains command chassis velocities, so they carry over directly. The elevator
+ * has no simulation yet, so its gains are not covered.
+ */
+public final class GainTuner {
+  /** System property holding the step scenario a worker process runs. */
+  public static final String scenarioProperty = "gaintuner.scenario";
+
+  /** Number of values of each gain tried per round. */
+  public static final int gridPoints = 5;
+
+  /** Number of finer rounds after the first. */
+  public static final int refineRounds = 2;
+
+  /** Number of gain sets printed for each scenario. */
+  public static final int rankedCount = 10;
+
+  /** Simulated time each step scenario runs for. */
+  public static final double stepDurationSecs = 2.0;
+
+  /** Distance from the target that counts as settled, as a fraction of the step. */
+  public static final double settlingBand = 0.02;
+
+  private static final String resultPrefix = "GAINTUNER_RESULT ";
+  private static final String autoPrefix = "auto:";
+
+  /** A gain and the range searched. */
+  private static record Gain(String name, double min, double max) {}
+
+  /** A gain set, or null for the current gains, with its cost and result columns. */
+  private static record Trial(double[] values, double cost, String columns) {}
+
+  private GainTuner() {}
+
+  /** Tunes each scenario named in the arguments, or runs a step scenario in a worker process. */
+  public static void main(String... args) throws Exception {
+    String workerScenario = System.getProperty(scenarioProperty);
+    if (workerScenario != null) {
+      runStepScenario(workerScenario);
+      return;
+    }
+    if (args.length == 0) {
+      System.out.println("Usage: GainTuner <turnStep|driveStep|headingStep|auto:Name>...");
+      return;
+    }
+
+    ExecutorService executor =
+        Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    try {
+      for (String scenario : args) {
+        tune(scenario, getGains(scenario), executor);
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  /** Returns the gains a scenario tunes, with their search ranges. */
+  private static Gain[] getGains(String scenario) {
+    if (scenario.startsWith(autoPrefix)) {
+      return new Gain[] {
+        new Gain("pathTranslationKp", 1.0, 10.0), new Gain("pathRotationKp", 1.0, 10.0)
+      };
+    }
+    switch (scenario) {
+      case "turnStep":
+        return new Gain[] {new Gain("turnKp", 0.5, 10.0), new Gain("turnKd", 0.0, 1.0)};
+      case "driveStep":
+        return new Gain[] {new Gain("driveKp", 0.0005, 0.02), new Gain("driveKd", 0.0, 0.005)};
+      case "headingStep":
+        return new Gain[] {new Gain("angleKp", 1.0, 12.0), new Gain("angleKd", 0.0, 1.0)};
+      default:
+        throw new IllegalArgumentException("Unknown scenario: " + scenario);
+    }
+  }
+
+  /** Searches the gains of one scenario and prints the ranked gain sets. */
+  private static void tune(String scenario, Gain[] gains, ExecutorService executor)
+      throws Exception {
+    long startNanos = System.nanoTime();
+    Trial current = evaluate(scenario, gains, null, 0);
+    List<Trial> trials = new ArrayList<>();
+    Set<String> tried = new HashSet<>();
+    double[] lows = new double[gains.length];
+    double[] highs = new double[gains.length];
+    for (int i = 0; i < gains.length; i++) {
+      lows[i] = gains[i].min();
+      highs[i] = gains[i].max();
+    }
+
+    for (int round = 0; round <= refineRounds; round++) {
+      // Run every new point of this round's grid in parallel
+      List<Future<Trial>> futures = new ArrayList<>();
+      for (double[] values : grid(lows, highs)) {
+        if (tried.add(Arrays.toString(values))) {
+          int runIndex = tried.size();
+          futures.add(executor.submit(() -> evaluate(scenario, gains, values, runIndex)));
+        }
+      }
+      for (Future<Trial> future : futures) {
+        trials.add(future.get());
+      }
+
+      // Narrow the grid to one step either side of the best gain set so far
+      double[] best = trials.stream().min(Comparator.comparingDouble(Trial::cost)).get().values();
+      for (int i = 0; i < gains.length; i++) {
+        double step = (highs[i] - lows[i]) / (gridPoints - 1);
+        lows[i] = Math.max(gains[i].min(), best[i] - step);
+        highs[i] = Math.min(gains[i].max(), best[i] + step);
+      }
+    }
+    trials.sort(Comparator.comparingDouble(Trial::cost));
+
+    // Print the current gains, then the best gain sets
+    StringBuilder header = new StringBuilder(String.format(Locale.ROOT, "%-8s", "Rank"));
+    for (Gain gain : gains) {
+      header.append(String.format(Locale.ROOT, " %18s", gain.name()));
+    }
+    header.append(
+        scenario.startsWith(autoPrefix)
+            ? String.format(Locale.ROOT, " %8s %8s %8s", "TimeS", "TrackAvg", "TrackMax")
+            : String.format(
+                Locale.ROOT, " %10s %8s %9s %10s", "ITAE", "SettleS", "Overshoot", "RmsError"));
+    System.out.println();
+    System.out.println(scenario);
+    System.out.println(header);
+    System.out.println(formatRow("Current", current));
+    for (int i = 0; i < Math.min(rankedCount, trials.size()); i++) {
+      System.out.println(formatRow(Integer.toString(i + 1), trials.get(i)));
+    }
+    System.out.println(
+        String.format(
+            Locale.ROOT,
+            "%d gain sets in %.1f s wall time",
+            trials.size() + 1,
+            (System.nanoTime() - startNanos) / 1e9));
+  }
+
+  /** Returns every combination of evenly spaced values between the lows and highs. */
+  private static List<double[]> grid(double[] lows, double[] highs) {
+    List<double[]> points = new ArrayList<>();
+    int count = (int) Math.pow(gridPoints, lows.length);
+    for (int index = 0; index < count; index++) {
+      double[] values = new double[lows.length];
+      int remainder = index;
+      for (int i = 0; i < lows.length; i++) {
+        values[i] = lows[i] + (highs[i] - lows[i]) * (remainder % gridPoints) / (gridPoints - 1);
+        remainder /= gridPoints;
+      }
+      points.add(values);
+    }
+    return points;
+  }
+
+  /**
+   * Simulates a scenario with a gain set in a worker process.
+   *
+   * @param values Gain values in the order of the gains, or null for the current gains.
+   * @param runIndex Number that tells the logs of an auto's runs apart.
+   */
+  private static Trial evaluate(String scenario, Gain[] gains, double[] values, int runIndex)
+      throws Exception {
+    List<String> properties = new ArrayList<>();
+    for (int i = 0; values != null && i < gains.length; i++) {
+      properties.add(GainOverrides.propertyPrefix + gains[i].name() + "=" + values[i]);
+    }
+
+    if (scenario.startsWith(autoPrefix)) {
+      String autoName = scenario.substring(autoPrefix.length());
+      properties.add(AutoBatchSim.autoProperty + "=" + autoName);
+      properties.add(AutoBatchSim.logNameProperty + "=" + autoName + "-tune" + runIndex);
+      String result = AutoBatchSim.runProcess(Main.class, properties, AutoBatchSim.resultPrefix);
+      if (result == null) {
+        return new Trial(values, Double.POSITIVE_INFINITY, "failed");
+      }
+      // Completion time, then mean and max tracking error
+      String[] fields = result.trim().split("\\s+");
+      double trackingErrorAvg = Double.parseDouble(fields[1]);
+      return new Trial(
+          values,
+          fields[0].equals("timeout") ? Double.POSITIVE_INFINITY : trackingErrorAvg,
+          String.format(
+              Locale.ROOT,
+              "%8s %8.3f %8.3f",
+              fields[0],
+              trackingErrorAvg,
+              Double.parseDouble(fields[2])));
+    }
+
+    properties.add(scenarioProperty + "=" + scenario);
+    String result = AutoBatchSim.runProcess(GainTuner.class, properties, resultPrefix);
+    if (result == null) {
+      return new Trial(values, Double.POSITIVE_INFINITY, "failed");
+    }
+    // Time-weighted error, settling time, overshoot, and RMS error
+    String[] fields = result.trim().split("\\s+");
+    double itae = Double.parseDouble(fields[0]);
+    return new Trial(
+        values,
+        itae,
+        String.format(
+            Locale.ROOT,
+            "%10.5f %8.3f %9.3f %10.5f",
+            itae,
+            Double.parseDouble(fields[1]),
+            Double.parseDouble(fields[2]),
+            Double.parseDouble(fields[3])));
+  }
+
+  /** Formats one row of the ranking. */
+  private static String formatRow(String rank, Trial trial) {
+    StringBuilder row = new StringBuilder(String.format(Locale.ROOT, "%-8s", rank));
+    for (int i = 0; trial.values() != null && i < trial.values().length; i++) {
+      row.append(String.format(Locale.ROOT, " %18.5f", trial.values()[i]));
+    }
+    if (trial.values() == null) {
+      row.append(String.format(Locale.ROOT, " %18s %18s", "(as written)", ""));
+    }
+    return row.append(" ").append(trial.columns()).toString();
+  }
+
+  /** Runs a step scenario with the gains of this process, prints the result line, and exits. */
+  private static void runStepScenario(String scenario) {
+    HAL.initialize(500, 0);
+    DriveSimulation simulation =
+        new DriveSimulation(
+            new Pose2d(
+                VisionConstants.aprilTagLayout.getFieldLength() / 2.0,
+                VisionConstants.aprilTagLayout.getFieldWidth() / 2.0,
+                Rotation2d.kZero));
+    ProfiledPIDController angleController = DriveCommands.createAngleController();
+    angleController.reset(simulation.getHeadingRad());
+
+    // Targets are steps from the resting state, so every response starts at zero
+    double target;
+    switch (scenario) {
+      case "turnStep":
+      case "headingStep":
+        target = Math.PI / 2.0;
+        break;
+      case "driveStep":
+        target = 0.8 * maxSpeedMetersPerSec;
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown scenario: " + scenario);
+    }
+
+    int samplesPerCycle = DriveSimulation.samplesPerCycle;
+    double sampleSecs = DriveSimulation.loopPeriodSecs / samplesPerCycle;
+    int loopCount = (int) Math.round(stepDurationSecs / DriveSimulation.loopPeriodSecs);
+    double[] response = new double[loopCount * samplesPerCycle];
+    double lastDrivePositionRad = 0.0;
+    for (int loop = 0; loop < loopCount; loop++) {
+      double omega = angleController.calculate(simulation.getHeadingRad(), target);
+      for (int i = 0; i < 4; i++) {
+        SimModule module = simulation.getModule(i);
+        switch (scenario) {
+          case "turnStep":
+            module.setTurnPosition(target);
+            module.setDriveVelocity(0.0);
+            break;
+          case "driveStep":
+            module.setTurnPosition(0.0);
+            module.setDriveVelocity(target / wheelRadiusMeters);
+            break;
+          default:
+            // Point each wheel along its circle, and reverse it rather than turning around
+            double x = moduleTranslations[i].getX();
+            double y = moduleTranslations[i].getY();
+            double speed =
+                MathUtil.clamp(
+                    omega * Math.hypot(x, y), -maxSpeedMetersPerSec, maxSpeedMetersPerSec);
+            module.setTurnPosition(Math.atan2(x, -y));
+            module.setDriveVelocity(speed / wheelRadiusMeters);
+            break;
+        }
+      }
+      simulation.update();
+
+      for (int sample = 0; sample < samplesPerCycle; sample++) {
+        double turnPositionRad = 0.0;
+        double drivePositionRad = 0.0;
+        for (int i = 0; i < 4; i++) {
+          turnPositionRad += simulation.getModule(i).getSampleTurnPositionsRad()[sample] / 4.0;
+          drivePositionRad += simulation.getModule(i).getSampleDrivePositionsRad()[sample] / 4.0;
+        }
+        double driveVelocityMetersPerSec =
+            (drivePositionRad - lastDrivePositionRad) * wheelRadiusMeters / sampleSecs;
+        lastDrivePositionRad = drivePositionRad;
+        response[loop * samplesPerCycle + sample] =
+            switch (scenario) {
+              case "turnStep" -> turnPositionRad;
+              case "driveStep" -> driveVelocityMetersPerSec;
+              default -> simulation.getSampleHeadingsRad()[sample];
+            };
+      }
+    }
+
+    // Measure the response against the target
+    double itae = 0.0;
+    double sumSquaredError = 0.0;
+    double overshoot = 0.0;
+    double settlingSecs = 0.0;
+    for (int i = 0; i < response.length; i++) {
+      double timeSecs = (i + 1) * sampleSecs;
+      double error = target - response[i];
+      itae += timeSecs * Math.abs(error) * sampleSecs;
+      sumSquaredError += error * error;
+      overshoot = Math.max(overshoot, -error);
+      if (Math.abs(error) > settlingBand * target) {
+        settlingSecs = i == response.length - 1 ? Double.POSITIVE_INFINITY : timeSecs;
+      }
+    }
+    System.out.println(
+        resultPrefix
+            + String.format(
+                Locale.ROOT,
+                "%.6f %.4f %.4f %.6f",
+                itae / target,
+                settlingSecs,
+                overshoot / target,
+                Math.sqrt(sumSquaredError / response.length)));
+    System.exit(0);
+  }
+}
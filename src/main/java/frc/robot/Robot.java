@@ -15,6 +15,8 @@ package frc.robot;
 
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import frc.robot.util.CoalescingWriter;
+import frc.robot.util.LogPolicy;
 import org.littletonrobotics.junction.LogFileUtil;
 import org.littletonrobotics.junction.LoggedRobot;
 import org.littletonrobotics.junction.Logger;
@@ -32,6 +34,7 @@ import org.littletonrobotics.urcl.URCL;
 public class Robot extends LoggedRobot {
   private Command autonomousCommand;
   private RobotContainer robotContainer;
+  private AutoBatchSim.Worker autoBatchWorker = null;
 
   public Robot() {
     // Record metadata
@@ -61,6 +64,13 @@ public class Robot extends LoggedRobot {
         break;
 
       case SIM:
+        if (AutoBatchSim.isWorker()) {
+          // Running one auto of a batch, as fast as possible, log to a file
+          setUseTiming(false);
+          Logger.addDataReceiver(new WPILOGWriter(AutoBatchSim.getWorkerLogPath()));
+          break;
+        }
+
         // Running a physics simulator, log to NT
         Logger.addDataReceiver(new NT4Publisher());
         break;
@@ -74,6 +84,9 @@ public class Robot extends LoggedRobot {
         break;
     }
 
+    // Measure how much each part of the log adds, see LogPolicy
+    Logger.addDataReceiver(LogPolicy.getBudget());
+
     // Initialize URCL
     Logger.registerURCL(URCL.startExternal());
 
@@ -83,6 +96,9 @@ public class Robot extends LoggedRobot {
     // Instantiate our RobotContainer. This will perform all our button bindings,
     // and put our autonomous chooser on the dashboard.
     robotContainer = new RobotContainer();
+    if (Constants.currentMode == Constants.Mode.SIM && AutoBatchSim.isWorker()) {
+      autoBatchWorker = robotContainer.createAutoBatchWorker(AutoBatchSim.getWorkerAutoName());
+    }
   }
 
   /** This function is called periodically during all modes. */
@@ -96,8 +112,11 @@ public class Robot extends LoggedRobot {
     // newly-scheduled commands, running already-scheduled commands, removing
     // finished or interrupted commands, and running subsystem periodic() methods.
     // This must be called from the robot's periodic block in order for anything in
-    // the Command-based framework to work.
+    // the Command-based framework to work. The log policy is updated first, so every
+    // subsystem records under the same mode.
+    LogPolicy.periodic();
     CommandScheduler.getInstance().run();
+    CoalescingWriter.logAll();
 
     // Return to non-RT thread priority (do not modify the first argument)
     // Threads.setCurrentThreadPriority(false, 10);
@@ -114,7 +133,8 @@ public class Robot extends LoggedRobot {
   /** This autonomous runs the autonomous command selected by your {@link RobotContainer} class. */
   @Override
   public void autonomousInit() {
-    autonomousCommand = robotContainer.getAutonomousCommand();
+    autonomousCommand =
+        autoBatchWorker != null ? autoBatchWorker.getAuto() : robotContainer.getAutonomousCommand();
 
     // schedule the autonomous command (example)
     if (autonomousCommand != null) {
@@ -155,9 +175,18 @@ public class Robot extends LoggedRobot {
 
   /** This function is called once when the robot is first started up. */
   @Override
-  public void simulationInit() {}
+  public void simulationInit() {
+    if (autoBatchWorker != null) {
+      autoBatchWorker.start();
+    }
+  }
 
   /** This function is called periodically whilst in simulation. */
   @Override
-  public void simulationPeriodic() {}
+  public void simulationPeriodic() {
+    robotContainer.updateSimulation();
+    if (autoBatchWorker != null) {
+      autoBatchWorker.periodic();
+    }
+  }
 }
@@ -27,14 +27,23 @@ import frc.robot.subsystems.CrateIntake.CrateIntake;
 import frc.robot.subsystems.CrateIntake.CrateIntakeConstants.CrateIntakeState;
 import frc.robot.subsystems.CrateIntake.CrateIntakeIOReal;
 import frc.robot.subsystems.drive.Drive;
+import frc.robot.subsystems.drive.DriveSimulation;
 import frc.robot.subsystems.drive.GyroIO;
 import frc.robot.subsystems.drive.GyroIOPigeon2;
+import frc.robot.subsystems.drive.GyroIOSim;
 import frc.robot.subsystems.drive.ModuleIO;
 import frc.robot.subsystems.drive.ModuleIOSim;
 import frc.robot.subsystems.drive.ModuleIOSpark;
 import frc.robot.subsystems.elevator.Elevator;
 import frc.robot.subsystems.elevator.ElevatorConstants.ElevatorStates;
 import frc.robot.subsystems.elevator.ElevatorIOReal;
+import frc.robot.subsystems.vision.Vision;
+import frc.robot.subsystems.vision.VisionConstants;
+import frc.robot.subsystems.vision.VisionIO;
+import frc.robot.subsystems.vision.VisionIOSim;
+import frc.robot.util.CanBusPlanner;
+import frc.robot.util.DeviceConfigurator;
+import org.littletonrobotics.junction.Logger;
 import org.littletonrobotics.junction.networktables.LoggedDashboardChooser;
 
 /**
@@ -49,8 +58,10 @@ import org.littletonrobotics.junction.networktables.LoggedDashboardChooser;
 public class RobotContainer {
     // Subsystems
     private final Drive drive;
+    private final Vision vision;
     private final Elevator elevator;
     private final CrateIntake crateIntake;
+    private DriveSimulation driveSimulation = null; // Only in simulation
 
     // Controller
     private final CommandXboxController primaryController = new CommandXboxController(0);
@@ -73,19 +84,36 @@ public class RobotContainer {
                         new ModuleIOSpark(2, true), // Back Left - SparkMax
                         new ModuleIOSpark(3, false)); // Back Right - SparkFlex
 
+                // No coprocessor is installed yet, so the cameras have no hardware IO
+                vision = new Vision(
+                        drive::addVisionMeasurement,
+                        new VisionIO() {
+                        },
+                        new VisionIO() {
+                        });
+
                 elevator = Elevator.initialize(new ElevatorIOReal());
                 crateIntake = CrateIntake.initialize(new CrateIntakeIOReal());
                 break;
 
             case SIM:
                 // Sim robot, instantiate physics sim IO implementations
+                driveSimulation = new DriveSimulation(new Pose2d(3.0, 3.0, new Rotation2d()));
                 drive = new Drive(
-                        new GyroIO() {
-                        },
-                        new ModuleIOSim(),
-                        new ModuleIOSim(),
-                        new ModuleIOSim(),
-                        new ModuleIOSim());
+                        new GyroIOSim(driveSimulation),
+                        new ModuleIOSim(driveSimulation, 0),
+                        new ModuleIOSim(driveSimulation, 1),
+                        new ModuleIOSim(driveSimulation, 2),
+                        new ModuleIOSim(driveSimulation, 3));
+                drive.setPoseResetListener(driveSimulation::setPose);
+
+                // Cameras see the field from the true pose, not the estimate
+                vision = new Vision(
+                        drive::addVisionMeasurement,
+                        new VisionIOSim(
+                                VisionConstants.robotToCameras[0], driveSimulation::getPose),
+                        new VisionIOSim(
+                                VisionConstants.robotToCameras[1], driveSimulation::getPose));
 
                 elevator = Elevator.initialize(new ElevatorIOReal());
                 crateIntake = CrateIntake.initialize(new CrateIntakeIOReal());
@@ -105,12 +133,29 @@ public class RobotContainer {
                         new ModuleIO() {
                         });
 
+                vision = new Vision(
+                        drive::addVisionMeasurement,
+                        new VisionIO() {
+                        },
+                        new VisionIO() {
+                        });
+
                 elevator = Elevator.initialize(new ElevatorIOReal());
                 crateIntake = CrateIntake.initialize(new CrateIntakeIOReal());
 
                 break;
         }
 
+        // Wait for every device to be configured, since applying a config resets its status rates
+        DeviceConfigurator.getInstance().awaitAll();
+        if (Constants.currentMode == Constants.Mode.REAL) {
+            // Every CAN device is registered, so assign status rates within the bus budget
+            CanBusPlanner.getInstance().planAndApply();
+        }
+
+        // Start sampling only now, so odometry never sees the encoders before they are seeded
+        drive.startOdometry();
+
         // Set up auto routines
         autoChooser = new LoggedDashboardChooser<>("Auto Choices", AutoBuilder.buildAutoChooser());
 
@@ -178,4 +223,21 @@ public class RobotContainer {
     public Command getAutonomousCommand() {
         return autoChooser.get();
     }
+
+    /** Creates the worker that runs an auto in a batch simulation, see {@link AutoBatchSim}. */
+    public AutoBatchSim.Worker createAutoBatchWorker(String autoName) {
+        return new AutoBatchSim.Worker(
+                AutoBuilder.buildAuto(autoName),
+                driveSimulation::getPose,
+                drive::getEstimatedPose,
+                drive::getTrajectorySetpoint);
+    }
+
+    /** Advances the drivetrain physics. Called once per loop in simulation. */
+    public void updateSimulation() {
+        if (driveSimulation != null) {
+            driveSimulation.update();
+            Logger.recordOutput("FieldSimulation/RobotPose", driveSimulation.getPose());
+        }
+    }
 }
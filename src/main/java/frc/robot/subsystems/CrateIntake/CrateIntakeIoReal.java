@@ -1,15 +1,22 @@
 package frc.robot.subsystems.CrateIntake;
 
+import static frc.robot.util.SparkUtil.tryUntilOk;
+
 import com.revrobotics.spark.SparkBase.PersistMode;
 import com.revrobotics.spark.SparkBase.ResetMode;
 import com.revrobotics.spark.SparkLowLevel.MotorType;
 import com.revrobotics.spark.SparkMax;
 import com.revrobotics.spark.config.SparkBaseConfig.IdleMode;
 import com.revrobotics.spark.config.SparkMaxConfig;
+import frc.robot.util.CanBusPlanner;
+import frc.robot.util.CoalescingWriter;
+import frc.robot.util.DeviceConfigurator;
 
 public class CrateIntakeIOReal implements CrateIntakeIO {
   private final SparkMax leftMotor;
   private final SparkMax rightMotor;
+  private final CoalescingWriter leftWriter = new CoalescingWriter("CrateIntake/Left");
+  private final CoalescingWriter rightWriter = new CoalescingWriter("CrateIntake/Right");
 
   public CrateIntakeIOReal() {
     leftMotor = new SparkMax(CrateIntakeConstants.leftIntakeCanId, MotorType.kBrushless);
@@ -21,9 +28,32 @@ public class CrateIntakeIOReal implements CrateIntakeIO {
     SparkMaxConfig rightConfig = new SparkMaxConfig();
     rightConfig.idleMode(IdleMode.kBrake).smartCurrentLimit(CrateIntakeConstants.motorLimit);
 
-    leftMotor.configure(leftConfig, ResetMode.kResetSafeParameters, PersistMode.kPersistParameters);
-    rightMotor.configure(
-        rightConfig, ResetMode.kResetSafeParameters, PersistMode.kPersistParameters);
+    DeviceConfigurator configurator = DeviceConfigurator.getInstance();
+    configurator.configureSpark("CrateIntake/Left", leftMotor, leftConfig);
+    configurator.configureSpark("CrateIntake/Right", rightMotor, rightConfig);
+
+    // Request status rates, applied once every device is registered
+    requestStatusRates("CrateIntake/Left", leftMotor);
+    requestStatusRates("CrateIntake/Right", rightMotor);
+  }
+
+  private static void requestStatusRates(String name, SparkMax motor) {
+    CanBusPlanner planner = CanBusPlanner.getInstance();
+    var velocityRate = planner.request(name + "/Velocity", 10.0, 50.0);
+    planner.addFixedLoad(name + "/Setpoint", 50.0);
+    planner.addApplier(
+        () -> {
+          SparkMaxConfig signalsConfig = new SparkMaxConfig();
+          signalsConfig.signals.primaryEncoderVelocityPeriodMs(velocityRate.getAssignedPeriodMs());
+          tryUntilOk(
+              motor,
+              5,
+              () ->
+                  motor.configure(
+                      signalsConfig,
+                      ResetMode.kNoResetSafeParameters,
+                      PersistMode.kNoPersistParameters));
+        });
   }
 
   @Override
@@ -34,7 +64,11 @@ public class CrateIntakeIOReal implements CrateIntakeIO {
 
   @Override
   public void setMotorspeed(double speed) {
-    rightMotor.set(speed);
-    leftMotor.set(speed);
+    if (rightWriter.shouldWrite(0, speed, 0.0)) {
+      rightMotor.set(speed);
+    }
+    if (leftWriter.shouldWrite(0, speed, 0.0)) {
+      leftMotor.set(speed);
+    }
   }
 }
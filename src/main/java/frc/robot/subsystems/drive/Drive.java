@@ -25,13 +25,9 @@ import edu.wpi.first.hal.FRCNetComm.tInstances;
 import edu.wpi.first.hal.FRCNetComm.tResourceType;
 import edu.wpi.first.hal.HAL;
 import edu.wpi.first.math.Matrix;
-import edu.wpi.first.math.estimator.SwerveDrivePoseEstimator;
 import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.math.geometry.Rotation2d;
-import edu.wpi.first.math.geometry.Twist2d;
 import edu.wpi.first.math.kinematics.ChassisSpeeds;
-import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
-import edu.wpi.first.math.kinematics.SwerveModulePosition;
 import edu.wpi.first.math.kinematics.SwerveModuleState;
 import edu.wpi.first.math.numbers.N1;
 import edu.wpi.first.math.numbers.N3;
@@ -39,19 +35,22 @@ import edu.wpi.first.wpilibj.Alert;
 import edu.wpi.first.wpilibj.Alert.AlertType;
 import edu.wpi.first.wpilibj.DriverStation;
 import edu.wpi.first.wpilibj.DriverStation.Alliance;
+import edu.wpi.first.wpilibj.RobotController;
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
 import edu.wpi.first.wpilibj2.command.sysid.SysIdRoutine;
 import frc.robot.Constants;
 import frc.robot.Constants.Mode;
 import frc.robot.util.LocalADStarAK;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import frc.robot.util.LogPolicy;
+import frc.robot.util.LogPolicy.Tier;
+import frc.robot.util.TimingHistogram;
+import java.util.Optional;
+import java.util.function.Consumer;
 import org.littletonrobotics.junction.AutoLogOutput;
 import org.littletonrobotics.junction.Logger;
 
 public class Drive extends SubsystemBase {
-  static final Lock odometryLock = new ReentrantLock();
   private final GyroIO gyroIO;
   private final GyroIOInputsAutoLogged gyroInputs = new GyroIOInputsAutoLogged();
   private final Module[] modules = new Module[4]; // FL, FR, BL, BR
@@ -59,17 +58,63 @@ public class Drive extends SubsystemBase {
   private final Alert gyroDisconnectedAlert =
       new Alert("Disconnected gyro, using kinematics as fallback.", AlertType.kError);
 
-  private SwerveDriveKinematics kinematics = new SwerveDriveKinematics(moduleTranslations);
-  private Rotation2d rawGyroRotation = new Rotation2d();
-  private SwerveModulePosition[] lastModulePositions = // For delta tracking
-      new SwerveModulePosition[] {
-        new SwerveModulePosition(),
-        new SwerveModulePosition(),
-        new SwerveModulePosition(),
-        new SwerveModulePosition()
-      };
-  private SwerveDrivePoseEstimator poseEstimator =
-      new SwerveDrivePoseEstimator(kinematics, rawGyroRotation, lastModulePositions, new Pose2d());
+  private final DriveKinematics kinematics = new DriveKinematics(moduleTranslations);
+  private final DriveSetpointGenerator setpointGenerator =
+      new DriveSetpointGenerator(moduleTranslations);
+  private final OdometryFusion odometryFusion = new OdometryFusion();
+  private final DrivePoseEstimator poseEstimator =
+      new DrivePoseEstimator(
+          moduleTranslations,
+          odometryFrequency,
+          new double[] {0.1, 0.1, 0.1},
+          new double[] {0.9, 0.9, 0.9});
+  private final double[] sampleDistancesMeters = new double[4];
+  private final double[] sampleAnglesRad = new double[4];
+  private final double[] sampledPose = new double[3];
+  private final double[] modulePriorWeights = new double[4];
+  private final LiveOdometry liveOdometry;
+  private final DriveControlLoop controlLoop;
+  private final TimingHistogram inputReadHistogram = new TimingHistogram(20, 100);
+  private final double[] anchorPose = new double[3];
+  private final double[] livePose = new double[3];
+  private Pose2d livePoseObject = Pose2d.kZero;
+  private Consumer<Pose2d> poseResetListener = (pose) -> {};
+  private Pose2d trajectorySetpoint = null;
+
+  // Kinematics buffers, reused every cycle
+  private final double[] requestedSpeeds = new double[3];
+  private final ChassisSpeeds discreteSpeeds = new ChassisSpeeds();
+  private final ChassisSpeeds limitedSpeeds = new ChassisSpeeds();
+  private final SwerveModuleState[] setpointStates = new SwerveModuleState[4];
+  private final SwerveModuleState[] measuredStates = new SwerveModuleState[4];
+  private final double[] measuredModuleSpeeds = new double[4];
+  private final double[] measuredModuleAngles = new double[4];
+  private final double[] measuredSpeeds = new double[3];
+  private final double[] zeroSpeeds = new double[4];
+  private final double[] xAnglesRad = new double[4];
+  private final ChassisSpeeds measuredChassisSpeeds = new ChassisSpeeds();
+
+  // Outputs recorded according to the log policy
+  private final LogPolicy.Output setpointsOutput =
+      LogPolicy.output("SwerveStates/Setpoints", Tier.DEBUG);
+  private final LogPolicy.Output optimizedSetpointsOutput =
+      LogPolicy.output("SwerveStates/SetpointsOptimized", Tier.DEBUG);
+  private final LogPolicy.Output measuredStatesOutput =
+      LogPolicy.output("SwerveStates/Measured", Tier.DEBUG);
+  private final LogPolicy.Output chassisSetpointsOutput =
+      LogPolicy.output("SwerveChassisSpeeds/Setpoints", Tier.DEBUG);
+  private final LogPolicy.Output limitedSetpointsOutput =
+      LogPolicy.output("SwerveChassisSpeeds/SetpointsLimited", Tier.VERBOSE);
+  private final LogPolicy.Output measuredSpeedsOutput =
+      LogPolicy.output("SwerveChassisSpeeds/Measured", Tier.DEBUG);
+  private final LogPolicy.Output liveRobotOutput =
+      LogPolicy.output("Odometry/LiveRobot", Tier.DEBUG);
+  private final LogPolicy.Output moduleWeightsOutput =
+      LogPolicy.output("Odometry/ModuleWeights", Tier.VERBOSE, 10.0);
+  private final LogPolicy.Output slipExcludedSamplesOutput =
+      LogPolicy.output("Odometry/SlipExcludedSamples", Tier.VERBOSE, 5.0);
+  private final LogPolicy.Output inputReadDurationOutput =
+      LogPolicy.output("Drive/InputReadDuration", Tier.VERBOSE, 2.0);
 
   public Drive(
       GyroIO gyroIO,
@@ -78,25 +123,39 @@ public class Drive extends SubsystemBase {
       ModuleIO blModuleIO,
       ModuleIO brModuleIO) {
     this.gyroIO = gyroIO;
+    for (int i = 0; i < 4; i++) {
+      setpointStates[i] = new SwerveModuleState();
+      measuredStates[i] = new SwerveModuleState();
+    }
     modules[0] = new Module(flModuleIO, 0);
     modules[1] = new Module(frModuleIO, 1);
     modules[2] = new Module(blModuleIO, 2);
     modules[3] = new Module(brModuleIO, 3);
+    poseEstimator.setSlipAware(slipAwareOdometry);
+    liveOdometry = new LiveOdometry(modules, moduleTranslations);
+    controlLoop = new DriveControlLoop(modules, liveOdometry);
+    if (liveOdometryPose || driveControlThread) {
+      SparkOdometryThread.getInstance().addSampleListener(liveOdometry::onSample);
+    }
+    if (driveControlThread) {
+      // Runs after the live odometry, so each output uses the pose from the same sample
+      SparkOdometryThread.getInstance().addSampleListener(controlLoop::onSample);
+    }
 
     // Usage reporting for swerve template
     HAL.report(tResourceType.kResourceType_RobotDrive, tInstances.kRobotDriveSwerve_AdvantageKit);
 
-    // Start odometry thread
-    SparkOdometryThread.getInstance().start();
-
     // Configure AutoBuilder for PathPlanner
     AutoBuilder.configure(
         this::getPose,
         this::setPose,
         this::getChassisSpeeds,
         this::runVelocity,
-        new PPHolonomicDriveController(
-            new PIDConstants(5.0, 0.0, 0.0), new PIDConstants(5.0, 0.0, 0.0)),
+        driveControlThread
+            ? controlLoop
+            : new PPHolonomicDriveController(
+                new PIDConstants(pathTranslationKp, 0.0, 0.0),
+                new PIDConstants(pathRotationKp, 0.0, 0.0)),
         ppConfig,
         () -> DriverStation.getAlliance().orElse(Alliance.Blue) == Alliance.Red,
         this);
@@ -105,10 +164,14 @@ public class Drive extends SubsystemBase {
         (activePath) -> {
           Logger.recordOutput(
               "Odometry/Trajectory", activePath.toArray(new Pose2d[activePath.size()]));
+          if (activePath.isEmpty()) {
+            trajectorySetpoint = null;
+          }
         });
     PathPlannerLogging.setLogTargetPoseCallback(
         (targetPose) -> {
           Logger.recordOutput("Odometry/TrajectorySetpoint", targetPose);
+          trajectorySetpoint = targetPose;
         });
 
     // Configure SysId
@@ -123,15 +186,32 @@ public class Drive extends SubsystemBase {
                 (voltage) -> runCharacterization(voltage.in(Volts)), null, this));
   }
 
+  /**
+   * Starts the odometry threads. Must be called once every device is configured, so that no sample
+   * is taken before the encoders are zeroed and seeded.
+   */
+  public void startOdometry() {
+    SparkOdometryThread.getInstance().start();
+    PhoenixOdometryThread.getInstance().start();
+  }
+
   @Override
   public void periodic() {
-    odometryLock.lock(); // Prevents odometry updates while reading data
+    SparkOdometryThread.getInstance().latchSamples(); // All IO layers read the same samples
+    PhoenixOdometryThread.getInstance().latchSamples();
+    SparkOdometryThread.getInstance().logStatistics();
+    PhoenixOdometryThread.getInstance().logStatistics();
+    long readStartMicros = RobotController.getFPGATime();
+    PhoenixOdometryThread.getInstance().refreshLoopSignals();
     gyroIO.updateInputs(gyroInputs);
     Logger.processInputs("Drive/Gyro", gyroInputs);
     for (var module : modules) {
       module.periodic();
     }
-    odometryLock.unlock();
+    inputReadHistogram.record(RobotController.getFPGATime() - readStartMicros);
+    if (inputReadDurationOutput.shouldRecord()) {
+      inputReadHistogram.log(inputReadDurationOutput.getKey());
+    }
 
     // Stop moving when disabled
     if (DriverStation.isDisabled()) {
@@ -140,42 +220,83 @@ public class Drive extends SubsystemBase {
       }
     }
 
-    // Log empty setpoint states when disabled
+    // Log empty setpoint states when disabled, and start from the measured state when enabled
     if (DriverStation.isDisabled()) {
-      Logger.recordOutput("SwerveStates/Setpoints", new SwerveModuleState[] {});
-      Logger.recordOutput("SwerveStates/SetpointsOptimized", new SwerveModuleState[] {});
+      if (setpointsOutput.shouldRecord()) {
+        Logger.recordOutput(setpointsOutput.getKey(), new SwerveModuleState[] {});
+      }
+      if (optimizedSetpointsOutput.shouldRecord()) {
+        Logger.recordOutput(optimizedSetpointsOutput.getKey(), new SwerveModuleState[] {});
+      }
+      resetSetpoint();
+      controlLoop.clearGoal();
+    }
+
+    // Merge module and gyro samples onto a common timeline
+    for (int moduleIndex = 0; moduleIndex < 4; moduleIndex++) {
+      Module module = modules[moduleIndex];
+      odometryFusion.addModuleSamples(
+          moduleIndex,
+          module.getOdometryTimestamps(),
+          module.getOdometryDrivePositionsMeters(),
+          module.getOdometryTurnPositionsRad(),
+          module.getOdometryTimestamps().length);
+    }
+    long latchedSequence = SparkOdometryThread.getInstance().getLatchedSequence();
+    if (latchedSequence > 0) {
+      // Only samples from the odometry thread have sequence numbers
+      double[] sampleTimestamps = modules[0].getOdometryTimestamps();
+      odometryFusion.addSampleSequences(sampleTimestamps, sampleTimestamps.length, latchedSequence);
+    }
+    if (gyroInputs.connected) {
+      odometryFusion.addGyroSamples(
+          gyroInputs.odometryYawTimestamps, gyroInputs.odometryYawPositionsRad);
     }
+    int sampleCount = odometryFusion.process(gyroInputs.connected);
+
+    // Trust modules less as their current approaches what breaks traction. Current is only read
+    // once per cycle, so it applies to every sample in the cycle.
+    for (int moduleIndex = 0; moduleIndex < 4; moduleIndex++) {
+      modulePriorWeights[moduleIndex] =
+          SlipDetector.getCurrentWeight(modules[moduleIndex].getDriveCurrentAmps());
+    }
+    poseEstimator.setModulePriorWeights(modulePriorWeights);
 
     // Update odometry
-    double[] sampleTimestamps =
-        modules[0].getOdometryTimestamps(); // All signals are sampled together
-    int sampleCount = sampleTimestamps.length;
     for (int i = 0; i < sampleCount; i++) {
-      // Read wheel positions and deltas from each module
-      SwerveModulePosition[] modulePositions = new SwerveModulePosition[4];
-      SwerveModulePosition[] moduleDeltas = new SwerveModulePosition[4];
+      // Read wheel positions from each module (failed reads are already patched)
       for (int moduleIndex = 0; moduleIndex < 4; moduleIndex++) {
-        modulePositions[moduleIndex] = modules[moduleIndex].getOdometryPositions()[i];
-        moduleDeltas[moduleIndex] =
-            new SwerveModulePosition(
-                modulePositions[moduleIndex].distanceMeters
-                    - lastModulePositions[moduleIndex].distanceMeters,
-                modulePositions[moduleIndex].angle);
-        lastModulePositions[moduleIndex] = modulePositions[moduleIndex];
+        sampleDistancesMeters[moduleIndex] = odometryFusion.getModuleDistanceMeters(moduleIndex, i);
+        sampleAnglesRad[moduleIndex] = odometryFusion.getModuleAngleRad(moduleIndex, i);
       }
 
-      // Update gyro angle
-      if (gyroInputs.connected) {
-        // Use the real gyro angle
-        rawGyroRotation = gyroInputs.odometryYawPositions[i];
-      } else {
-        // Use the angle delta from the kinematics and module deltas
-        Twist2d twist = kinematics.toTwist2d(moduleDeltas);
-        rawGyroRotation = rawGyroRotation.plus(new Rotation2d(twist.dtheta));
-      }
-
-      // Apply update
-      poseEstimator.updateWithTime(sampleTimestamps[i], rawGyroRotation, modulePositions);
+      // Apply update, falling back to the kinematic heading if there is no gyro sample
+      poseEstimator.update(
+          odometryFusion.getTimestamp(i),
+          odometryFusion.hasGyroYaw(i) ? odometryFusion.getGyroYawRad(i) : Double.NaN,
+          sampleDistancesMeters,
+          sampleAnglesRad);
+    }
+    updateLiveOdometryAnchor();
+    if (liveOdometryPose && liveRobotOutput.shouldRecord()) {
+      Logger.recordOutput(liveRobotOutput.getKey(), getPose());
+    }
+    if (driveControlThread) {
+      controlLoop.logStatistics();
+    }
+    if (moduleWeightsOutput.shouldRecord()) {
+      // Logged arrays are kept by reference, so log a copy of the reused weights
+      Logger.recordOutput(moduleWeightsOutput.getKey(), poseEstimator.getModuleWeights().clone());
+    }
+    if (slipExcludedSamplesOutput.shouldRecord()) {
+      Logger.recordOutput(
+          slipExcludedSamplesOutput.getKey(), poseEstimator.getExcludedModuleSamples());
+    }
+    if (measuredStatesOutput.shouldRecord()) {
+      Logger.recordOutput(measuredStatesOutput.getKey(), getModuleStates());
+    }
+    if (measuredSpeedsOutput.shouldRecord()) {
+      Logger.recordOutput(measuredSpeedsOutput.getKey(), getChassisSpeeds());
     }
 
     // Update gyro alert
@@ -185,37 +306,87 @@ public class Drive extends SubsystemBase {
   /**
    * Runs the drive at the desired velocity.
    *
+   * <p>The setpoint generator limits the change from the previous setpoint to what the modules can
+   * achieve this cycle. Wheel acceleration is limited by the drive motor torque and wheel friction,
+   * and turning by {@link DriveConstants#maxSteerVelocityRadPerSec}. Modules that would need to
+   * reverse direction slow down before turning rather than scrubbing. See {@link
+   * DriveSetpointGenerator}.
+   *
    * @param speeds Speeds in meters/sec
    */
   public void runVelocity(ChassisSpeeds speeds) {
+    // Discretize, then scale down so no module is asked to exceed its maximum speed
+    kinematics.discretize(
+        speeds.vxMetersPerSecond,
+        speeds.vyMetersPerSecond,
+        speeds.omegaRadiansPerSecond,
+        0.02,
+        requestedSpeeds);
+    double scale =
+        kinematics.getDesaturationScale(
+            requestedSpeeds[0], requestedSpeeds[1], requestedSpeeds[2], maxSpeedMetersPerSec);
+    discreteSpeeds.vxMetersPerSecond = requestedSpeeds[0] * scale;
+    discreteSpeeds.vyMetersPerSecond = requestedSpeeds[1] * scale;
+    discreteSpeeds.omegaRadiansPerSecond = requestedSpeeds[2] * scale;
+
     // Calculate module setpoints
-    ChassisSpeeds discreteSpeeds = ChassisSpeeds.discretize(speeds, 0.02);
-    SwerveModuleState[] setpointStates = kinematics.toSwerveModuleStates(discreteSpeeds);
-    SwerveDriveKinematics.desaturateWheelSpeeds(setpointStates, maxSpeedMetersPerSec);
+    setpointGenerator.generate(
+        discreteSpeeds.vxMetersPerSecond,
+        discreteSpeeds.vyMetersPerSecond,
+        discreteSpeeds.omegaRadiansPerSecond,
+        0.02);
+    double[] setpointSpeeds = setpointGenerator.getModuleSpeeds();
+    double[] setpointAngles = setpointGenerator.getModuleAngles();
 
     // Log unoptimized setpoints
-    Logger.recordOutput("SwerveStates/Setpoints", setpointStates);
-    Logger.recordOutput("SwerveChassisSpeeds/Setpoints", discreteSpeeds);
+    if (setpointsOutput.shouldRecord()) {
+      for (int i = 0; i < 4; i++) {
+        setpointStates[i].speedMetersPerSecond = setpointSpeeds[i];
+        setpointStates[i].angle = new Rotation2d(setpointAngles[i]);
+      }
+      Logger.recordOutput(setpointsOutput.getKey(), setpointStates);
+    }
+    if (chassisSetpointsOutput.shouldRecord()) {
+      Logger.recordOutput(chassisSetpointsOutput.getKey(), discreteSpeeds);
+    }
+    if (limitedSetpointsOutput.shouldRecord()) {
+      limitedSpeeds.vxMetersPerSecond = setpointGenerator.getVx();
+      limitedSpeeds.vyMetersPerSecond = setpointGenerator.getVy();
+      limitedSpeeds.omegaRadiansPerSecond = setpointGenerator.getOmega();
+      Logger.recordOutput(limitedSetpointsOutput.getKey(), limitedSpeeds);
+    }
 
-    // Send setpoints to modules
-    for (int i = 0; i < 4; i++) {
-      modules[i].runSetpoint(setpointStates[i]);
+    // Send setpoints to modules, unless the control thread is following a path
+    if (!controlLoop.isActive()) {
+      for (int i = 0; i < 4; i++) {
+        modules[i].runSetpoint(setpointSpeeds[i], setpointAngles[i]);
+      }
     }
 
-    // Log optimized setpoints (runSetpoint mutates each state)
-    Logger.recordOutput("SwerveStates/SetpointsOptimized", setpointStates);
+    // Log optimized setpoints
+    if (optimizedSetpointsOutput.shouldRecord()) {
+      for (int i = 0; i < 4; i++) {
+        setpointStates[i].speedMetersPerSecond = modules[i].getSetpointSpeedMetersPerSec();
+        setpointStates[i].angle = new Rotation2d(modules[i].getSetpointAngleRad());
+      }
+      Logger.recordOutput(optimizedSetpointsOutput.getKey(), setpointStates);
+    }
   }
 
   /** Runs the drive in a straight line with the specified drive output. */
   public void runCharacterization(double output) {
+    controlLoop.clearGoal();
     for (int i = 0; i < 4; i++) {
       modules[i].runCharacterization(output);
     }
   }
 
-  /** Stops the drive. */
+  /** Stops the drive immediately, keeping the modules at their current angles. */
   public void stop() {
-    runVelocity(new ChassisSpeeds());
+    for (int i = 0; i < 4; i++) {
+      measuredModuleAngles[i] = modules[i].getAngle().getRadians();
+    }
+    stopAtAngles(measuredModuleAngles);
   }
 
   /**
@@ -223,12 +394,35 @@ public class Drive extends SubsystemBase {
    * return to their normal orientations the next time a nonzero velocity is requested.
    */
   public void stopWithX() {
-    Rotation2d[] headings = new Rotation2d[4];
     for (int i = 0; i < 4; i++) {
-      headings[i] = moduleTranslations[i].getAngle();
+      xAnglesRad[i] = moduleTranslations[i].getAngle().getRadians();
+    }
+    stopAtAngles(xAnglesRad);
+  }
+
+  /**
+   * Commands zero speed at the specified module angles without the setpoint generator, which would
+   * only slow down by one limited step per cycle. The generator starts from the stop next cycle,
+   * and holds the angles while the requested speeds are zero.
+   */
+  private void stopAtAngles(double[] anglesRad) {
+    controlLoop.clearGoal();
+    setpointGenerator.reset(0.0, 0.0, 0.0, zeroSpeeds, anglesRad);
+    for (int i = 0; i < 4; i++) {
+      modules[i].runSetpoint(0.0, anglesRad[i]);
     }
-    kinematics.resetHeadings(headings);
-    stop();
+  }
+
+  /** Resets the setpoint generator to the measured module states. */
+  private void resetSetpoint() {
+    // Fills the measured module speeds and angles too
+    getChassisSpeeds();
+    setpointGenerator.reset(
+        measuredSpeeds[0],
+        measuredSpeeds[1],
+        measuredSpeeds[2],
+        measuredModuleSpeeds,
+        measuredModuleAngles);
   }
 
   /** Returns a command to run a quasistatic test in the specified direction. */
@@ -243,29 +437,32 @@ public class Drive extends SubsystemBase {
     return run(() -> runCharacterization(0.0)).withTimeout(1.0).andThen(sysId.dynamic(direction));
   }
 
-  /** Returns the module states (turn angles and drive velocities) for all of the modules. */
-  @AutoLogOutput(key = "SwerveStates/Measured")
+  /**
+   * Returns the module states (turn angles and drive velocities) for all of the modules. The array
+   * is reused and updated on every call.
+   */
   private SwerveModuleState[] getModuleStates() {
-    SwerveModuleState[] states = new SwerveModuleState[4];
     for (int i = 0; i < 4; i++) {
-      states[i] = modules[i].getState();
+      measuredStates[i].speedMetersPerSecond = modules[i].getVelocityMetersPerSec();
+      measuredStates[i].angle = modules[i].getAngle();
     }
-    return states;
+    return measuredStates;
   }
 
-  /** Returns the module positions (turn angles and drive positions) for all of the modules. */
-  private SwerveModulePosition[] getModulePositions() {
-    SwerveModulePosition[] states = new SwerveModulePosition[4];
+  /**
+   * Returns the measured chassis speeds of the robot. The object is reused and updated on every
+   * call.
+   */
+  private ChassisSpeeds getChassisSpeeds() {
     for (int i = 0; i < 4; i++) {
-      states[i] = modules[i].getPosition();
+      measuredModuleSpeeds[i] = modules[i].getVelocityMetersPerSec();
+      measuredModuleAngles[i] = modules[i].getAngle().getRadians();
     }
-    return states;
-  }
-
-  /** Returns the measured chassis speeds of the robot. */
-  @AutoLogOutput(key = "SwerveChassisSpeeds/Measured")
-  private ChassisSpeeds getChassisSpeeds() {
-    return kinematics.toChassisSpeeds(getModuleStates());
+    kinematics.toChassisSpeeds(measuredModuleSpeeds, measuredModuleAngles, measuredSpeeds);
+    measuredChassisSpeeds.vxMetersPerSecond = measuredSpeeds[0];
+    measuredChassisSpeeds.vyMetersPerSecond = measuredSpeeds[1];
+    measuredChassisSpeeds.omegaRadiansPerSecond = measuredSpeeds[2];
+    return measuredChassisSpeeds;
   }
 
   /** Returns the position of each module in radians. */
@@ -286,10 +483,53 @@ public class Drive extends SubsystemBase {
     return output;
   }
 
-  /** Returns the current odometry pose. */
-  @AutoLogOutput(key = "Odometry/Robot")
+  /**
+   * Returns the current odometry pose. With {@link DriveConstants#liveOdometryPose}, this is the
+   * pose integrated on the odometry thread through the newest sample, which does not replay
+   * exactly. Otherwise it is the main loop estimate.
+   */
   public Pose2d getPose() {
-    return poseEstimator.getEstimatedPosition();
+    if (liveOdometryPose && !Double.isNaN(liveOdometry.getPose(livePose))) {
+      // Only allocate when the odometry thread has moved the pose since the last call
+      if (livePose[0] != livePoseObject.getX()
+          || livePose[1] != livePoseObject.getY()
+          || livePose[2] != livePoseObject.getRotation().getRadians()) {
+        livePoseObject = new Pose2d(livePose[0], livePose[1], new Rotation2d(livePose[2]));
+      }
+      return livePoseObject;
+    }
+    return poseEstimator.getEstimatedPose();
+  }
+
+  /**
+   * Returns the pose estimate from the main loop, which includes the samples latched this cycle and
+   * replays exactly from the logged inputs.
+   */
+  @AutoLogOutput(key = "Odometry/Robot")
+  public Pose2d getEstimatedPose() {
+    return poseEstimator.getEstimatedPose();
+  }
+
+  /**
+   * Returns the estimated pose at a past timestamp, interpolated between odometry samples and
+   * including the vision measurements known at that time. Timestamps older than {@link
+   * DrivePoseEstimator#historyDurationSecs} are clamped to the oldest sample.
+   */
+  public Optional<Pose2d> getPoseAt(double timestamp) {
+    if (!poseEstimator.sampleAt(timestamp, sampledPose)) {
+      return Optional.empty();
+    }
+    return Optional.of(new Pose2d(sampledPose[0], sampledPose[1], new Rotation2d(sampledPose[2])));
+  }
+
+  /**
+   * Writes the estimated pose at a past timestamp into the array as x, y and heading without
+   * allocating. Must be called from the main loop.
+   *
+   * @return Whether a pose was written, which is false before the first odometry sample.
+   */
+  public boolean getPoseAt(double timestamp, double[] pose) {
+    return poseEstimator.sampleAt(timestamp, pose);
   }
 
   /** Returns the current odometry rotation. */
@@ -299,7 +539,40 @@ public class Drive extends SubsystemBase {
 
   /** Resets the current odometry pose. */
   public void setPose(Pose2d pose) {
-    poseEstimator.resetPosition(rawGyroRotation, getModulePositions(), pose);
+    poseEstimator.resetPose(pose.getX(), pose.getY(), pose.getRotation().getRadians());
+    updateLiveOdometryAnchor();
+    poseResetListener.accept(pose);
+  }
+
+  /** Returns the pose the path follower is currently aiming for, or null if no path is running. */
+  public Pose2d getTrajectorySetpoint() {
+    return trajectorySetpoint;
+  }
+
+  /**
+   * Sets a function called with the new pose whenever the pose is reset, such as to move the
+   * simulated robot to the start of an auto.
+   */
+  public void setPoseResetListener(Consumer<Pose2d> listener) {
+    poseResetListener = listener;
+  }
+
+  /**
+   * Hands the main loop estimate to the odometry thread, which adds newer samples onto it. The
+   * estimate only includes the samples the fusion has emitted, so samples it holds back for the
+   * gyro are replayed by the odometry thread.
+   */
+  private void updateLiveOdometryAnchor() {
+    poseEstimator.getEstimatedPose(anchorPose);
+    liveOdometry.setAnchor(odometryFusion.getLastEmittedSequence(), anchorPose);
+  }
+
+  /**
+   * Sets whether odometry down-weights and excludes modules that disagree with the gyro and the
+   * other modules, rather than weighting all modules equally.
+   */
+  public void setSlipAwareOdometry(boolean enabled) {
+    poseEstimator.setSlipAware(enabled);
   }
 
   /** Adds a new timestamped vision measurement. */
@@ -307,8 +580,12 @@ public class Drive extends SubsystemBase {
       Pose2d visionRobotPoseMeters,
       double timestampSeconds,
       Matrix<N3, N1> visionMeasurementStdDevs) {
-    poseEstimator.addVisionMeasurement(
-        visionRobotPoseMeters, timestampSeconds, visionMeasurementStdDevs);
+    poseEstimator.setVisionStdDevs(
+        visionMeasurementStdDevs.get(0, 0),
+        visionMeasurementStdDevs.get(1, 0),
+        visionMeasurementStdDevs.get(2, 0));
+    poseEstimator.addVisionMeasurement(visionRobotPoseMeters, timestampSeconds);
+    updateLiveOdometryAnchor();
   }
 
   /** Returns the maximum linear speed in meters per sec. */
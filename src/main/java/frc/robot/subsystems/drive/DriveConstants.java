@@ -19,10 +19,12 @@ import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.geometry.Translation2d;
 import edu.wpi.first.math.system.plant.DCMotor;
 import edu.wpi.first.math.util.Units;
+import frc.robot.util.GainOverrides;
 
 public class DriveConstants {
     public static final double maxSpeedMetersPerSec = 1.524;
     public static final double odometryFrequency = 100.0; // Hz
+    public static final boolean liveOdometryPose = false; // Track getPose() on the odometry thread
     public static final double trackWidth = Units.inchesToMeters(26.5);
     public static final double wheelBase = Units.inchesToMeters(26.5);
     public static final double driveBaseRadius = Math.hypot(trackWidth / 2.0, wheelBase / 2.0);
@@ -70,13 +72,11 @@ public class DriveConstants {
     public static final double driveEncoderVelocityFactor = (2 * Math.PI) / 60.0 / driveMotorReduction; // Rotor RPM ->
     // Wheel Rad/Sec
 
-    // Drive PID configuration
-    public static final double driveKp = 0.0020645;
-    public static final double driveKd = 0.0;
+    // Drive PID configuration, the gains can be tuned in simulation with frc.robot.GainTuner
+    public static final double driveKp = GainOverrides.get("driveKp", 0.0020645);
+    public static final double driveKd = GainOverrides.get("driveKd", 0.0);
     public static final double driveKs = 0.0;
     public static final double driveKv = 0.1;
-    public static final double driveSimP = 0.2;
-    public static final double driveSimD = 0.0;
     public static final double driveSimKs = 0.0;
     public static final double driveSimKv = 0.0789;
 
@@ -85,21 +85,51 @@ public class DriveConstants {
     public static final int turnMotorCurrentLimit = 20;
     public static final double turnMotorReduction = 12.8;
     public static final DCMotor turnGearbox = DCMotor.getNEO(1);
+    public static final double maxSteerVelocityRadPerSec = turnGearbox.freeSpeedRadPerSec / turnMotorReduction;
 
     // Turn encoder configuration
     public static final boolean turnEncoderInverted = true;
     public static final double turnEncoderPositionFactor = 2 * Math.PI; // Rotations -> Radians
     public static final double turnEncoderVelocityFactor = (2 * Math.PI) / 60.0; // RPM -> Rad/Sec
-
-    // Turn PID configuration
-    public static final double turnKp = 3.0645;
-    public static final double turnKd = 0.1;
-    public static final double turnSimP = 8.0;
-    public static final double turnSimD = 0.0;
+    public static final double turnMotorEncoderPositionFactor =
+            2 * Math.PI / turnMotorReduction; // Motor Rotations -> Module Radians
+    public static final double turnMotorEncoderVelocityFactor =
+            (2 * Math.PI) / 60.0 / turnMotorReduction; // Motor RPM -> Module Rad/Sec
+
+    // Turn encoder drift monitoring, comparing the motor encoder with the CANcoder
+    public static final double turnDriftReseedThresholdRad = Units.degreesToRadians(2.0);
+    public static final double turnDriftStationaryTurnVelocityRadPerSec = 0.05;
+    public static final double turnDriftStationaryDriveVelocityRadPerSec = 0.5;
+    public static final double turnDriftStationarySecs = 0.25;
+
+    // Module simulation, sampled at odometryFrequency like the real odometry thread
+    public static final double simOdometryLatencySecs = 0.002; // Age of a status frame when read
+    public static final double simOdometryJitterSecs = 0.002; // Random extra age, up to this much
+    public static final double simOdometryDropProbability = 0.0; // Chance a signal fails to read
+    public static final long simRandomSeed = 0; // Fixed so runs are repeatable
+    public static final double simPhysicsStepSecs = 0.001; // See DriveSimulation
+    public static final double sparkClosedLoopPeriodSecs = 0.001; // Spark kD acts per loop period
+    public static final double simWheelInertiaKgMetersSq = 0.01; // Wheel and reflected rotor
+    public static final double simTurnInertiaKgMetersSq = 0.004;
+    public static final double simBumperLengthMeters = Units.inchesToMeters(34.5);
+    public static final double simBumperWidthMeters = Units.inchesToMeters(34.5);
+    public static final double simRestitution = 0.2; // Bounce off walls and obstacles
+
+    // Turn PID configuration, the gains can be tuned in simulation with frc.robot.GainTuner
+    public static final double turnKp = GainOverrides.get("turnKp", 3.0645);
+    public static final double turnKd = GainOverrides.get("turnKd", 0.1);
     public static final double turnPIDMinInput = 0; // Radians
     public static final double turnPIDMaxInput = 2 * Math.PI; // Radians
 
-    // PathPlanner configuration
+    // CAN write coalescing, see CoalescingWriter
+    public static final double driveVelocityWriteDeadband = 0.05; // Radians per second
+    public static final double turnPositionWriteDeadband = 0.002; // Radians
+
+    // PathPlanner configuration, the path gains can be tuned with frc.robot.GainTuner
+    public static final double pathTranslationKp = GainOverrides.get("pathTranslationKp", 5.0);
+    public static final double pathRotationKp = GainOverrides.get("pathRotationKp", 5.0);
+    public static final boolean driveControlThread = false; // Follow paths on the odometry thread
+    public static final double driveControlGoalTimeoutSecs = 0.1;
     public static final double robotMassKg = 74.088;
     public static final double robotMOI = 6.883;
     public static final double wheelCOF = 1.2;
@@ -114,4 +144,14 @@ public class DriveConstants {
                     driveMotorCurrentLimit,
                     1),
             moduleTranslations);
+
+    // Slip-aware odometry configuration
+    public static final boolean slipAwareOdometry = false; // Down-weight slipping modules
+    public static final double slipResidualToleranceMeters = 0.002; // Per odometry sample
+    public static final double slipResidualFraction = 0.1; // Of the mean module displacement
+    public static final double slipExcludeWeight = 0.1;
+    public static final double wheelTractionCurrentAmps = robotMassKg * 9.81 / 4.0 * wheelCOF * wheelRadiusMeters
+            / driveMotorReduction / driveGearbox.KtNMPerAmp; // Current that breaks traction
+    public static final double slipCurrentOnsetFraction = 0.5; // Of the traction current
+    public static final double slipMinCurrentWeight = 0.25;
 }
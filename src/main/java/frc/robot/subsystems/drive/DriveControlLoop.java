@@ -0,0 +1,172 @@
+package frc.robot.subsystems.drive;
+
+import static frc.robot.subsystems.drive.DriveConstants.*;
+
+import com.pathplanner.lib.config.PIDConstants;
+import com.pathplanner.lib.controllers.PPHolonomicDriveController;
+import com.pathplanner.lib.controllers.PathFollowingController;
+import com.pathplanner.lib.trajectory.PathPlannerTrajectoryState;
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.wpilibj.RobotController;
+import edu.wpi.first.wpilibj.Timer;
+import frc.robot.util.LogPolicy;
+import frc.robot.util.LogPolicy.Tier;
+import frc.robot.util.TimingHistogram;
+import org.littletonrobotics.junction.Logger;
+
+/**
+ * Follows PathPlanner trajectories at the odometry frequency instead of the main loop frequency.
+ *
+ * <p>On the main loop, this acts as the path following controller, so each call publishes the
+ * trajectory state as a goal. The goal is the target pose and field-relative feedforward speeds.
+ * On the odometry thread, this runs as a sample listener after {@link LiveOdometry}. For every
+ * sample it moves the target along the feedforward by the age of the goal, so the target keeps
+ * moving between main loop cycles. It then runs the same proportional controller as {@link
+ * PPHolonomicDriveController} against that sample's pose and writes the module setpoints directly.
+ *
+ * <p>While the thread is writing setpoints for a fresh goal, {@link Drive#runVelocity} leaves the
+ * modules alone. A goal expires after {@link DriveConstants#driveControlGoalTimeoutSecs} without
+ * a refresh, such as when the path ends or is interrupted, and the main loop then takes over
+ * again. If the odometry thread is not running, as in simulation and replay, the main loop never
+ * gives up the modules. The thread does not run the setpoint generator, which is not thread safe,
+ * so it only desaturates the module speeds.
+ */
+public class DriveControlLoop implements PathFollowingController {
+  /** A trajectory state from the main loop, in field coordinates. */
+  private static record Goal(
+      double timestamp,
+      double x,
+      double y,
+      double headingRad,
+      double vx,
+      double vy,
+      double omega) {}
+
+  private final Module[] modules;
+  private final LiveOdometry liveOdometry;
+  private final PPHolonomicDriveController mainLoopController =
+      new PPHolonomicDriveController(
+          new PIDConstants(pathTranslationKp, 0.0, 0.0),
+          new PIDConstants(pathRotationKp, 0.0, 0.0));
+  private volatile Goal goal = null; // Only written by the main loop
+  private volatile double lastOutputTimestamp = Double.NaN; // Only written by the odometry thread
+
+  // Only accessed by the odometry thread
+  private final DriveKinematics kinematics = new DriveKinematics(moduleTranslations);
+  private final double dtSecs = 1.0 / odometryFrequency;
+  private final double[] pose = new double[3];
+  private final double[] speeds = new double[3];
+  private final double[] moduleSpeeds = new double[DriveKinematics.moduleCount];
+  private final double[] moduleAngles = new double[DriveKinematics.moduleCount];
+  private final TimingHistogram outputDurationHistogram = new TimingHistogram(20, 50);
+  private final LogPolicy.Output outputDurationOutput =
+      LogPolicy.output("Drive/ControlLoop/OutputDuration", Tier.VERBOSE, 2.0);
+  private final LogPolicy.Output activeOutput =
+      LogPolicy.output("Drive/ControlLoop/Active", Tier.DEBUG);
+
+  public DriveControlLoop(Module[] modules, LiveOdometry liveOdometry) {
+    this.modules = modules;
+    this.liveOdometry = liveOdometry;
+  }
+
+  @Override
+  public ChassisSpeeds calculateRobotRelativeSpeeds(
+      Pose2d currentPose, PathPlannerTrajectoryState targetState) {
+    goal =
+        new Goal(
+            Timer.getFPGATimestamp(),
+            targetState.pose.getX(),
+            targetState.pose.getY(),
+            targetState.pose.getRotation().getRadians(),
+            targetState.fieldSpeeds.vxMetersPerSecond,
+            targetState.fieldSpeeds.vyMetersPerSecond,
+            targetState.fieldSpeeds.omegaRadiansPerSecond);
+    return mainLoopController.calculateRobotRelativeSpeeds(currentPose, targetState);
+  }
+
+  @Override
+  public void reset(Pose2d currentPose, ChassisSpeeds currentSpeeds) {
+    mainLoopController.reset(currentPose, currentSpeeds);
+  }
+
+  @Override
+  public boolean isHolonomic() {
+    return true;
+  }
+
+  /** Drops the current goal, returning the modules to the main loop. Must be called from it. */
+  public void clearGoal() {
+    goal = null;
+  }
+
+  /**
+   * Returns whether the odometry thread is writing the module setpoints for a fresh goal, in which
+   * case the main loop should not. Must be called from the main loop.
+   */
+  public boolean isActive() {
+    Goal currentGoal = goal;
+    double timestamp = Timer.getFPGATimestamp();
+    return currentGoal != null
+        && timestamp - currentGoal.timestamp() < driveControlGoalTimeoutSecs
+        && timestamp - lastOutputTimestamp < driveControlGoalTimeoutSecs;
+  }
+
+  /** Logs the output timing and state. Must be called from the main loop. */
+  public void logStatistics() {
+    if (outputDurationOutput.shouldRecord()) {
+      outputDurationHistogram.log(outputDurationOutput.getKey());
+    }
+    if (activeOutput.shouldRecord()) {
+      Logger.recordOutput(activeOutput.getKey(), isActive());
+    }
+  }
+
+  /** Runs the controller for one sample. Runs on the odometry thread as a sample listener. */
+  public void onSample(long sequence, double timestamp) {
+    Goal currentGoal = goal;
+    if (currentGoal == null) {
+      return;
+    }
+    double goalAge = timestamp - currentGoal.timestamp();
+    if (goalAge > driveControlGoalTimeoutSecs || Double.isNaN(liveOdometry.getPose(pose))) {
+      return;
+    }
+    long startMicros = RobotController.getFPGATime();
+
+    // Move the target along the feedforward, then correct toward it
+    goalAge = Math.max(goalAge, 0.0);
+    double targetX = currentGoal.x() + currentGoal.vx() * goalAge;
+    double targetY = currentGoal.y() + currentGoal.vy() * goalAge;
+    double targetHeading = currentGoal.headingRad() + currentGoal.omega() * goalAge;
+    double vx = currentGoal.vx() + pathTranslationKp * (targetX - pose[0]);
+    double vy = currentGoal.vy() + pathTranslationKp * (targetY - pose[1]);
+    double omega =
+        currentGoal.omega() + pathRotationKp * MathUtil.angleModulus(targetHeading - pose[2]);
+
+    // Convert to robot-relative module setpoints
+    double cos = Math.cos(pose[2]);
+    double sin = Math.sin(pose[2]);
+    kinematics.discretize(vx * cos + vy * sin, -vx * sin + vy * cos, omega, dtSecs, speeds);
+    double scale =
+        kinematics.getDesaturationScale(speeds[0], speeds[1], speeds[2], maxSpeedMetersPerSec);
+    kinematics.toModuleStates(
+        speeds[0] * scale, speeds[1] * scale, speeds[2] * scale, moduleSpeeds, moduleAngles);
+
+    // Optimize against this sample's module angles and send, like Module.runSetpoint
+    for (int i = 0; i < DriveKinematics.moduleCount; i++) {
+      double currentAngle = liveOdometry.getModuleAngleRad(i);
+      double angle = moduleAngles[i];
+      double speed = moduleSpeeds[i];
+      if (Math.abs(MathUtil.angleModulus(angle - currentAngle)) > Math.PI / 2.0) {
+        angle = MathUtil.angleModulus(angle + Math.PI);
+        speed = -speed;
+      }
+      speed *= Math.cos(angle - currentAngle);
+      modules[i].runOptimizedSetpoint(speed, angle);
+    }
+    lastOutputTimestamp = timestamp;
+    outputDurationHistogram.record(RobotController.getFPGATime() - startMicros);
+  }
+}
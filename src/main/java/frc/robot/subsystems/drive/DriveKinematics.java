@@ -0,0 +1,244 @@
+package frc.robot.subsystems.drive;
+
+import edu.wpi.first.math.geometry.Translation2d;
+import frc.robot.util.PoseMath;
+
+/**
+ * Swerve kinematics for the four-module drive, working in place on primitive arrays.
+ *
+ * <p>Module positions and the forward kinematics matrix are stored as separate arrays per
+ * component, and every method writes into caller-provided buffers, so no call allocates. The math
+ * matches WPILib's {@code SwerveDriveKinematics} and {@code ChassisSpeeds.discretize}. Forward
+ * kinematics is the least-squares solution from the pseudo-inverse of the inverse kinematics
+ * matrix, which is computed once at construction.
+ */
+public class DriveKinematics {
+  public static final int moduleCount = 4;
+
+  private final double[] moduleX = new double[moduleCount];
+  private final double[] moduleY = new double[moduleCount];
+
+  // Rows of the forward kinematics matrix, over interleaved module x and y components
+  private final double[] forwardVx = new double[2 * moduleCount];
+  private final double[] forwardVy = new double[2 * moduleCount];
+  private final double[] forwardOmega = new double[2 * moduleCount];
+
+  // Headings held while the chassis is stopped, like SwerveDriveKinematics
+  private final double[] lastAnglesRad = new double[moduleCount];
+
+  // Scratch space, reused between calls
+  private final double[] identityPose = new double[3];
+  private final double[] deltaPose = new double[3];
+
+  public DriveKinematics(Translation2d[] moduleTranslations) {
+    if (moduleTranslations.length != moduleCount) {
+      throw new IllegalArgumentException("Drive kinematics requires exactly four modules");
+    }
+    for (int i = 0; i < moduleCount; i++) {
+      moduleX[i] = moduleTranslations[i].getX();
+      moduleY[i] = moduleTranslations[i].getY();
+    }
+    computeForwardKinematics();
+  }
+
+  /**
+   * Converts chassis speeds to the speeds that follow a constant-curvature arc over one period, so
+   * the robot ends the period where the original speeds point.
+   *
+   * @param output Discretized vx, vy and omega. May be the same array on every call.
+   */
+  public void discretize(double vx, double vy, double omega, double dtSecs, double[] output) {
+    deltaPose[0] = vx * dtSecs;
+    deltaPose[1] = vy * dtSecs;
+    deltaPose[2] = omega * dtSecs;
+    PoseMath.log(identityPose, deltaPose, output);
+    output[0] /= dtSecs;
+    output[1] /= dtSecs;
+    output[2] /= dtSecs;
+  }
+
+  /**
+   * Converts chassis speeds to module speeds and angles. When the chassis speeds are zero, the
+   * modules keep their last angles.
+   */
+  public void toModuleStates(
+      double vx, double vy, double omega, double[] speedsMetersPerSec, double[] anglesRad) {
+    if (vx == 0.0 && vy == 0.0 && omega == 0.0) {
+      for (int i = 0; i < moduleCount; i++) {
+        speedsMetersPerSec[i] = 0.0;
+        anglesRad[i] = lastAnglesRad[i];
+      }
+      return;
+    }
+    for (int i = 0; i < moduleCount; i++) {
+      double moduleVx = vx - omega * moduleY[i];
+      double moduleVy = vy + omega * moduleX[i];
+      speedsMetersPerSec[i] = Math.hypot(moduleVx, moduleVy);
+      anglesRad[i] = Math.atan2(moduleVy, moduleVx);
+      lastAnglesRad[i] = anglesRad[i];
+    }
+  }
+
+  /**
+   * Returns the factor that scales the chassis speeds so that no module exceeds the maximum speed,
+   * which is 1.0 if no module does.
+   */
+  public double getDesaturationScale(double vx, double vy, double omega, double maxSpeed) {
+    double maxModuleSpeedSquared = 0.0;
+    for (int i = 0; i < moduleCount; i++) {
+      double moduleVx = vx - omega * moduleY[i];
+      double moduleVy = vy + omega * moduleX[i];
+      maxModuleSpeedSquared =
+          Math.max(maxModuleSpeedSquared, moduleVx * moduleVx + moduleVy * moduleVy);
+    }
+    double maxModuleSpeed = Math.sqrt(maxModuleSpeedSquared);
+    return maxModuleSpeed > maxSpeed ? maxSpeed / maxModuleSpeed : 1.0;
+  }
+
+  /**
+   * Converts module speeds and angles to the least-squares chassis speeds. Module displacements
+   * and angles give the chassis twist the same way.
+   *
+   * @param output Chassis vx, vy and omega.
+   */
+  public void toChassisSpeeds(double[] speedsMetersPerSec, double[] anglesRad, double[] output) {
+    double vx = 0.0;
+    double vy = 0.0;
+    double omega = 0.0;
+    for (int i = 0; i < moduleCount; i++) {
+      double moduleVx = speedsMetersPerSec[i] * Math.cos(anglesRad[i]);
+      double moduleVy = speedsMetersPerSec[i] * Math.sin(anglesRad[i]);
+      vx += forwardVx[2 * i] * moduleVx + forwardVx[2 * i + 1] * moduleVy;
+      vy += forwardVy[2 * i] * moduleVx + forwardVy[2 * i + 1] * moduleVy;
+      omega += forwardOmega[2 * i] * moduleVx + forwardOmega[2 * i + 1] * moduleVy;
+    }
+    output[0] = vx;
+    output[1] = vy;
+    output[2] = omega;
+  }
+
+  /**
+   * Solves the chassis twist that best fits weighted module displacements. Modules with zero
+   * weight are ignored. At least two modules must have weight unless the rotation is known.
+   *
+   * @param deltasMeters Displacement of each module since the last sample.
+   * @param anglesRad Angle of each module.
+   * @param weights Non-negative weight of each module.
+   * @param knownRotationRad Rotation from another source such as the gyro, or NaN to solve for it.
+   * @param output Twist dx, dy and dtheta.
+   */
+  public void toTwistWeighted(
+      double[] deltasMeters,
+      double[] anglesRad,
+      double[] weights,
+      double knownRotationRad,
+      double[] output) {
+    // Accumulate the weighted normal equations
+    double sumW = 0.0;
+    double sumWX = 0.0;
+    double sumWY = 0.0;
+    double sumWSquares = 0.0;
+    double sumWDx = 0.0;
+    double sumWDy = 0.0;
+    double sumWCross = 0.0;
+    for (int i = 0; i < moduleCount; i++) {
+      double w = weights[i];
+      double dx = deltasMeters[i] * Math.cos(anglesRad[i]);
+      double dy = deltasMeters[i] * Math.sin(anglesRad[i]);
+      sumW += w;
+      sumWX += w * moduleX[i];
+      sumWY += w * moduleY[i];
+      sumWSquares += w * (moduleX[i] * moduleX[i] + moduleY[i] * moduleY[i]);
+      sumWDx += w * dx;
+      sumWDy += w * dy;
+      sumWCross += w * (moduleX[i] * dy - moduleY[i] * dx);
+    }
+    if (sumW <= 0.0) {
+      output[0] = 0.0;
+      output[1] = 0.0;
+      output[2] = Double.isNaN(knownRotationRad) ? 0.0 : knownRotationRad;
+      return;
+    }
+
+    // With a known rotation, the translation is the weighted mean after removing it
+    if (!Double.isNaN(knownRotationRad)) {
+      output[0] = (sumWDx + knownRotationRad * sumWY) / sumW;
+      output[1] = (sumWDy - knownRotationRad * sumWX) / sumW;
+      output[2] = knownRotationRad;
+      return;
+    }
+
+    // Otherwise solve [[W, 0, -Y], [0, W, X], [-Y, X, S]] t = [Dx, Dy, C] by eliminating dx, dy
+    double rotationDenominator = sumWSquares - (sumWX * sumWX + sumWY * sumWY) / sumW;
+    double rotation =
+        rotationDenominator > 1e-12
+            ? (sumWCross - (sumWX * sumWDy - sumWY * sumWDx) / sumW) / rotationDenominator
+            : 0.0;
+    output[0] = (sumWDx + rotation * sumWY) / sumW;
+    output[1] = (sumWDy - rotation * sumWX) / sumW;
+    output[2] = rotation;
+  }
+
+  /**
+   * Returns the distance between a module's measured displacement and the displacement a chassis
+   * twist predicts for it.
+   */
+  public double getResidual(int module, double deltaMeters, double angleRad, double[] twist) {
+    double predictedX = twist[0] - twist[2] * moduleY[module];
+    double predictedY = twist[1] + twist[2] * moduleX[module];
+    return Math.hypot(
+        deltaMeters * Math.cos(angleRad) - predictedX,
+        deltaMeters * Math.sin(angleRad) - predictedY);
+  }
+
+  /** Computes (A^T A)^-1 A^T, where A is the inverse kinematics matrix. */
+  private void computeForwardKinematics() {
+    // Each module contributes rows [1, 0, -y] and [0, 1, x] to A. For those rows, A^T A is
+    // [[n, 0, -sum(y)], [0, n, sum(x)], [-sum(y), sum(x), sum(x^2 + y^2)]]
+    double sumX = 0.0;
+    double sumY = 0.0;
+    double sumSquares = 0.0;
+    for (int i = 0; i < moduleCount; i++) {
+      sumX += moduleX[i];
+      sumY += moduleY[i];
+      sumSquares += moduleX[i] * moduleX[i] + moduleY[i] * moduleY[i];
+    }
+    double[][] normal = {
+      {moduleCount, 0.0, -sumY}, {0.0, moduleCount, sumX}, {-sumY, sumX, sumSquares}
+    };
+    double[][] normalInverse = invert3x3(normal);
+
+    // Multiply by A^T, one module column pair at a time
+    double[][] forwardRows = {forwardVx, forwardVy, forwardOmega};
+    for (int row = 0; row < 3; row++) {
+      for (int i = 0; i < moduleCount; i++) {
+        forwardRows[row][2 * i] = normalInverse[row][0] - normalInverse[row][2] * moduleY[i];
+        forwardRows[row][2 * i + 1] = normalInverse[row][1] + normalInverse[row][2] * moduleX[i];
+      }
+    }
+  }
+
+  private static double[][] invert3x3(double[][] m) {
+    double det =
+        m[0][0] * (m[1][1] * m[2][2] - m[1][2] * m[2][1])
+            - m[0][1] * (m[1][0] * m[2][2] - m[1][2] * m[2][0])
+            + m[0][2] * (m[1][0] * m[2][1] - m[1][1] * m[2][0]);
+    return new double[][] {
+      {
+        (m[1][1] * m[2][2] - m[1][2] * m[2][1]) / det,
+        (m[0][2] * m[2][1] - m[0][1] * m[2][2]) / det,
+        (m[0][1] * m[1][2] - m[0][2] * m[1][1]) / det
+      },
+      {
+        (m[1][2] * m[2][0] - m[1][0] * m[2][2]) / det,
+        (m[0][0] * m[2][2] - m[0][2] * m[2][0]) / det,
+        (m[0][2] * m[1][0] - m[0][0] * m[1][2]) / det
+      },
+      {
+        (m[1][0] * m[2][1] - m[1][1] * m[2][0]) / det,
+        (m[0][1] * m[2][0] - m[0][0] * m[2][1]) / det,
+        (m[0][0] * m[1][1] - m[0][1] * m[1][0]) / det
+      }
+    };
+  }
+}
@@ -0,0 +1,335 @@
+package frc.robot.subsystems.drive;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import frc.robot.util.PoseHistory;
+import frc.robot.util.PoseMath;
+
+/**
+ * Swerve pose estimator that works entirely on primitive values, so integrating an odometry sample
+ * allocates nothing.
+ *
+ * <p>The math follows WPILib's {@code SwerveDrivePoseEstimator}. Module deltas are converted to a
+ * twist with the least-squares {@link DriveKinematics} of the module layout, the heading comes from
+ * the gyro, and the twist is integrated with the pose exponential. Vision measurements are latency
+ * compensated against a fixed-size {@link PoseHistory} of odometry poses and blended in with the
+ * steady-state Kalman gain from the state and measurement standard deviations.
+ */
+public class DrivePoseEstimator {
+  /** How long odometry history is kept for latency compensation, matching WPILib. */
+  public static final double historyDurationSecs = 1.5;
+
+  private static final int visionUpdateCapacity = 32;
+
+  private final DriveKinematics kinematics;
+  private final SlipDetector slipDetector;
+  private final double[] stateStdDevs;
+  private final double[] visionGain = new double[3];
+
+  // Odometry state
+  private final double[] previousDistances = new double[DriveKinematics.moduleCount];
+  private final double[] moduleDeltas = new double[DriveKinematics.moduleCount];
+  private double previousGyroYawRad = Double.NaN;
+
+  // Slip-aware odometry state
+  private boolean slipAware = false;
+  private final double[] priorWeights = {1.0, 1.0, 1.0, 1.0};
+  private final double[] moduleWeights = {1.0, 1.0, 1.0, 1.0};
+  private long excludedModuleSamples = 0;
+  private double gyroOffsetRad = 0.0;
+  private double previousHeadingRad = 0.0;
+  private double rawYawRad = 0.0;
+  private final double[] odometryPose = new double[3]; // x, y, heading
+  private final double[] estimatedPose = new double[3];
+
+  private final PoseHistory odometryHistory;
+
+  // Vision updates, oldest first
+  private final double[] visionTimestamps = new double[visionUpdateCapacity];
+  private final double[][] visionPoses = new double[visionUpdateCapacity][3];
+  private final double[][] visionOdometryPoses = new double[visionUpdateCapacity][3];
+  private int visionCount = 0;
+
+  // Scratch space, reused between calls
+  private final double[] twist = new double[3];
+  private final double[] scratchSample = new double[3];
+  private final double[] visionOdometrySample = new double[3];
+  private final double[] visionEstimateSample = new double[3];
+  private final double[] visionMeasurement = new double[3];
+  private final double[] visionCorrection = new double[3];
+
+  /**
+   * Creates a new estimator.
+   *
+   * @param moduleTranslations Locations of the modules relative to the robot center.
+   * @param sampleFrequency Expected odometry sample rate in Hz, used to size the history.
+   * @param stateStdDevs Trust in the odometry as x, y and heading standard deviations.
+   * @param visionStdDevs Default trust in vision as x, y and heading standard deviations.
+   */
+  public DrivePoseEstimator(
+      Translation2d[] moduleTranslations,
+      double sampleFrequency,
+      double[] stateStdDevs,
+      double[] visionStdDevs) {
+    kinematics = new DriveKinematics(moduleTranslations);
+    slipDetector = new SlipDetector(kinematics);
+    this.stateStdDevs = stateStdDevs.clone();
+    setVisionStdDevs(visionStdDevs[0], visionStdDevs[1], visionStdDevs[2]);
+
+    odometryHistory =
+        new PoseHistory(
+            historyDurationSecs, (int) Math.ceil(historyDurationSecs * sampleFrequency) * 2);
+  }
+
+  /** Sets the default trust in vision measurements. */
+  public void setVisionStdDevs(double xStdDev, double yStdDev, double headingStdDev) {
+    visionGain[0] = getVisionGain(stateStdDevs[0], xStdDev);
+    visionGain[1] = getVisionGain(stateStdDevs[1], yStdDev);
+    visionGain[2] = getVisionGain(stateStdDevs[2], headingStdDev);
+  }
+
+  /** Returns the steady-state Kalman gain for one component. */
+  private static double getVisionGain(double stateStdDev, double visionStdDev) {
+    double q = stateStdDev * stateStdDev;
+    double r = visionStdDev * visionStdDev;
+    return q == 0.0 ? 0.0 : q / (q + Math.sqrt(q * r));
+  }
+
+  /**
+   * Integrates one odometry sample. Samples must arrive in increasing timestamp order.
+   *
+   * @param timestamp Sample timestamp in seconds.
+   * @param gyroYawRad Gyro yaw in radians, or NaN to estimate the heading from the modules.
+   * @param distancesMeters Drive position of each module.
+   * @param anglesRad Turn angle of each module.
+   */
+  public void update(
+      double timestamp, double gyroYawRad, double[] distancesMeters, double[] anglesRad) {
+    // Convert module deltas to a robot-relative twist
+    for (int i = 0; i < DriveKinematics.moduleCount; i++) {
+      moduleDeltas[i] = distancesMeters[i] - previousDistances[i];
+      previousDistances[i] = distancesMeters[i];
+    }
+    if (slipAware) {
+      // Down-weight modules that disagree with the gyro and the other modules
+      double gyroRotationRad = MathUtil.angleModulus(gyroYawRad - previousGyroYawRad);
+      excludedModuleSamples +=
+          slipDetector.computeWeights(
+              moduleDeltas, anglesRad, gyroRotationRad, priorWeights, moduleWeights);
+      kinematics.toTwistWeighted(moduleDeltas, anglesRad, moduleWeights, gyroRotationRad, twist);
+    } else {
+      kinematics.toChassisSpeeds(moduleDeltas, anglesRad, twist);
+    }
+    previousGyroYawRad = gyroYawRad;
+
+    // Use the gyro for heading, or the kinematic heading change if it is unavailable
+    rawYawRad = Double.isNaN(gyroYawRad) ? rawYawRad + twist[2] : gyroYawRad;
+    double headingRad = rawYawRad + gyroOffsetRad;
+    twist[2] = MathUtil.angleModulus(headingRad - previousHeadingRad);
+    previousHeadingRad = headingRad;
+
+    // Integrate the twist, then snap the heading to the measured value
+    PoseMath.exp(odometryPose, twist, odometryPose);
+    odometryPose[2] = MathUtil.angleModulus(headingRad);
+    odometryHistory.add(timestamp, odometryPose);
+
+    // Apply the latest vision correction
+    if (visionCount == 0) {
+      PoseMath.copy(odometryPose, estimatedPose);
+    } else {
+      int latest = visionCount - 1;
+      compensate(visionPoses[latest], visionOdometryPoses[latest], odometryPose, estimatedPose);
+    }
+  }
+
+  /**
+   * Sets whether module deltas are combined with a weighted fit that excludes slipping modules,
+   * rather than an equally weighted one.
+   */
+  public void setSlipAware(boolean slipAware) {
+    this.slipAware = slipAware;
+    if (!slipAware) {
+      for (int i = 0; i < DriveKinematics.moduleCount; i++) {
+        moduleWeights[i] = 1.0;
+      }
+    }
+  }
+
+  /** Sets the prior weight of each module for slip-aware odometry, such as from drive current. */
+  public void setModulePriorWeights(double[] weights) {
+    System.arraycopy(weights, 0, priorWeights, 0, DriveKinematics.moduleCount);
+  }
+
+  /** Returns the weight each module had in the last sample. The array must not be modified. */
+  public double[] getModuleWeights() {
+    return moduleWeights;
+  }
+
+  /** Returns the total number of module samples excluded as slipping. */
+  public long getExcludedModuleSamples() {
+    return excludedModuleSamples;
+  }
+
+  /**
+   * Resets the estimate to the specified pose, keeping the current gyro yaw and module positions
+   * as the reference for future samples.
+   */
+  public void resetPose(double x, double y, double headingRad) {
+    gyroOffsetRad = headingRad - rawYawRad;
+    previousHeadingRad = headingRad;
+    odometryPose[0] = x;
+    odometryPose[1] = y;
+    odometryPose[2] = MathUtil.angleModulus(headingRad);
+    PoseMath.copy(odometryPose, estimatedPose);
+    odometryHistory.clear();
+    visionCount = 0;
+  }
+
+  /**
+   * Adds a vision measurement, latency compensated to the time the image was captured.
+   *
+   * @param visionPose Robot pose measured by vision.
+   * @param timestamp Capture timestamp in seconds, in the same timebase as the odometry samples.
+   */
+  public void addVisionMeasurement(Pose2d visionPose, double timestamp) {
+    // Skip measurements older than the history
+    if (odometryHistory.isEmpty()
+        || odometryHistory.getNewestTimestamp() - historyDurationSecs > timestamp) {
+      return;
+    }
+    cleanUpVisionUpdates();
+
+    // Find the odometry and estimated poses at the capture time
+    double sampleTimestamp =
+        MathUtil.clamp(
+            timestamp, odometryHistory.getOldestTimestamp(), odometryHistory.getNewestTimestamp());
+    odometryHistory.sample(sampleTimestamp, visionOdometrySample);
+    applyVisionCorrection(sampleTimestamp, visionOdometrySample, visionEstimateSample);
+
+    // Move the estimate toward the measurement by the Kalman gain
+    visionMeasurement[0] = visionPose.getX();
+    visionMeasurement[1] = visionPose.getY();
+    visionMeasurement[2] = visionPose.getRotation().getRadians();
+    PoseMath.log(visionEstimateSample, visionMeasurement, visionCorrection);
+    for (int i = 0; i < 3; i++) {
+      visionCorrection[i] *= visionGain[i];
+    }
+
+    // Record the update, dropping any updates after it since they were based on the old estimate
+    int index = findVisionFloor(timestamp);
+    if (index < 0 || visionTimestamps[index] < timestamp) {
+      index++;
+    }
+    if (index == visionUpdateCapacity) {
+      removeOldestVisionUpdates(1);
+      index--;
+    }
+    visionTimestamps[index] = timestamp;
+    PoseMath.exp(visionEstimateSample, visionCorrection, visionPoses[index]);
+    PoseMath.copy(visionOdometrySample, visionOdometryPoses[index]);
+    visionCount = index + 1;
+    compensate(visionPoses[index], visionOdometryPoses[index], odometryPose, estimatedPose);
+  }
+
+  /** Returns the current estimated pose. */
+  public Pose2d getEstimatedPose() {
+    return new Pose2d(estimatedPose[0], estimatedPose[1], new Rotation2d(estimatedPose[2]));
+  }
+
+  /** Copies the current estimated pose into the array as x, y and heading. */
+  public void getEstimatedPose(double[] pose) {
+    PoseMath.copy(estimatedPose, pose);
+  }
+
+  /**
+   * Writes the estimated pose at a past timestamp into the array as x, y and heading, including
+   * the vision corrections known at that time. Timestamps outside the history are clamped to it.
+   *
+   * @return Whether a pose was written, which is false before the first odometry sample.
+   */
+  public boolean sampleAt(double timestamp, double[] pose) {
+    if (odometryHistory.isEmpty()) {
+      return false;
+    }
+    timestamp =
+        MathUtil.clamp(
+            timestamp, odometryHistory.getOldestTimestamp(), odometryHistory.getNewestTimestamp());
+    odometryHistory.sample(timestamp, scratchSample);
+    applyVisionCorrection(timestamp, scratchSample, pose);
+    return true;
+  }
+
+  /** Returns the heading the estimator is tracking from the gyro or kinematics. */
+  public double getRawYawRad() {
+    return rawYawRad;
+  }
+
+  /**
+   * Applies the vision update in effect at a timestamp to the odometry pose at that timestamp,
+   * writing the result to the output.
+   */
+  private void applyVisionCorrection(double timestamp, double[] odometry, double[] output) {
+    int floor = findVisionFloor(timestamp);
+    if (floor < 0) {
+      PoseMath.copy(odometry, output);
+    } else {
+      compensate(visionPoses[floor], visionOdometryPoses[floor], odometry, output);
+    }
+  }
+
+  /** Returns the index of the last vision update at or before the timestamp, or -1. */
+  private int findVisionFloor(double timestamp) {
+    int index = visionCount - 1;
+    while (index >= 0 && visionTimestamps[index] > timestamp) {
+      index--;
+    }
+    return index;
+  }
+
+  /** Removes vision updates that are no longer needed to sample the odometry history. */
+  private void cleanUpVisionUpdates() {
+    if (odometryHistory.isEmpty() || visionCount == 0) {
+      return;
+    }
+    int newestNeeded = findVisionFloor(odometryHistory.getOldestTimestamp());
+    if (newestNeeded > 0) {
+      removeOldestVisionUpdates(newestNeeded);
+    }
+  }
+
+  private void removeOldestVisionUpdates(int count) {
+    for (int i = count; i < visionCount; i++) {
+      visionTimestamps[i - count] = visionTimestamps[i];
+      PoseMath.copy(visionPoses[i], visionPoses[i - count]);
+      PoseMath.copy(visionOdometryPoses[i], visionOdometryPoses[i - count]);
+    }
+    visionCount -= count;
+  }
+
+  /**
+   * Applies the motion since a vision update to the corrected pose from that update, writing the
+   * result to the output.
+   */
+  private void compensate(
+      double[] visionPose, double[] visionOdometryPose, double[] currentOdometry, double[] output) {
+    // Transform from the odometry pose at the update to the current odometry pose
+    double cos = Math.cos(visionOdometryPose[2]);
+    double sin = Math.sin(visionOdometryPose[2]);
+    double dx = currentOdometry[0] - visionOdometryPose[0];
+    double dy = currentOdometry[1] - visionOdometryPose[1];
+    double localX = dx * cos + dy * sin;
+    double localY = -dx * sin + dy * cos;
+    double dTheta = currentOdometry[2] - visionOdometryPose[2];
+
+    // Apply the same transform to the corrected pose
+    cos = Math.cos(visionPose[2]);
+    sin = Math.sin(visionPose[2]);
+    double x = visionPose[0] + localX * cos - localY * sin;
+    double y = visionPose[1] + localX * sin + localY * cos;
+    output[0] = x;
+    output[1] = y;
+    output[2] = MathUtil.angleModulus(visionPose[2] + dTheta);
+  }
+}
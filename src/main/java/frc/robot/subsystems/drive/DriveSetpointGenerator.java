@@ -0,0 +1,220 @@
+package frc.robot.subsystems.drive;
+
+import static frc.robot.subsystems.drive.DriveConstants.*;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Translation2d;
+
+/**
+ * Limits swerve setpoints to what the modules can achieve in one cycle, working in place on
+ * primitive arrays so generating a setpoint allocates nothing.
+ *
+ * <p>The approach follows PathPlanner's {@code SwerveSetpointGenerator}. The new setpoint is the
+ * previous one moved a fraction of the way toward the requested chassis speeds, using the largest
+ * fraction for which every module stays within its limits. Module velocities are linear in the
+ * chassis speeds, so each module moves along a straight line from its previous velocity.
+ *
+ * <ul>
+ *   <li>The change in each module's velocity is limited by wheel friction, and by the drive motor
+ *       torque under the current limit. Speeding up uses the torque left at the module's speed.
+ *   <li>The change in each module's heading is limited by {@link
+ *       DriveConstants#maxSteerVelocityRadPerSec}. A module reverses its wheel rather than turning
+ *       more than a quarter turn.
+ *   <li>A stopped module that must turn further than it can this cycle holds the chassis still
+ *       while it turns in place, so the robot doesn't start off with a module pointing the wrong
+ *       way.
+ * </ul>
+ *
+ * <p>Modules slower than {@link #stoppedSpeedMetersPerSec} hold their heading, so stopping doesn't
+ * turn them.
+ */
+public class DriveSetpointGenerator {
+  /** Module speed below which a module counts as stopped. */
+  public static final double stoppedSpeedMetersPerSec = 1e-3;
+
+  private static final int steeringIterations = 10;
+
+  private final double[] moduleX = new double[DriveKinematics.moduleCount];
+  private final double[] moduleY = new double[DriveKinematics.moduleCount];
+  private final double frictionForceNewtons = wheelCOF * robotMassKg * 9.81 / 4.0;
+  private final double moduleMassKg = robotMassKg / 4.0;
+
+  // Setpoint, as chassis speeds and as module velocity vectors with signed speeds along headings
+  private double vx = 0.0;
+  private double vy = 0.0;
+  private double omega = 0.0;
+  private final double[] moduleSpeeds = new double[DriveKinematics.moduleCount];
+  private final double[] moduleAngles = new double[DriveKinematics.moduleCount];
+
+  // Scratch space, reused between calls
+  private final double[] previousVx = new double[DriveKinematics.moduleCount];
+  private final double[] previousVy = new double[DriveKinematics.moduleCount];
+  private final double[] deltaVx = new double[DriveKinematics.moduleCount];
+  private final double[] deltaVy = new double[DriveKinematics.moduleCount];
+  private final double[] steerOverrideRad = new double[DriveKinematics.moduleCount];
+
+  public DriveSetpointGenerator(Translation2d[] moduleTranslations) {
+    for (int i = 0; i < DriveKinematics.moduleCount; i++) {
+      moduleX[i] = moduleTranslations[i].getX();
+      moduleY[i] = moduleTranslations[i].getY();
+    }
+  }
+
+  /**
+   * Sets the setpoint to the specified state, such as the measured state after enabling, or a stop.
+   *
+   * @param speedsMetersPerSec Module speeds.
+   * @param anglesRad Module headings.
+   */
+  public void reset(
+      double vx, double vy, double omega, double[] speedsMetersPerSec, double[] anglesRad) {
+    this.vx = vx;
+    this.vy = vy;
+    this.omega = omega;
+    System.arraycopy(speedsMetersPerSec, 0, moduleSpeeds, 0, DriveKinematics.moduleCount);
+    System.arraycopy(anglesRad, 0, moduleAngles, 0, DriveKinematics.moduleCount);
+  }
+
+  /**
+   * Moves the setpoint toward the requested chassis speeds as far as the modules allow in one
+   * cycle. The speeds should already be discretized and desaturated.
+   */
+  public void generate(double requestedVx, double requestedVy, double requestedOmega, double dt) {
+    double maxSteerStepRad = maxSteerVelocityRadPerSec * dt;
+    double scale = 1.0;
+    for (int i = 0; i < DriveKinematics.moduleCount; i++) {
+      previousVx[i] = moduleSpeeds[i] * Math.cos(moduleAngles[i]);
+      previousVy[i] = moduleSpeeds[i] * Math.sin(moduleAngles[i]);
+      double targetVx = requestedVx - requestedOmega * moduleY[i];
+      double targetVy = requestedVy + requestedOmega * moduleX[i];
+      deltaVx[i] = targetVx - previousVx[i];
+      deltaVy[i] = targetVy - previousVy[i];
+      steerOverrideRad[i] = Double.NaN;
+
+      // A stopped module turns in place first, holding the chassis if it can't finish this cycle
+      if (Math.abs(moduleSpeeds[i]) < stoppedSpeedMetersPerSec) {
+        if (Math.hypot(targetVx, targetVy) < stoppedSpeedMetersPerSec) {
+          steerOverrideRad[i] = moduleAngles[i];
+          continue;
+        }
+        double rotation = getSteerDelta(targetVx, targetVy, moduleAngles[i]);
+        if (Math.abs(rotation) <= maxSteerStepRad) {
+          steerOverrideRad[i] = moduleAngles[i] + rotation;
+        } else {
+          steerOverrideRad[i] = moduleAngles[i] + Math.copySign(maxSteerStepRad, rotation);
+          scale = 0.0;
+        }
+        continue;
+      }
+
+      // Drive limit, which has a closed form since the velocity moves along a line
+      double deltaSpeed = Math.hypot(deltaVx[i], deltaVy[i]);
+      boolean slowing =
+          Math.hypot(targetVx, targetVy) < Math.abs(moduleSpeeds[i]) && deltaSpeed > 0.0;
+      double maxDeltaSpeed = getMaxAcceleration(Math.abs(moduleSpeeds[i]), slowing) * dt;
+      if (deltaSpeed > maxDeltaSpeed) {
+        scale = Math.min(scale, maxDeltaSpeed / deltaSpeed);
+      }
+
+      // Steering limit, found by bisection since the heading change is not linear
+      if (Math.abs(getSteerDelta(i, scale)) > maxSteerStepRad) {
+        double low = 0.0;
+        double high = scale;
+        for (int iteration = 0; iteration < steeringIterations; iteration++) {
+          double mid = (low + high) / 2.0;
+          if (Math.abs(getSteerDelta(i, mid)) > maxSteerStepRad) {
+            high = mid;
+          } else {
+            low = mid;
+          }
+        }
+        scale = low;
+      }
+    }
+
+    // Apply the fraction to the chassis and every module
+    vx += scale * (requestedVx - vx);
+    vy += scale * (requestedVy - vy);
+    omega += scale * (requestedOmega - omega);
+    for (int i = 0; i < DriveKinematics.moduleCount; i++) {
+      double moduleVx = previousVx[i] + scale * deltaVx[i];
+      double moduleVy = previousVy[i] + scale * deltaVy[i];
+      double angle = moduleAngles[i];
+      if (!Double.isNaN(steerOverrideRad[i])) {
+        angle = steerOverrideRad[i];
+      } else if (Math.hypot(moduleVx, moduleVy) >= stoppedSpeedMetersPerSec) {
+        angle = moduleAngles[i] + getSteerDelta(moduleVx, moduleVy, moduleAngles[i]);
+      }
+      moduleAngles[i] = MathUtil.angleModulus(angle);
+      moduleSpeeds[i] = moduleVx * Math.cos(angle) + moduleVy * Math.sin(angle);
+    }
+  }
+
+  /** Returns the chassis x velocity of the setpoint in meters per second. */
+  public double getVx() {
+    return vx;
+  }
+
+  /** Returns the chassis y velocity of the setpoint in meters per second. */
+  public double getVy() {
+    return vy;
+  }
+
+  /** Returns the chassis angular velocity of the setpoint in radians per second. */
+  public double getOmega() {
+    return omega;
+  }
+
+  /** Returns the signed module speeds of the setpoint. The array is reused. */
+  public double[] getModuleSpeeds() {
+    return moduleSpeeds;
+  }
+
+  /** Returns the module headings of the setpoint, in radians. The array is reused. */
+  public double[] getModuleAngles() {
+    return moduleAngles;
+  }
+
+  /** Returns the heading change of a module at a fraction of the way to its target. */
+  private double getSteerDelta(int module, double fraction) {
+    double moduleVx = previousVx[module] + fraction * deltaVx[module];
+    double moduleVy = previousVy[module] + fraction * deltaVy[module];
+    if (Math.hypot(moduleVx, moduleVy) < stoppedSpeedMetersPerSec) {
+      return 0.0;
+    }
+    return getSteerDelta(moduleVx, moduleVy, moduleAngles[module]);
+  }
+
+  /**
+   * Returns the smallest turn from a heading to a velocity's direction, reversing the wheel rather
+   * than turning more than a quarter turn.
+   */
+  private static double getSteerDelta(double moduleVx, double moduleVy, double angleRad) {
+    double delta = MathUtil.angleModulus(Math.atan2(moduleVy, moduleVx) - angleRad);
+    if (delta > Math.PI / 2.0) {
+      delta -= Math.PI;
+    } else if (delta < -Math.PI / 2.0) {
+      delta += Math.PI;
+    }
+    return delta;
+  }
+
+  /**
+   * Returns the most a module can change its velocity per second, limited by wheel friction and by
+   * the drive motor under the current limit.
+   *
+   * @param speedMetersPerSec The module's speed, which reduces the torque left to speed up.
+   * @param slowing Whether the module is slowing down, which can use the full current limit.
+   */
+  private double getMaxAcceleration(double speedMetersPerSec, boolean slowing) {
+    double currentAmps = driveMotorCurrentLimit;
+    if (!slowing) {
+      double motorSpeedRadPerSec = speedMetersPerSec / wheelRadiusMeters * driveMotorReduction;
+      currentAmps =
+          MathUtil.clamp(driveGearbox.getCurrent(motorSpeedRadPerSec, 12.0), 0.0, currentAmps);
+    }
+    double motorForceNewtons =
+        driveGearbox.getTorque(currentAmps) * driveMotorReduction / wheelRadiusMeters;
+    return Math.min(motorForceNewtons, frictionForceNewtons) / moduleMassKg;
+  }
+}
@@ -0,0 +1,435 @@
+package frc.robot.subsystems.drive;
+
+import static frc.robot.subsystems.drive.DriveConstants.*;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.controller.PIDController;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.system.plant.LinearSystemId;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.simulation.DCMotorSim;
+import frc.robot.subsystems.vision.VisionConstants;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Rigid-body simulation of the whole drivetrain, shared by the simulated module and gyro IO.
+ *
+ * <p>The chassis is a rigid body with {@link DriveConstants#robotMassKg} and {@link
+ * DriveConstants#robotMOI}, driven only by the friction at each wheel contact. Each wheel carries
+ * a quarter of the weight, so its friction is limited to {@link DriveConstants#wheelCOF} times
+ * that load, shared between the rolling and sideways directions. Below the limit, the friction
+ * removes the slip at the contact within a step. Above it, the wheel slides and the robot goes
+ * where the momentum takes it. The drive motors act on the wheels through their torque curve and
+ * current limit, and each motor controller runs its closed loop every step. The bumpers collide
+ * with the field perimeter and with any added obstacles.
+ *
+ * <p>{@link #update()} advances exactly one loop period in fixed steps of {@link
+ * DriveConstants#simPhysicsStepSecs}, so a run does not depend on wall clock timing. It records the
+ * true module and gyro state at the odometry frequency, for the IO layers to read next cycle. The
+ * samples are stamped so that the last one lands at the current time, or one period after the last
+ * update if the loop ran early.
+ */
+public class DriveSimulation {
+  /** Length of time advanced by each call to {@link #update()}. */
+  public static final double loopPeriodSecs = 0.02;
+
+  /** Number of odometry samples recorded per loop period. */
+  public static final int samplesPerCycle =
+      Math.max(1, (int) Math.round(loopPeriodSecs * odometryFrequency));
+
+  private static final double sampleSecs = loopPeriodSecs / samplesPerCycle;
+
+  /** A round obstacle on the field, such as a game piece, that the bumpers cannot pass through. */
+  public static record Obstacle(double x, double y, double radiusMeters) {}
+
+  /** One simulated module, holding its motor state and closed loop setpoints. */
+  public static class SimModule {
+    private final double xMeters;
+    private final double yMeters;
+    private final DCMotorSim turnSim =
+        new DCMotorSim(
+            LinearSystemId.createDCMotorSystem(
+                turnGearbox, simTurnInertiaKgMetersSq, turnMotorReduction),
+            turnGearbox);
+
+    // The real Spark gains, which act on duty cycle in the units of the encoder conversion factors.
+    // With voltage compensation, full duty cycle is 12 volts.
+    private final PIDController driveController =
+        new PIDController(
+            driveKp * 12.0, 0, driveKd * 12.0 * sparkClosedLoopPeriodSecs, simPhysicsStepSecs);
+    private final PIDController turnController =
+        new PIDController(
+            turnKp * 12.0, 0, turnKd * 12.0 * sparkClosedLoopPeriodSecs, simPhysicsStepSecs);
+    private boolean driveClosedLoop = false;
+    private boolean turnClosedLoop = false;
+    private double driveFFVolts = 0.0;
+    private double driveAppliedVolts = 0.0;
+    private double turnAppliedVolts = 0.0;
+
+    private double wheelPositionRad = 0.0;
+    private double wheelVelocityRadPerSec = 0.0;
+    private double driveCurrentAmps = 0.0;
+    private double slipSpeedMetersPerSec = 0.0;
+
+    // True state at each odometry sample of the last update
+    private final double[] sampleDrivePositionsRad = new double[samplesPerCycle];
+    private final double[] sampleTurnPositionsRad = new double[samplesPerCycle];
+
+    private SimModule(double xMeters, double yMeters) {
+      this.xMeters = xMeters;
+      this.yMeters = yMeters;
+      turnController.enableContinuousInput(-Math.PI, Math.PI);
+    }
+
+    /** Runs the drive motor at the specified voltage. */
+    public void setDriveOpenLoop(double volts) {
+      driveClosedLoop = false;
+      driveAppliedVolts = volts;
+    }
+
+    /** Runs the turn motor at the specified voltage. */
+    public void setTurnOpenLoop(double volts) {
+      turnClosedLoop = false;
+      turnAppliedVolts = volts;
+    }
+
+    /** Runs the drive motor at the specified wheel velocity. */
+    public void setDriveVelocity(double velocityRadPerSec) {
+      driveClosedLoop = true;
+      driveFFVolts = driveSimKs * Math.signum(velocityRadPerSec) + driveSimKv * velocityRadPerSec;
+      driveController.setSetpoint(velocityRadPerSec);
+    }
+
+    /** Runs the turn motor to the specified module angle. */
+    public void setTurnPosition(double angleRad) {
+      turnClosedLoop = true;
+      turnController.setSetpoint(angleRad);
+    }
+
+    /** Returns the wheel position in radians. */
+    public double getDrivePositionRad() {
+      return wheelPositionRad;
+    }
+
+    /** Returns the wheel velocity in radians per second. */
+    public double getDriveVelocityRadPerSec() {
+      return wheelVelocityRadPerSec;
+    }
+
+    /** Returns the drive motor voltage. */
+    public double getDriveAppliedVolts() {
+      return driveAppliedVolts;
+    }
+
+    /** Returns the drive motor current in amps, after the current limit. */
+    public double getDriveCurrentAmps() {
+      return Math.abs(driveCurrentAmps);
+    }
+
+    /** Returns the module angle in radians, without wrapping. */
+    public double getTurnPositionRad() {
+      return turnSim.getAngularPositionRad();
+    }
+
+    /** Returns the module angular velocity in radians per second. */
+    public double getTurnVelocityRadPerSec() {
+      return turnSim.getAngularVelocityRadPerSec();
+    }
+
+    /** Returns the turn motor voltage. */
+    public double getTurnAppliedVolts() {
+      return turnAppliedVolts;
+    }
+
+    /** Returns the turn motor current in amps. */
+    public double getTurnCurrentAmps() {
+      return Math.abs(turnSim.getCurrentDrawAmps());
+    }
+
+    /** Returns the speed of the wheel sliding over the carpet, in meters per second. */
+    public double getSlipSpeedMetersPerSec() {
+      return slipSpeedMetersPerSec;
+    }
+
+    /** Returns the wheel positions in radians at each sample of the last update. */
+    public double[] getSampleDrivePositionsRad() {
+      return sampleDrivePositionsRad;
+    }
+
+    /** Returns the unwrapped module angles in radians at each sample of the last update. */
+    public double[] getSampleTurnPositionsRad() {
+      return sampleTurnPositionsRad;
+    }
+
+    /** Runs closed loop control, advances the turn motor, and updates the drive motor current. */
+    private void stepMotors(double dt) {
+      if (driveClosedLoop) {
+        driveAppliedVolts = driveFFVolts + driveController.calculate(wheelVelocityRadPerSec);
+      } else {
+        driveController.reset();
+      }
+      if (turnClosedLoop) {
+        turnAppliedVolts = turnController.calculate(turnSim.getAngularPositionRad());
+      } else {
+        turnController.reset();
+      }
+      turnSim.setInputVoltage(MathUtil.clamp(turnAppliedVolts, -12.0, 12.0));
+      turnSim.update(dt);
+
+      double motorVelocityRadPerSec = wheelVelocityRadPerSec * driveMotorReduction;
+      driveCurrentAmps =
+          MathUtil.clamp(
+              driveGearbox.getCurrent(
+                  motorVelocityRadPerSec, MathUtil.clamp(driveAppliedVolts, -12.0, 12.0)),
+              -driveMotorCurrentLimit,
+              driveMotorCurrentLimit);
+    }
+  }
+
+  private final SimModule[] modules = new SimModule[4];
+  private final List<Obstacle> obstacles = new ArrayList<>();
+  private final double fieldLengthMeters = VisionConstants.aprilTagLayout.getFieldLength();
+  private final double fieldWidthMeters = VisionConstants.aprilTagLayout.getFieldWidth();
+  private final int physicsStepsPerSample =
+      Math.max(1, (int) Math.round(loopPeriodSecs / samplesPerCycle / simPhysicsStepSecs));
+  private final double wheelLoadNewtons = robotMassKg * 9.81 / 4.0;
+  private final double[] cornerX = new double[4];
+  private final double[] cornerY = new double[4];
+
+  // Chassis state in field coordinates
+  private double x = 0.0;
+  private double y = 0.0;
+  private double headingRad = 0.0;
+  private double vx = 0.0;
+  private double vy = 0.0;
+  private double omega = 0.0;
+
+  // True state at each odometry sample of the last update
+  private final double[] sampleTimestamps = new double[samplesPerCycle];
+  private final double[] sampleHeadingsRad = new double[samplesPerCycle];
+
+  public DriveSimulation(Pose2d initialPose) {
+    for (int i = 0; i < 4; i++) {
+      modules[i] = new SimModule(moduleTranslations[i].getX(), moduleTranslations[i].getY());
+    }
+    setPose(initialPose);
+
+    // Start with a cycle of samples at rest, ending now, for IO that reads before the first update
+    double timestamp = Timer.getFPGATimestamp();
+    for (int sample = 0; sample < samplesPerCycle; sample++) {
+      recordSample(sample, timestamp - (samplesPerCycle - 1 - sample) * sampleSecs);
+    }
+  }
+
+  /** Returns the simulated module with the specified index, in FL, FR, BL, BR order. */
+  public SimModule getModule(int index) {
+    return modules[index];
+  }
+
+  /** Adds an obstacle that the bumpers collide with. */
+  public void addObstacle(Obstacle obstacle) {
+    obstacles.add(obstacle);
+  }
+
+  /** Moves the robot to the specified pose and stops it, such as at the start of an auto. */
+  public void setPose(Pose2d pose) {
+    x = pose.getX();
+    y = pose.getY();
+    headingRad = pose.getRotation().getRadians();
+    vx = 0.0;
+    vy = 0.0;
+    omega = 0.0;
+  }
+
+  /** Returns the true pose of the robot. */
+  public Pose2d getPose() {
+    return new Pose2d(x, y, new Rotation2d(headingRad));
+  }
+
+  /** Returns the true heading in radians, without wrapping. */
+  public double getHeadingRad() {
+    return headingRad;
+  }
+
+  /** Returns the true angular velocity in radians per second. */
+  public double getAngularVelocityRadPerSec() {
+    return omega;
+  }
+
+  /** Returns the timestamps of the odometry samples recorded by the last update. */
+  public double[] getSampleTimestamps() {
+    return sampleTimestamps;
+  }
+
+  /** Returns the unwrapped headings in radians at each odometry sample of the last update. */
+  public double[] getSampleHeadingsRad() {
+    return sampleHeadingsRad;
+  }
+
+  /** Advances the simulation by one loop period. Must be called once per loop. */
+  public void update() {
+    // Physics always advances one period, the samples are stamped with the time it ends
+    double cycleEndTimestamp =
+        Math.max(Timer.getFPGATimestamp(), sampleTimestamps[samplesPerCycle - 1] + loopPeriodSecs);
+    double stepSecs = sampleSecs / physicsStepsPerSample;
+    for (int sample = 0; sample < samplesPerCycle; sample++) {
+      for (int step = 0; step < physicsStepsPerSample; step++) {
+        step(stepSecs);
+      }
+      recordSample(sample, cycleEndTimestamp - (samplesPerCycle - 1 - sample) * sampleSecs);
+    }
+  }
+
+  /** Stores the current state as an odometry sample. */
+  private void recordSample(int sample, double timestamp) {
+    sampleTimestamps[sample] = timestamp;
+    sampleHeadingsRad[sample] = headingRad;
+    for (SimModule module : modules) {
+      module.sampleDrivePositionsRad[sample] = module.wheelPositionRad;
+      module.sampleTurnPositionsRad[sample] = module.turnSim.getAngularPositionRad();
+    }
+  }
+
+  /** Advances the chassis and every module by one physics step. */
+  private void step(double dt) {
+    double cos = Math.cos(headingRad);
+    double sin = Math.sin(headingRad);
+    double robotVx = vx * cos + vy * sin;
+    double robotVy = -vx * sin + vy * cos;
+    double wheelInertia = simWheelInertiaKgMetersSq;
+    double massShare = robotMassKg / 4.0;
+    double maxFriction = wheelCOF * wheelLoadNewtons;
+
+    // Sum the friction at each contact, in robot coordinates
+    double forceX = 0.0;
+    double forceY = 0.0;
+    double torque = 0.0;
+    for (SimModule module : modules) {
+      module.stepMotors(dt);
+      double angle = module.turnSim.getAngularPositionRad();
+      double ux = Math.cos(angle);
+      double uy = Math.sin(angle);
+      double contactVx = robotVx - omega * module.yMeters;
+      double contactVy = robotVy + omega * module.xMeters;
+
+      // Friction that would stop the slip this step, limited to the friction circle
+      double rollingSlip =
+          contactVx * ux + contactVy * uy - module.wheelVelocityRadPerSec * wheelRadiusMeters;
+      double sidewaysSlip = -contactVx * uy + contactVy * ux;
+      double rollingForce =
+          -rollingSlip
+              / (dt * (1.0 / massShare + wheelRadiusMeters * wheelRadiusMeters / wheelInertia));
+      double sidewaysForce = -sidewaysSlip * massShare / dt;
+      double frictionForce = Math.hypot(rollingForce, sidewaysForce);
+      if (frictionForce > maxFriction) {
+        rollingForce *= maxFriction / frictionForce;
+        sidewaysForce *= maxFriction / frictionForce;
+      }
+      module.slipSpeedMetersPerSec = Math.hypot(rollingSlip, sidewaysSlip);
+
+      // The motor drives the wheel, and the carpet pushes back on it
+      double motorTorque = driveGearbox.getTorque(module.driveCurrentAmps) * driveMotorReduction;
+      module.wheelVelocityRadPerSec +=
+          dt * (motorTorque - rollingForce * wheelRadiusMeters) / wheelInertia;
+      module.wheelPositionRad += module.wheelVelocityRadPerSec * dt;
+
+      double moduleForceX = rollingForce * ux - sidewaysForce * uy;
+      double moduleForceY = rollingForce * uy + sidewaysForce * ux;
+      forceX += moduleForceX;
+      forceY += moduleForceY;
+      torque += module.xMeters * moduleForceY - module.yMeters * moduleForceX;
+    }
+
+    // Integrate the chassis in field coordinates
+    vx += dt * (forceX * cos - forceY * sin) / robotMassKg;
+    vy += dt * (forceX * sin + forceY * cos) / robotMassKg;
+    omega += dt * torque / robotMOI;
+    x += vx * dt;
+    y += vy * dt;
+    headingRad += omega * dt;
+
+    resolveCollisions();
+  }
+
+  /** Pushes the bumpers out of the field perimeter and obstacles, removing the impact velocity. */
+  private void resolveCollisions() {
+    double cos = Math.cos(headingRad);
+    double sin = Math.sin(headingRad);
+    double halfLength = simBumperLengthMeters / 2.0;
+    double halfWidth = simBumperWidthMeters / 2.0;
+    for (int i = 0; i < 4; i++) {
+      double cornerRobotX = (i < 2) ? halfLength : -halfLength;
+      double cornerRobotY = (i % 2 == 0) ? halfWidth : -halfWidth;
+      cornerX[i] = x + cornerRobotX * cos - cornerRobotY * sin;
+      cornerY[i] = y + cornerRobotX * sin + cornerRobotY * cos;
+    }
+
+    // Field perimeter, using the deepest corner against each wall
+    for (int i = 0; i < 4; i++) {
+      if (cornerX[i] < 0.0) {
+        collide(cornerX[i], cornerY[i], 1.0, 0.0, -cornerX[i]);
+      } else if (cornerX[i] > fieldLengthMeters) {
+        collide(cornerX[i], cornerY[i], -1.0, 0.0, cornerX[i] - fieldLengthMeters);
+      }
+      if (cornerY[i] < 0.0) {
+        collide(cornerX[i], cornerY[i], 0.0, 1.0, -cornerY[i]);
+      } else if (cornerY[i] > fieldWidthMeters) {
+        collide(cornerX[i], cornerY[i], 0.0, -1.0, cornerY[i] - fieldWidthMeters);
+      }
+    }
+
+    // Obstacles, against the point of the bumpers closest to the center
+    for (int i = 0; i < obstacles.size(); i++) {
+      Obstacle obstacle = obstacles.get(i);
+      double dx = obstacle.x() - x;
+      double dy = obstacle.y() - y;
+      double closestRobotX = MathUtil.clamp(dx * cos + dy * sin, -halfLength, halfLength);
+      double closestRobotY = MathUtil.clamp(-dx * sin + dy * cos, -halfWidth, halfWidth);
+      double closestX = x + closestRobotX * cos - closestRobotY * sin;
+      double closestY = y + closestRobotX * sin + closestRobotY * cos;
+      double distance = Math.hypot(closestX - obstacle.x(), closestY - obstacle.y());
+      if (distance > 0.0 && distance < obstacle.radiusMeters()) {
+        collide(
+            closestX,
+            closestY,
+            (closestX - obstacle.x()) / distance,
+            (closestY - obstacle.y()) / distance,
+            obstacle.radiusMeters() - distance);
+      }
+    }
+  }
+
+  /**
+   * Resolves one contact, moving the robot out along the normal and applying the impulse that stops
+   * the contact point from moving into the surface.
+   *
+   * @param contactX Field x of the contact point.
+   * @param contactY Field y of the contact point.
+   * @param normalX Field x of the unit normal, pointing from the surface toward the robot.
+   * @param normalY Field y of the unit normal, pointing from the surface toward the robot.
+   * @param depth How far the contact point is inside the surface.
+   */
+  private void collide(
+      double contactX, double contactY, double normalX, double normalY, double depth) {
+    x += normalX * depth;
+    y += normalY * depth;
+    double armX = contactX - x;
+    double armY = contactY - y;
+    double contactVx = vx - omega * armY;
+    double contactVy = vy + omega * armX;
+    double approachSpeed = contactVx * normalX + contactVy * normalY;
+    if (approachSpeed >= 0.0) {
+      return;
+    }
+    double armCrossNormal = armX * normalY - armY * normalX;
+    double impulse =
+        -(1.0 + simRestitution)
+            * approachSpeed
+            / (1.0 / robotMassKg + armCrossNormal * armCrossNormal / robotMOI);
+    vx += impulse * normalX / robotMassKg;
+    vy += impulse * normalY / robotMassKg;
+    omega += impulse * armCrossNormal / robotMOI;
+  }
+}
@@ -22,8 +22,10 @@ public interface GyroIO {
     public boolean connected = false;
     public Rotation2d yawPosition = new Rotation2d();
     public double yawVelocityRadPerSec = 0.0;
+    // New arrays every cycle, since the logger keeps a reference to each logged array
     public double[] odometryYawTimestamps = new double[] {};
-    public Rotation2d[] odometryYawPositions = new Rotation2d[] {};
+    // Replaced the Rotation2d[] "OdometryYawPositions", so older logs can't be replayed
+    public double[] odometryYawPositionsRad = new double[] {};
   }
 
   public default void updateInputs(GyroIOInputs inputs) {}
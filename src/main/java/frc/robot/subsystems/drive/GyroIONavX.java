@@ -19,17 +19,18 @@ import com.studica.frc.AHRS;
 import com.studica.frc.AHRS.NavXComType;
 import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.util.Units;
-import java.util.Queue;
+import frc.robot.util.DoubleRingBuffer;
 
 /** IO implementation for NavX. */
 public class GyroIONavX implements GyroIO {
   private final AHRS navX = new AHRS(NavXComType.kMXP_SPI, (byte) odometryFrequency);
-  private final Queue<Double> yawPositionQueue;
-  private final Queue<Double> yawTimestampQueue;
+  private final DoubleRingBuffer yawPositionBuffer;
+  private final DoubleRingBuffer yawTimestampBuffer;
+  private final double[] yawPositionSamples = new double[SparkOdometryThread.bufferCapacity];
 
   public GyroIONavX() {
-    yawTimestampQueue = SparkOdometryThread.getInstance().makeTimestampQueue();
-    yawPositionQueue = SparkOdometryThread.getInstance().registerSignal(navX::getAngle);
+    yawTimestampBuffer = SparkOdometryThread.getInstance().makeTimestampBuffer();
+    yawPositionBuffer = SparkOdometryThread.getInstance().registerSignal(navX::getAngle);
   }
 
   @Override
@@ -38,13 +39,12 @@ public class GyroIONavX implements GyroIO {
     inputs.yawPosition = Rotation2d.fromDegrees(-navX.getAngle());
     inputs.yawVelocityRadPerSec = Units.degreesToRadians(-navX.getRawGyroZ());
 
-    inputs.odometryYawTimestamps =
-        yawTimestampQueue.stream().mapToDouble((Double value) -> value).toArray();
-    inputs.odometryYawPositions =
-        yawPositionQueue.stream()
-            .map((Double value) -> Rotation2d.fromDegrees(-value))
-            .toArray(Rotation2d[]::new);
-    yawTimestampQueue.clear();
-    yawPositionQueue.clear();
+    int sampleCount = SparkOdometryThread.getInstance().getLatchedSampleCount(yawTimestampBuffer);
+    inputs.odometryYawTimestamps = yawTimestampBuffer.drainExactly(sampleCount);
+    yawPositionBuffer.drain(yawPositionSamples, 0, sampleCount);
+    inputs.odometryYawPositionsRad = new double[sampleCount];
+    for (int i = 0; i < sampleCount; i++) {
+      inputs.odometryYawPositionsRad[i] = Units.degreesToRadians(-yawPositionSamples[i]);
+    }
   }
 }
@@ -15,8 +15,6 @@ package frc.robot.subsystems.drive;
 
 import static frc.robot.subsystems.drive.DriveConstants.*;
 
-import com.ctre.phoenix6.BaseStatusSignal;
-import com.ctre.phoenix6.StatusCode;
 import com.ctre.phoenix6.StatusSignal;
 import com.ctre.phoenix6.configs.Pigeon2Configuration;
 import com.ctre.phoenix6.hardware.Pigeon2;
@@ -24,39 +22,82 @@ import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.util.Units;
 import edu.wpi.first.units.measure.Angle;
 import edu.wpi.first.units.measure.AngularVelocity;
-import java.util.Queue;
+import edu.wpi.first.wpilibj.RobotController;
+import frc.robot.util.CanBusPlanner;
+import frc.robot.util.DeviceConfigurator;
 
 /** IO implementation for Pigeon 2. */
 public class GyroIOPigeon2 implements GyroIO {
   private final Pigeon2 pigeon = new Pigeon2(pigeonCanId);
   private final StatusSignal<Angle> yaw = pigeon.getYaw();
-  private final Queue<Double> yawPositionQueue;
-  private final Queue<Double> yawTimestampQueue;
+  private final PhoenixOdometryThread.SignalBuffers yawBuffers;
+  private final double[] yawPositionSamples = new double[SparkOdometryThread.bufferCapacity];
+  private final double[] yawTimestampSamples = new double[SparkOdometryThread.bufferCapacity];
   private final StatusSignal<AngularVelocity> yawVelocity = pigeon.getAngularVelocityZWorld();
 
+  // Set once the configurator has zeroed the yaw. Until then the gyro reports as disconnected, and
+  // samples from before then are discarded, so the drive never sees the yaw jump.
+  private volatile double yawZeroedTimestamp = Double.NaN;
+
   public GyroIOPigeon2() {
-    pigeon.getConfigurator().apply(new Pigeon2Configuration());
-    pigeon.getConfigurator().setYaw(0.0);
-    yaw.setUpdateFrequency(odometryFrequency);
-    yawVelocity.setUpdateFrequency(50.0);
-    pigeon.optimizeBusUtilization();
-    yawTimestampQueue = SparkOdometryThread.getInstance().makeTimestampQueue();
-    yawPositionQueue = SparkOdometryThread.getInstance().registerSignal(yaw::getValueAsDouble);
+    DeviceConfigurator.getInstance()
+        .submit(
+            "Pigeon",
+            () -> {
+              pigeon.getConfigurator().apply(new Pigeon2Configuration());
+              for (int i = 0; i < 5; i++) {
+                if (pigeon.getConfigurator().setYaw(0.0).isOK()) {
+                  break;
+                }
+              }
+              yawZeroedTimestamp = RobotController.getFPGATime() / 1e6;
+              yaw.setUpdateFrequency(odometryFrequency);
+              yawVelocity.setUpdateFrequency(50.0);
+              pigeon.optimizeBusUtilization();
+            });
+    yawBuffers = PhoenixOdometryThread.getInstance().registerSignal(yaw.clone());
+    PhoenixOdometryThread.getInstance().registerLoopSignals(yaw, yawVelocity);
+
+    // Request status rates, applied once every device is registered
+    CanBusPlanner planner = CanBusPlanner.getInstance();
+    var yawRate = planner.request("Pigeon/Yaw", odometryFrequency, odometryFrequency);
+    var yawVelocityRate = planner.request("Pigeon/YawVelocity", 10.0, 50.0);
+    planner.addApplier(
+        () -> {
+          yaw.setUpdateFrequency(yawRate.getAssignedHz());
+          yawVelocity.setUpdateFrequency(yawVelocityRate.getAssignedHz());
+        });
   }
 
   @Override
   public void updateInputs(GyroIOInputs inputs) {
-    inputs.connected = BaseStatusSignal.refreshAll(yaw, yawVelocity).equals(StatusCode.OK);
+    // Refreshed along with every other main loop signal by the drive
+    double zeroedTimestamp = yawZeroedTimestamp;
+    boolean zeroed = !Double.isNaN(zeroedTimestamp);
+    inputs.connected = zeroed && yaw.getStatus().isOK() && yawVelocity.getStatus().isOK();
     inputs.yawPosition = Rotation2d.fromDegrees(yaw.getValueAsDouble());
     inputs.yawVelocityRadPerSec = Units.degreesToRadians(yawVelocity.getValueAsDouble());
 
-    inputs.odometryYawTimestamps =
-        yawTimestampQueue.stream().mapToDouble((Double value) -> value).toArray();
-    inputs.odometryYawPositions =
-        yawPositionQueue.stream()
-            .map((Double value) -> Rotation2d.fromDegrees(value))
-            .toArray(Rotation2d[]::new);
-    yawTimestampQueue.clear();
-    yawPositionQueue.clear();
+    // Read timestamped yaw samples, dropping any the Pigeon failed to report or from before the
+    // yaw was zeroed
+    int sampleCount = PhoenixOdometryThread.getInstance().getLatchedSampleCount(yawBuffers);
+    yawBuffers.values.drain(yawPositionSamples, 0, sampleCount);
+    yawBuffers.timestamps.drain(yawTimestampSamples, 0, sampleCount);
+    int validCount = 0;
+    for (int i = 0; i < sampleCount; i++) {
+      if (zeroed
+          && yawTimestampSamples[i] >= zeroedTimestamp
+          && !Double.isNaN(yawPositionSamples[i])) {
+        yawPositionSamples[validCount] = yawPositionSamples[i];
+        yawTimestampSamples[validCount] = yawTimestampSamples[i];
+        validCount++;
+      }
+    }
+    inputs.odometryYawTimestamps = new double[validCount];
+    inputs.odometryYawPositionsRad = new double[validCount];
+    for (int i = 0; i < validCount; i++) {
+      inputs.odometryYawTimestamps[i] = yawTimestampSamples[i];
+      inputs.odometryYawPositionsRad[i] = Units.degreesToRadians(yawPositionSamples[i]);
+    }
   }
 }
@@ -0,0 +1,24 @@
+package frc.robot.subsystems.drive;
+
+import edu.wpi.first.math.geometry.Rotation2d;
+
+/** Gyro IO implementation reading the true heading of a {@link DriveSimulation}. */
+public class GyroIOSim implements GyroIO {
+  private final DriveSimulation simulation;
+
+  public GyroIOSim(DriveSimulation simulation) {
+    this.simulation = simulation;
+  }
+
+  @Override
+  public void updateInputs(GyroIOInputs inputs) {
+    inputs.connected = true;
+    inputs.yawPosition = new Rotation2d(simulation.getHeadingRad());
+    inputs.yawVelocityRadPerSec = simulation.getAngularVelocityRadPerSec();
+
+    double[] timestamps = simulation.getSampleTimestamps();
+    double[] headings = simulation.getSampleHeadingsRad();
+    inputs.odometryYawTimestamps = timestamps.clone();
+    inputs.odometryYawPositionsRad = headings.clone();
+  }
+}
@@ -0,0 +1,126 @@
+package frc.robot.subsystems.drive;
+
+import edu.wpi.first.math.geometry.Translation2d;
+import frc.robot.util.PoseMath;
+import frc.robot.util.PoseSnapshot;
+
+/**
+ * Integrates odometry on the odometry thread, so the pose is current to the newest sample instead
+ * of the last main loop cycle.
+ *
+ * <p>The main loop {@link DrivePoseEstimator} stays the source of truth, since it fuses the gyro
+ * and vision and replays exactly from the logged inputs. After each cycle, the main loop publishes
+ * its estimate as an anchor, tagged with the sequence number of the last sample it integrated. On
+ * every sample, the odometry thread converts the module deltas to a twist and keeps it in a short
+ * history. When a new anchor arrives, the thread restarts from it and reapplies the twists of the
+ * samples the main loop has not seen yet. Between anchors the heading comes from the modules,
+ * which is accurate over the one or two cycles it covers.
+ *
+ * <p>The published pose depends on thread timing, so anything that reads it will not replay
+ * exactly. The per-sample inputs are unchanged, so the main loop estimate still does.
+ */
+public class LiveOdometry {
+  private static final int twistHistoryCapacity = 2 * SparkOdometryThread.bufferCapacity;
+
+  /** An estimate from the main loop and the sample sequence number it includes. */
+  private static record Anchor(long sequence, double x, double y, double headingRad) {}
+
+  private final Module[] modules;
+  private final DriveKinematics kinematics;
+  private final PoseSnapshot snapshot = new PoseSnapshot();
+  private volatile Anchor anchor = null; // Only written by the main loop
+
+  // Only accessed by the odometry thread
+  private Anchor appliedAnchor = null;
+  private boolean hasPreviousSample = false;
+  private final double[] moduleSample = new double[2];
+  private final double[] previousDistances = new double[DriveKinematics.moduleCount];
+  private final double[] angles = new double[DriveKinematics.moduleCount];
+  private final double[] deltas = new double[DriveKinematics.moduleCount];
+  private final double[] twist = new double[3];
+  private final double[] pose = new double[3];
+  private final long[] twistSequences = new long[twistHistoryCapacity];
+  private final double[] twistX = new double[twistHistoryCapacity];
+  private final double[] twistY = new double[twistHistoryCapacity];
+  private final double[] twistTheta = new double[twistHistoryCapacity];
+
+  public LiveOdometry(Module[] modules, Translation2d[] moduleTranslations) {
+    this.modules = modules;
+    kinematics = new DriveKinematics(moduleTranslations);
+  }
+
+  /**
+   * Publishes the main loop estimate. Must be called from the main loop after the estimator has
+   * integrated the latched samples.
+   *
+   * @param sequence Sequence number of the last sample the estimate includes.
+   * @param estimatedPose Estimated x, y and heading.
+   */
+  public void setAnchor(long sequence, double[] estimatedPose) {
+    anchor = new Anchor(sequence, estimatedPose[0], estimatedPose[1], estimatedPose[2]);
+  }
+
+  /**
+   * Copies the newest pose into the array as x, y and heading. May be called from any thread.
+   *
+   * @return The timestamp of the sample the pose is at, or NaN before the first sample.
+   */
+  public double getPose(double[] pose) {
+    return snapshot.read(pose);
+  }
+
+  /**
+   * Returns the angle of a module in the newest sample. Must only be called from the odometry
+   * thread, such as from a listener registered after this one.
+   */
+  public double getModuleAngleRad(int module) {
+    return angles[module];
+  }
+
+  /** Integrates one sample. Runs on the odometry thread as a sample listener. */
+  public void onSample(long sequence, double timestamp) {
+    // Read the sample, holding the previous position of any module whose read failed
+    for (int i = 0; i < DriveKinematics.moduleCount; i++) {
+      if (modules[i].getLatestOdometrySample(moduleSample)) {
+        deltas[i] = hasPreviousSample ? moduleSample[0] - previousDistances[i] : 0.0;
+        previousDistances[i] = moduleSample[0];
+        angles[i] = moduleSample[1];
+      } else {
+        deltas[i] = 0.0;
+      }
+    }
+    hasPreviousSample = true;
+
+    // Record the twist so it can be reapplied from a later anchor
+    kinematics.toChassisSpeeds(deltas, angles, twist);
+    int index = (int) (sequence % twistHistoryCapacity);
+    twistSequences[index] = sequence;
+    twistX[index] = twist[0];
+    twistY[index] = twist[1];
+    twistTheta[index] = twist[2];
+
+    // Restart from a new anchor, replaying the samples the main loop has not integrated yet
+    Anchor latestAnchor = anchor;
+    if (latestAnchor == null) {
+      return;
+    }
+    if (latestAnchor != appliedAnchor) {
+      appliedAnchor = latestAnchor;
+      pose[0] = latestAnchor.x();
+      pose[1] = latestAnchor.y();
+      pose[2] = latestAnchor.headingRad();
+      long firstSequence =
+          Math.max(latestAnchor.sequence() + 1, sequence - twistHistoryCapacity + 1);
+      for (long replaySequence = firstSequence; replaySequence <= sequence; replaySequence++) {
+        int replayIndex = (int) (replaySequence % twistHistoryCapacity);
+        if (twistSequences[replayIndex] == replaySequence) {
+          PoseMath.exp(
+              pose, twistX[replayIndex], twistY[replayIndex], twistTheta[replayIndex], pose);
+        }
+      }
+    } else {
+      PoseMath.exp(pose, twist, pose);
+    }
+    snapshot.publish(timestamp, pose);
+  }
+}
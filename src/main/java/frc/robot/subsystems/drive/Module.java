@@ -15,11 +15,14 @@ package frc.robot.subsystems.drive;
 
 import static frc.robot.subsystems.drive.DriveConstants.*;
 
+import edu.wpi.first.math.MathUtil;
 import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.kinematics.SwerveModulePosition;
 import edu.wpi.first.math.kinematics.SwerveModuleState;
 import edu.wpi.first.wpilibj.Alert;
 import edu.wpi.first.wpilibj.Alert.AlertType;
+import frc.robot.util.LogPolicy;
+import frc.robot.util.LogPolicy.Tier;
 import org.littletonrobotics.junction.Logger;
 
 public class Module {
@@ -29,7 +32,28 @@ public class Module {
 
   private final Alert driveDisconnectedAlert;
   private final Alert turnDisconnectedAlert;
-  private SwerveModulePosition[] odometryPositions = new SwerveModulePosition[] {};
+  private final String inputsKey;
+  private final LogPolicy.Output sampleCountsOutput;
+  private final String driveRejectedSamplesKey;
+  private final String turnRejectedSamplesKey;
+  private final String patchedSamplesKey;
+
+  // Odometry positions received this cycle, reused between cycles
+  private double[] odometryDrivePositionsMeters = new double[SparkOdometryThread.bufferCapacity];
+  private double[] odometryTurnPositionsRad = new double[SparkOdometryThread.bufferCapacity];
+
+  // Last valid odometry sample of each signal, used to patch samples that failed to read
+  private double lastValidDriveTimestamp = Double.NaN;
+  private double lastValidDrivePositionRad = 0.0;
+  private double lastValidTurnTimestamp = Double.NaN;
+  private double lastValidTurnPositionRad = 0.0;
+  private long driveRejectedSamples = 0;
+  private long turnRejectedSamples = 0;
+  private long patchedSamples = 0;
+
+  // Last optimized setpoint, for logging
+  private volatile double setpointSpeedMetersPerSec = 0.0;
+  private volatile double setpointAngleRad = 0.0;
 
   public Module(ModuleIO io, int index) {
     this.io = io;
@@ -41,19 +65,74 @@ public class Module {
     turnDisconnectedAlert =
         new Alert(
             "Disconnected turn motor on module " + Integer.toString(index) + ".", AlertType.kError);
+    inputsKey = "Drive/Module" + Integer.toString(index);
+    sampleCountsOutput =
+        LogPolicy.output("Odometry/Module" + Integer.toString(index), Tier.DEBUG, 5.0);
+    driveRejectedSamplesKey = sampleCountsOutput.getKey() + "/DriveRejectedSamples";
+    turnRejectedSamplesKey = sampleCountsOutput.getKey() + "/TurnRejectedSamples";
+    patchedSamplesKey = sampleCountsOutput.getKey() + "/PatchedSamples";
   }
 
   public void periodic() {
     io.updateInputs(inputs);
-    Logger.processInputs("Drive/Module" + Integer.toString(index), inputs);
+    Logger.processInputs(inputsKey, inputs);
 
-    // Calculate positions for odometry
+    // Calculate positions for odometry, patching any signal that failed to read
     int sampleCount = inputs.odometryTimestamps.length; // All signals are sampled together
-    odometryPositions = new SwerveModulePosition[sampleCount];
+    if (odometryDrivePositionsMeters.length < sampleCount) {
+      odometryDrivePositionsMeters = new double[sampleCount];
+      odometryTurnPositionsRad = new double[sampleCount];
+    }
     for (int i = 0; i < sampleCount; i++) {
-      double positionMeters = inputs.odometryDrivePositionsRad[i] * wheelRadiusMeters;
-      Rotation2d angle = inputs.odometryTurnPositions[i];
-      odometryPositions[i] = new SwerveModulePosition(positionMeters, angle);
+      double timestamp = inputs.odometryTimestamps[i];
+      int validMask = getValidMask(i);
+
+      double positionRad;
+      if ((validMask & ModuleIO.driveValidBit) != 0) {
+        positionRad = inputs.odometryDrivePositionsRad[i];
+        lastValidDriveTimestamp = timestamp;
+        lastValidDrivePositionRad = positionRad;
+      } else {
+        driveRejectedSamples++;
+        int next = findNextValidSample(i, ModuleIO.driveValidBit);
+        positionRad =
+            next < 0
+                ? lastValidDrivePositionRad
+                : MathUtil.interpolate(
+                    lastValidDrivePositionRad,
+                    inputs.odometryDrivePositionsRad[next],
+                    interpolationFraction(
+                        lastValidDriveTimestamp, inputs.odometryTimestamps[next], timestamp));
+      }
+
+      double angleRad;
+      if ((validMask & ModuleIO.turnValidBit) != 0) {
+        angleRad = inputs.odometryTurnPositionsRad[i];
+        lastValidTurnTimestamp = timestamp;
+        lastValidTurnPositionRad = angleRad;
+      } else {
+        turnRejectedSamples++;
+        int next = findNextValidSample(i, ModuleIO.turnValidBit);
+        angleRad =
+            next < 0
+                ? lastValidTurnPositionRad
+                : lastValidTurnPositionRad
+                    + MathUtil.angleModulus(
+                            inputs.odometryTurnPositionsRad[next] - lastValidTurnPositionRad)
+                        * interpolationFraction(
+                            lastValidTurnTimestamp, inputs.odometryTimestamps[next], timestamp);
+      }
+
+      if (validMask != (ModuleIO.driveValidBit | ModuleIO.turnValidBit)) {
+        patchedSamples++;
+      }
+      odometryDrivePositionsMeters[i] = positionRad * wheelRadiusMeters;
+      odometryTurnPositionsRad[i] = angleRad;
+    }
+    if (sampleCountsOutput.shouldRecord()) {
+      Logger.recordOutput(driveRejectedSamplesKey, driveRejectedSamples);
+      Logger.recordOutput(turnRejectedSamplesKey, turnRejectedSamples);
+      Logger.recordOutput(patchedSamplesKey, patchedSamples);
     }
 
     // Update alerts
@@ -61,21 +140,66 @@ public class Module {
     turnDisconnectedAlert.set(!inputs.turnConnected);
   }
 
-  /** Runs the module with the specified setpoint state. Mutates the state to optimize it. */
-  public void runSetpoint(SwerveModuleState state) {
+  /** Returns the validity mask of a sample, treating samples logged without a mask as valid. */
+  private int getValidMask(int sample) {
+    if (inputs.odometryValidMasks.length != inputs.odometryTimestamps.length) {
+      return ModuleIO.driveValidBit | ModuleIO.turnValidBit;
+    }
+    return inputs.odometryValidMasks[sample];
+  }
+
+  /** Returns the index of the next sample this cycle where the signal is valid, or -1. */
+  private int findNextValidSample(int sample, int validBit) {
+    for (int i = sample + 1; i < inputs.odometryTimestamps.length; i++) {
+      if ((getValidMask(i) & validBit) != 0) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /** Returns how far the timestamp lies between two samples, or 1.0 if there is no start. */
+  private static double interpolationFraction(
+      double startTimestamp, double endTimestamp, double timestamp) {
+    if (Double.isNaN(startTimestamp) || endTimestamp <= startTimestamp) {
+      return 1.0;
+    }
+    return MathUtil.clamp((timestamp - startTimestamp) / (endTimestamp - startTimestamp), 0.0, 1.0);
+  }
+
+  /**
+   * Runs the module with the specified setpoint, optimized like {@link SwerveModuleState#optimize}
+   * and {@link SwerveModuleState#cosineScale} without allocating.
+   */
+  public void runSetpoint(double speedMetersPerSec, double angleRad) {
     // Optimize velocity setpoint
-    state.optimize(getAngle());
-    state.cosineScale(inputs.turnPosition);
+    double errorRad = MathUtil.angleModulus(angleRad - inputs.turnPosition.getRadians());
+    if (Math.abs(errorRad) > Math.PI / 2.0) {
+      speedMetersPerSec = -speedMetersPerSec;
+      angleRad = MathUtil.angleModulus(angleRad + Math.PI);
+      errorRad = MathUtil.angleModulus(errorRad + Math.PI);
+    }
+    speedMetersPerSec *= Math.cos(errorRad);
 
     // Apply setpoints
-    io.setDriveVelocity(state.speedMetersPerSecond / wheelRadiusMeters);
-    io.setTurnPosition(state.angle);
+    runOptimizedSetpoint(speedMetersPerSec, angleRad);
+  }
+
+  /**
+   * Runs the module at a setpoint that is already optimized, without reading the inputs. Safe to
+   * call from the odometry thread.
+   */
+  public void runOptimizedSetpoint(double speedMetersPerSec, double angleRad) {
+    setpointSpeedMetersPerSec = speedMetersPerSec;
+    setpointAngleRad = angleRad;
+    io.setDriveVelocity(speedMetersPerSec / wheelRadiusMeters);
+    io.setTurnPosition(angleRad);
   }
 
   /** Runs the module with the specified output while controlling to zero degrees. */
   public void runCharacterization(double output) {
     io.setDriveOpenLoop(output);
-    io.setTurnPosition(new Rotation2d());
+    io.setTurnPosition(0.0);
   }
 
   /** Disables all outputs to motors. */
@@ -89,6 +213,16 @@ public class Module {
     return inputs.turnPosition;
   }
 
+  /** Returns the speed of the last optimized setpoint in meters per second. */
+  public double getSetpointSpeedMetersPerSec() {
+    return setpointSpeedMetersPerSec;
+  }
+
+  /** Returns the angle of the last optimized setpoint in radians. */
+  public double getSetpointAngleRad() {
+    return setpointAngleRad;
+  }
+
   /** Returns the current drive position of the module in meters. */
   public double getPositionMeters() {
     return inputs.drivePositionRad * wheelRadiusMeters;
@@ -99,6 +233,11 @@ public class Module {
     return inputs.driveVelocityRadPerSec * wheelRadiusMeters;
   }
 
+  /** Returns the current drive motor current in amps. */
+  public double getDriveCurrentAmps() {
+    return inputs.driveCurrentAmps;
+  }
+
   /** Returns the module position (turn angle and drive position). */
   public SwerveModulePosition getPosition() {
     return new SwerveModulePosition(getPositionMeters(), getAngle());
@@ -109,9 +248,20 @@ public class Module {
     return new SwerveModuleState(getVelocityMetersPerSec(), getAngle());
   }
 
-  /** Returns the module positions received this cycle. */
-  public SwerveModulePosition[] getOdometryPositions() {
-    return odometryPositions;
+  /**
+   * Returns the drive positions in meters of the samples received this cycle. Only the first
+   * {@link #getOdometryTimestamps()}.length entries are valid, and the array is reused next cycle.
+   */
+  public double[] getOdometryDrivePositionsMeters() {
+    return odometryDrivePositionsMeters;
+  }
+
+  /**
+   * Returns the turn angles in radians of the samples received this cycle. Only the first {@link
+   * #getOdometryTimestamps()}.length entries are valid, and the array is reused next cycle.
+   */
+  public double[] getOdometryTurnPositionsRad() {
+    return odometryTurnPositionsRad;
   }
 
   /** Returns the timestamps of the samples received this cycle. */
@@ -119,6 +269,20 @@ public class Module {
     return inputs.odometryTimestamps;
   }
 
+  /**
+   * Writes the newest drive position in meters and turn angle in radians read on the odometry
+   * thread, bypassing the logged inputs. Must only be called from the odometry thread.
+   *
+   * @return False if the IO does not sample on the odometry thread or the newest read failed.
+   */
+  public boolean getLatestOdometrySample(double[] sample) {
+    if (!io.getLatestOdometrySample(sample)) {
+      return false;
+    }
+    sample[0] *= wheelRadiusMeters;
+    return true;
+  }
+
   /** Returns the module position in radians. */
   public double getWheelRadiusCharacterizationPosition() {
     return inputs.drivePositionRad;
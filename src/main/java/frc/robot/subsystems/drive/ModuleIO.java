@@ -17,6 +17,12 @@ import edu.wpi.first.math.geometry.Rotation2d;
 import org.littletonrobotics.junction.AutoLog;
 
 public interface ModuleIO {
+  /** Bit set in {@code odometryValidMasks} when the drive position of a sample was read. */
+  public static final int driveValidBit = 1 << 0;
+
+  /** Bit set in {@code odometryValidMasks} when the turn position of a sample was read. */
+  public static final int turnValidBit = 1 << 1;
+
   @AutoLog
   public static class ModuleIOInputs {
     public boolean driveConnected = false;
@@ -30,15 +36,36 @@ public interface ModuleIO {
     public double turnVelocityRadPerSec = 0.0;
     public double turnAppliedVolts = 0.0;
     public double turnCurrentAmps = 0.0;
+    public double turnAbsolutePositionRad = 0.0; // Before the zero offset, for calibrating it
+    public double turnDriftRad = 0.0; // Turn position minus absolute position
+    public long turnReseedCount = 0;
 
+    // The logger keeps a reference to each array and skips it if equal to the last one, so these
+    // must be new arrays every cycle rather than refilled in place
     public double[] odometryTimestamps = new double[] {};
     public double[] odometryDrivePositionsRad = new double[] {};
-    public Rotation2d[] odometryTurnPositions = new Rotation2d[] {};
+    // Replaced the Rotation2d[] "OdometryTurnPositions", so older logs can't be replayed
+    public double[] odometryTurnPositionsRad = new double[] {};
+    public int[] odometryValidMasks = new int[] {};
+
+    public double[] odometryTurnAbsoluteTimestamps = new double[] {};
+    public double[] odometryTurnAbsolutePositionsRad = new double[] {};
   }
 
   /** Updates the set of loggable inputs. */
   public default void updateInputs(ModuleIOInputs inputs) {}
 
+  /**
+   * Writes the newest drive position (rad) and turn position (rad) read on the odometry thread.
+   * Must only be called from the odometry thread, such as from a {@link
+   * SparkOdometryThread.SampleListener}.
+   *
+   * @return False if this IO does not sample on the odometry thread or the newest read failed.
+   */
+  public default boolean getLatestOdometrySample(double[] positionsRad) {
+    return false;
+  }
+
   /** Run the drive motor at the specified open loop value. */
   public default void setDriveOpenLoop(double output) {}
 
@@ -48,6 +75,6 @@ public interface ModuleIO {
   /** Run the drive motor at the specified velocity. */
   public default void setDriveVelocity(double velocityRadPerSec) {}
 
-  /** Run the turn motor to the specified rotation. */
-  public default void setTurnPosition(Rotation2d rotation) {}
+  /** Run the turn motor to the specified angle, taken as radians so callers don't allocate. */
+  public default void setTurnPosition(double angleRad) {}
 }
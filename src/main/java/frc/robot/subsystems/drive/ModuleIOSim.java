@@ -16,103 +16,138 @@ package frc.robot.subsystems.drive;
 import static frc.robot.subsystems.drive.DriveConstants.*;
 
 import edu.wpi.first.math.MathUtil;
-import edu.wpi.first.math.controller.PIDController;
 import edu.wpi.first.math.geometry.Rotation2d;
-import edu.wpi.first.math.system.plant.LinearSystemId;
-import edu.wpi.first.wpilibj.Timer;
-import edu.wpi.first.wpilibj.simulation.DCMotorSim;
-
-/** Physics sim implementation of module IO. */
+import java.util.Random;
+
+/**
+ * Physics sim implementation of module IO, reading one module of a {@link DriveSimulation}.
+ *
+ * <p>The simulation records the true module state at the odometry frequency, so the main loop
+ * receives several samples per cycle like it does on the robot. A sample reports the module state
+ * from {@link DriveConstants#simOdometryLatencySecs} earlier, plus a random extra delay of up to
+ * {@link DriveConstants#simOdometryJitterSecs}, and each signal fails to read with {@link
+ * DriveConstants#simOdometryDropProbability}. Random values come from a fixed seed, so runs are
+ * repeatable.
+ */
 public class ModuleIOSim implements ModuleIO {
-  private final DCMotorSim driveSim;
-  private final DCMotorSim turnSim;
-
-  private boolean driveClosedLoop = false;
-  private boolean turnClosedLoop = false;
-  private PIDController driveController = new PIDController(driveSimP, 0, driveSimD);
-  private PIDController turnController = new PIDController(turnSimP, 0, turnSimD);
-  private double driveFFVolts = 0.0;
-  private double driveAppliedVolts = 0.0;
-  private double turnAppliedVolts = 0.0;
-
-  public ModuleIOSim() {
-    // Create drive and turn sim models
-    driveSim =
-        new DCMotorSim(
-            LinearSystemId.createDCMotorSystem(driveGearbox, 0.025, driveMotorReduction),
-            driveGearbox);
-    turnSim =
-        new DCMotorSim(
-            LinearSystemId.createDCMotorSystem(turnGearbox, 0.004, turnMotorReduction),
-            turnGearbox);
-
-    // Enable wrapping for turn PID
-    turnController.enableContinuousInput(-Math.PI, Math.PI);
+  private static final Random random = new Random(simRandomSeed);
+
+  private final DriveSimulation.SimModule module;
+  private final DriveSimulation simulation;
+  private final int samplesPerCycle = DriveSimulation.samplesPerCycle;
+  private final double sampleSecs = DriveSimulation.loopPeriodSecs / samplesPerCycle;
+
+  // Module state at each recent sample, used to report delayed samples
+  private final int historyLength =
+      (int) Math.ceil((simOdometryLatencySecs + simOdometryJitterSecs) / sampleSecs) + 2;
+  private final double[] historyTimestamps = new double[historyLength];
+  private final double[] historyDrivePositionsRad = new double[historyLength];
+  private final double[] historyTurnPositionsRad = new double[historyLength];
+  private int historyNewest = -1;
+
+  public ModuleIOSim(DriveSimulation simulation, int index) {
+    this.simulation = simulation;
+    module = simulation.getModule(index);
   }
 
   @Override
   public void updateInputs(ModuleIOInputs inputs) {
-    // Run closed-loop control
-    if (driveClosedLoop) {
-      driveAppliedVolts =
-          driveFFVolts + driveController.calculate(driveSim.getAngularVelocityRadPerSec());
-    } else {
-      driveController.reset();
+    inputs.odometryTimestamps = new double[samplesPerCycle];
+    inputs.odometryDrivePositionsRad = new double[samplesPerCycle];
+    inputs.odometryTurnPositionsRad = new double[samplesPerCycle];
+    inputs.odometryValidMasks = new int[samplesPerCycle];
+
+    // Take the samples recorded by the last simulation update, each from a little earlier
+    double[] timestamps = simulation.getSampleTimestamps();
+    double[] drivePositions = module.getSampleDrivePositionsRad();
+    double[] turnPositions = module.getSampleTurnPositionsRad();
+    if (historyNewest < 0) {
+      for (int i = 0; i < historyLength; i++) {
+        recordHistory(timestamps[0] - sampleSecs, drivePositions[0], turnPositions[0]);
+      }
     }
-    if (turnClosedLoop) {
-      turnAppliedVolts = turnController.calculate(turnSim.getAngularPositionRad());
-    } else {
-      turnController.reset();
+    for (int i = 0; i < samplesPerCycle; i++) {
+      double timestamp = timestamps[i];
+      recordHistory(timestamp, drivePositions[i], turnPositions[i]);
+
+      double sampleAge = simOdometryLatencySecs + random.nextDouble() * simOdometryJitterSecs;
+      int validMask = 0;
+      inputs.odometryTimestamps[i] = timestamp;
+      if (random.nextDouble() >= simOdometryDropProbability) {
+        inputs.odometryDrivePositionsRad[i] =
+            historyAt(timestamp - sampleAge, historyDrivePositionsRad);
+        validMask |= driveValidBit;
+      } else {
+        inputs.odometryDrivePositionsRad[i] = 0.0;
+      }
+      if (random.nextDouble() >= simOdometryDropProbability) {
+        inputs.odometryTurnPositionsRad[i] =
+            MathUtil.angleModulus(historyAt(timestamp - sampleAge, historyTurnPositionsRad));
+        validMask |= turnValidBit;
+      } else {
+        inputs.odometryTurnPositionsRad[i] = 0.0;
+      }
+      inputs.odometryValidMasks[i] = validMask;
     }
 
-    // Update simulation state
-    driveSim.setInputVoltage(MathUtil.clamp(driveAppliedVolts, -12.0, 12.0));
-    turnSim.setInputVoltage(MathUtil.clamp(turnAppliedVolts, -12.0, 12.0));
-    driveSim.update(0.02);
-    turnSim.update(0.02);
-
     // Update drive inputs
     inputs.driveConnected = true;
-    inputs.drivePositionRad = driveSim.getAngularPositionRad();
-    inputs.driveVelocityRadPerSec = driveSim.getAngularVelocityRadPerSec();
-    inputs.driveAppliedVolts = driveAppliedVolts;
-    inputs.driveCurrentAmps = Math.abs(driveSim.getCurrentDrawAmps());
+    inputs.drivePositionRad = module.getDrivePositionRad();
+    inputs.driveVelocityRadPerSec = module.getDriveVelocityRadPerSec();
+    inputs.driveAppliedVolts = module.getDriveAppliedVolts();
+    inputs.driveCurrentAmps = module.getDriveCurrentAmps();
 
     // Update turn inputs
     inputs.turnConnected = true;
-    inputs.turnPosition = new Rotation2d(turnSim.getAngularPositionRad());
-    inputs.turnVelocityRadPerSec = turnSim.getAngularVelocityRadPerSec();
-    inputs.turnAppliedVolts = turnAppliedVolts;
-    inputs.turnCurrentAmps = Math.abs(turnSim.getCurrentDrawAmps());
-
-    // Update odometry inputs (50Hz because high-frequency odometry in sim doesn't matter)
-    inputs.odometryTimestamps = new double[] {Timer.getFPGATimestamp()};
-    inputs.odometryDrivePositionsRad = new double[] {inputs.drivePositionRad};
-    inputs.odometryTurnPositions = new Rotation2d[] {inputs.turnPosition};
+    inputs.turnPosition = new Rotation2d(module.getTurnPositionRad());
+    inputs.turnVelocityRadPerSec = module.getTurnVelocityRadPerSec();
+    inputs.turnAppliedVolts = module.getTurnAppliedVolts();
+    inputs.turnCurrentAmps = module.getTurnCurrentAmps();
+  }
+
+  /** Stores a sample as the newest history entry. */
+  private void recordHistory(double timestamp, double drivePositionRad, double turnPositionRad) {
+    historyNewest = (historyNewest + 1) % historyLength;
+    historyTimestamps[historyNewest] = timestamp;
+    historyDrivePositionsRad[historyNewest] = drivePositionRad;
+    historyTurnPositionsRad[historyNewest] = turnPositionRad;
+  }
+
+  /**
+   * Returns a value from the history interpolated to the timestamp, holding the oldest value for
+   * earlier timestamps.
+   */
+  private double historyAt(double timestamp, double[] values) {
+    int newer = historyNewest;
+    for (int i = 1; i < historyLength; i++) {
+      int older = (historyNewest - i + historyLength) % historyLength;
+      if (historyTimestamps[older] <= timestamp) {
+        double span = historyTimestamps[newer] - historyTimestamps[older];
+        double t = span > 0.0 ? (timestamp - historyTimestamps[older]) / span : 1.0;
+        return MathUtil.interpolate(values[older], values[newer], t);
+      }
+      newer = older;
+    }
+    return values[newer];
   }
 
   @Override
   public void setDriveOpenLoop(double output) {
-    driveClosedLoop = false;
-    driveAppliedVolts = output;
+    module.setDriveOpenLoop(output);
   }
 
   @Override
   public void setTurnOpenLoop(double output) {
-    turnClosedLoop = false;
-    turnAppliedVolts = output;
+    module.setTurnOpenLoop(output);
   }
 
   @Override
   public void setDriveVelocity(double velocityRadPerSec) {
-    driveClosedLoop = true;
-    driveFFVolts = driveSimKs * Math.signum(velocityRadPerSec) + driveSimKv * velocityRadPerSec;
-    driveController.setSetpoint(velocityRadPerSec);
+    module.setDriveVelocity(velocityRadPerSec);
   }
 
   @Override
-  public void setTurnPosition(Rotation2d rotation) {
-    turnClosedLoop = true;
-    turnController.setSetpoint(rotation.getRadians());
+  public void setTurnPosition(double angleRad) {
+    module.setTurnPosition(angleRad);
   }
 }
@@ -16,7 +16,9 @@ package frc.robot.subsystems.drive;
 import static frc.robot.subsystems.drive.DriveConstants.*;
 import static frc.robot.util.SparkUtil.*;
 
+import com.ctre.phoenix6.StatusSignal;
 import com.ctre.phoenix6.hardware.CANcoder;
+import com.revrobotics.REVLibError;
 import com.revrobotics.RelativeEncoder;
 import com.revrobotics.spark.ClosedLoopSlot;
 import com.revrobotics.spark.SparkBase;
@@ -35,9 +37,11 @@ import com.revrobotics.spark.config.SparkMaxConfig;
 import edu.wpi.first.math.MathUtil;
 import edu.wpi.first.math.filter.Debouncer;
 import edu.wpi.first.math.geometry.Rotation2d;
-import java.util.Queue;
-import java.util.function.DoubleSupplier;
-import org.littletonrobotics.junction.Logger;
+import edu.wpi.first.units.measure.Angle;
+import frc.robot.util.CanBusPlanner;
+import frc.robot.util.CoalescingWriter;
+import frc.robot.util.DeviceConfigurator;
+import frc.robot.util.DoubleRingBuffer;
 
 /**
  * Module IO implementation for Spark Flex or Spark Max drive motor controller, Spark Max turn motor
@@ -52,21 +56,55 @@ public class ModuleIOSpark implements ModuleIO {
   private final RelativeEncoder driveEncoder;
   private final RelativeEncoder turnEncoder;
   private final CANcoder turnAbsoluteEncoder;
+  private final StatusSignal<Angle> turnAbsolutePosition;
 
   // Closed loop controllers
   private final SparkClosedLoopController driveController;
   private final SparkClosedLoopController turnController;
 
-  // Queue inputs from odometry thread
-  private final Queue<Double> timestampQueue;
-  private final Queue<Double> drivePositionQueue;
-  private final Queue<Double> turnPositionQueue;
+  // Buffered inputs from odometry thread
+  private final DoubleRingBuffer timestampBuffer;
+  private final DoubleRingBuffer drivePositionBuffer;
+  private final DoubleRingBuffer turnPositionBuffer;
+  private final double[] drivePositionSamples = new double[SparkOdometryThread.bufferCapacity];
+  private final double[] turnPositionSamples = new double[SparkOdometryThread.bufferCapacity];
+
+  // Buffered inputs from Phoenix odometry thread
+  private final PhoenixOdometryThread.SignalBuffers turnAbsoluteBuffers;
+  private final double[] turnAbsolutePositionSamples =
+      new double[SparkOdometryThread.bufferCapacity];
+  private final double[] turnAbsoluteTimestampSamples =
+      new double[SparkOdometryThread.bufferCapacity];
+
+  // Output writes, skipped when the setpoint has not changed
+  private static final int openLoopMode = 0;
+  private static final int closedLoopMode = 1;
+  private final CoalescingWriter driveWriter;
+  private final CoalescingWriter turnWriter;
+
+  // Status values read each cycle, reused between cycles
+  static final int positionIndex = 0;
+  static final int velocityIndex = 1;
+  static final int appliedOutputIndex = 2;
+  static final int busVoltageIndex = 3;
+  static final int currentIndex = 4;
+  private final double[] driveValues = new double[5];
+  private final double[] turnValues = new double[5];
 
   // Connection debouncers
   private final Debouncer driveConnectedDebounce = new Debouncer(0.5);
   private final Debouncer turnConnectedDebounce = new Debouncer(0.5);
+  private boolean driveReadOk = false;
+  private boolean turnReadOk = false;
 
-  private int moduleID;
+  // Status periods assigned by the CAN bus planner, reapplied when a Spark reports again since it
+  // may have rebooted to the default periods. Null until the planner applies them.
+  private SparkMaxConfig driveStatusConfig = null;
+  private SparkMaxConfig turnStatusConfig = null;
+
+  // Turn encoder drift against the CANcoder
+  private final TurnDriftMonitor turnDriftMonitor = new TurnDriftMonitor();
+  private long turnReseedCount = 0;
 
   public ModuleIOSpark(int module) {
     this(module, false);
@@ -119,7 +157,9 @@ public class ModuleIOSpark implements ModuleIO {
     driveController = driveSpark.getClosedLoopController();
     turnController = turnSpark.getClosedLoopController();
 
-    // Configure drive motor
+    // Configure drive motor, on a worker thread alongside the other devices
+    DeviceConfigurator configurator = DeviceConfigurator.getInstance();
+    String name = "Module" + module;
     if (useSparkMaxForDrive) {
       var driveConfig = new SparkMaxConfig();
       driveConfig
@@ -139,18 +179,12 @@ public class ModuleIOSpark implements ModuleIO {
       driveConfig
           .signals
           .primaryEncoderPositionAlwaysOn(true)
-          .primaryEncoderPositionPeriodMs((int) (1000.0 / odometryFrequency))
-          .primaryEncoderVelocityAlwaysOn(true)
-          .primaryEncoderVelocityPeriodMs(20)
-          .appliedOutputPeriodMs(20)
-          .busVoltagePeriodMs(20)
-          .outputCurrentPeriodMs(20);
-      tryUntilOk(
+          .primaryEncoderVelocityAlwaysOn(true);
+      configurator.configureSpark(
+          name + "/Drive",
           driveSpark,
-          5,
-          () ->
-              driveSpark.configure(
-                  driveConfig, ResetMode.kResetSafeParameters, PersistMode.kPersistParameters));
+          driveConfig,
+          () -> driveEncoder.setPosition(0.0));
     } else {
       var driveConfig = new SparkFlexConfig();
       driveConfig
@@ -172,28 +206,27 @@ public class ModuleIOSpark implements ModuleIO {
       driveConfig
           .signals
           .primaryEncoderPositionAlwaysOn(true)
-          .primaryEncoderPositionPeriodMs((int) (1000.0 / odometryFrequency))
-          .primaryEncoderVelocityAlwaysOn(true)
-          .primaryEncoderVelocityPeriodMs(20)
-          .appliedOutputPeriodMs(20)
-          .busVoltagePeriodMs(20)
-          .outputCurrentPeriodMs(20);
-      tryUntilOk(
+          .primaryEncoderVelocityAlwaysOn(true);
+      configurator.configureSpark(
+          name + "/Drive",
           driveSpark,
-          5,
-          () ->
-              driveSpark.configure(
-                  driveConfig, ResetMode.kResetSafeParameters, PersistMode.kPersistParameters));
+          driveConfig,
+          () -> driveEncoder.setPosition(0.0));
     }
-    tryUntilOk(driveSpark, 5, () -> driveEncoder.setPosition(0.0));
 
-    // Configure turn motor
+    // Configure turn motor, seeding from the absolute position read on this thread, since this
+    // thread keeps using the same status signal below while the worker runs
+    double turnSeedRad = turnAbsoluteEncoder.getAbsolutePosition().getValueAsDouble() * 2 * Math.PI;
     var turnConfig = new SparkMaxConfig();
     turnConfig
         .inverted(turnInverted)
         .idleMode(IdleMode.kBrake)
         .smartCurrentLimit(turnMotorCurrentLimit)
         .voltageCompensation(12.0);
+    turnConfig
+        .encoder
+        .positionConversionFactor(turnMotorEncoderPositionFactor)
+        .velocityConversionFactor(turnMotorEncoderVelocityFactor);
     turnConfig
         .absoluteEncoder
         .inverted(turnEncoderInverted)
@@ -208,87 +241,284 @@ public class ModuleIOSpark implements ModuleIO {
         .pidf(turnKp, 0.0, turnKd, 0.0);
     turnConfig
         .signals
+        .primaryEncoderPositionAlwaysOn(true)
+        .primaryEncoderVelocityAlwaysOn(true)
         .absoluteEncoderPositionAlwaysOn(true)
-        .absoluteEncoderPositionPeriodMs((int) (1000.0 / odometryFrequency))
-        .absoluteEncoderVelocityAlwaysOn(true)
-        .absoluteEncoderVelocityPeriodMs(20)
-        .appliedOutputPeriodMs(20)
-        .busVoltagePeriodMs(20)
-        .outputCurrentPeriodMs(20);
-    tryUntilOk(
+        .absoluteEncoderVelocityAlwaysOn(true);
+    configurator.configureSpark(
+        name + "/Turn",
         turnSpark,
-        5,
-        () ->
-            turnSpark.configure(
-                turnConfig, ResetMode.kResetSafeParameters, PersistMode.kPersistParameters));
-
-    turnEncoder.setPosition(
-        (turnAbsoluteEncoder.getAbsolutePosition().getValueAsDouble() * 2 * Math.PI));
-    timestampQueue = SparkOdometryThread.getInstance().makeTimestampQueue();
-    drivePositionQueue =
+        turnConfig,
+        () -> turnEncoder.setPosition(turnSeedRad));
+
+    timestampBuffer = SparkOdometryThread.getInstance().makeTimestampBuffer();
+    drivePositionBuffer =
         SparkOdometryThread.getInstance().registerSignal(driveSpark, driveEncoder::getPosition);
-    turnPositionQueue =
+    turnPositionBuffer =
         SparkOdometryThread.getInstance().registerSignal(turnSpark, turnEncoder::getPosition);
+    turnAbsolutePosition = turnAbsoluteEncoder.getAbsolutePosition();
+    turnAbsolutePosition.setUpdateFrequency(odometryFrequency);
+    turnAbsoluteBuffers =
+        PhoenixOdometryThread.getInstance().registerSignal(turnAbsolutePosition.clone());
+    PhoenixOdometryThread.getInstance().registerLoopSignals(turnAbsolutePosition);
+    requestStatusRates(module);
 
-    this.moduleID = module;
+    driveWriter = new CoalescingWriter("Module" + module + "/Drive");
+    turnWriter = new CoalescingWriter("Module" + module + "/Turn");
+  }
+
+  /**
+   * Requests the status rates this module reads from the CAN bus planner, which applies them once
+   * every device is registered. The odometry thread samples the primary encoder of both motors.
+   */
+  private void requestStatusRates(int module) {
+    CanBusPlanner planner = CanBusPlanner.getInstance();
+    String name = "Module" + module;
+    var drivePosition =
+        planner.request(name + "/Drive/Position", odometryFrequency, odometryFrequency);
+    var driveVelocity = planner.request(name + "/Drive/Velocity", 50.0, 50.0);
+    var driveAppliedOutput = planner.request(name + "/Drive/AppliedOutput", 10.0, 50.0);
+    var driveBusVoltage = planner.request(name + "/Drive/BusVoltage", 10.0, 50.0);
+    var driveCurrent = planner.request(name + "/Drive/Current", 50.0, 50.0); // Slip detection
+    var turnPosition =
+        planner.request(name + "/Turn/Position", odometryFrequency, odometryFrequency);
+    var turnVelocity = planner.request(name + "/Turn/Velocity", 10.0, 50.0);
+    var turnAbsoluteSparkPosition = planner.request(name + "/Turn/AbsolutePosition", 10.0, 50.0);
+    var turnAppliedOutput = planner.request(name + "/Turn/AppliedOutput", 10.0, 50.0);
+    var turnBusVoltage = planner.request(name + "/Turn/BusVoltage", 10.0, 50.0);
+    var turnCurrent = planner.request(name + "/Turn/Current", 10.0, 50.0);
+    var cancoderPosition =
+        planner.request(name + "/CANcoder/Position", odometryFrequency, odometryFrequency);
+    double setpointHz = driveControlThread ? odometryFrequency : 50.0;
+    planner.addFixedLoad(name + "/Drive/Setpoint", setpointHz);
+    planner.addFixedLoad(name + "/Turn/Setpoint", setpointHz);
+
+    planner.addApplier(
+        () -> {
+          driveStatusConfig = new SparkMaxConfig();
+          driveStatusConfig
+              .signals
+              .primaryEncoderPositionPeriodMs(drivePosition.getAssignedPeriodMs())
+              .primaryEncoderVelocityPeriodMs(driveVelocity.getAssignedPeriodMs())
+              .appliedOutputPeriodMs(driveAppliedOutput.getAssignedPeriodMs())
+              .busVoltagePeriodMs(driveBusVoltage.getAssignedPeriodMs())
+              .outputCurrentPeriodMs(driveCurrent.getAssignedPeriodMs());
+          driveReadOk = applyStatusConfig(driveSpark, driveStatusConfig);
+
+          turnStatusConfig = new SparkMaxConfig();
+          turnStatusConfig
+              .signals
+              .primaryEncoderPositionPeriodMs(turnPosition.getAssignedPeriodMs())
+              .primaryEncoderVelocityPeriodMs(turnVelocity.getAssignedPeriodMs())
+              .absoluteEncoderPositionPeriodMs(turnAbsoluteSparkPosition.getAssignedPeriodMs())
+              .appliedOutputPeriodMs(turnAppliedOutput.getAssignedPeriodMs())
+              .busVoltagePeriodMs(turnBusVoltage.getAssignedPeriodMs())
+              .outputCurrentPeriodMs(turnCurrent.getAssignedPeriodMs());
+          turnReadOk = applyStatusConfig(turnSpark, turnStatusConfig);
+
+          turnAbsolutePosition.setUpdateFrequency(cancoderPosition.getAssignedHz());
+        });
   }
 
   @Override
   public void updateInputs(ModuleIOInputs inputs) {
-    // Update drive inputs
-    sparkStickyFault = false;
-    ifOk(driveSpark, driveEncoder::getPosition, (value) -> inputs.drivePositionRad = value);
-    ifOk(driveSpark, driveEncoder::getVelocity, (value) -> inputs.driveVelocityRadPerSec = value);
-    ifOk(
-        driveSpark,
-        new DoubleSupplier[] {driveSpark::getAppliedOutput, driveSpark::getBusVoltage},
-        (values) -> inputs.driveAppliedVolts = values[0] * values[1]);
-    ifOk(driveSpark, driveSpark::getOutputCurrent, (value) -> inputs.driveCurrentAmps = value);
-    inputs.driveConnected = driveConnectedDebounce.calculate(!sparkStickyFault);
+    // Update drive inputs, resending the setpoint and status periods once a Spark reports again
+    // since it may have rebooted and lost them
+    boolean driveOk = readStatus(driveSpark, driveEncoder, driveValues);
+    if (driveOk && !driveReadOk) {
+      driveWriter.invalidate();
+      applyStatusConfig(driveSpark, driveStatusConfig);
+    }
+    driveReadOk = driveOk;
+    inputs.driveConnected = driveConnectedDebounce.calculate(driveOk);
+    if (!Double.isNaN(driveValues[positionIndex])) {
+      inputs.drivePositionRad = driveValues[positionIndex];
+    }
+    if (!Double.isNaN(driveValues[velocityIndex])) {
+      inputs.driveVelocityRadPerSec = driveValues[velocityIndex];
+    }
+    double driveAppliedVolts = driveValues[appliedOutputIndex] * driveValues[busVoltageIndex];
+    if (!Double.isNaN(driveAppliedVolts)) {
+      inputs.driveAppliedVolts = driveAppliedVolts;
+    }
+    if (!Double.isNaN(driveValues[currentIndex])) {
+      inputs.driveCurrentAmps = driveValues[currentIndex];
+    }
 
     // Update turn inputs
-    sparkStickyFault = false;
-    ifOk(
-        turnSpark,
-        turnEncoder::getPosition,
-        (value) -> inputs.turnPosition = new Rotation2d(value).minus(zeroRotation));
-    ifOk(turnSpark, turnEncoder::getVelocity, (value) -> inputs.turnVelocityRadPerSec = value);
-    ifOk(
-        turnSpark,
-        new DoubleSupplier[] {turnSpark::getAppliedOutput, turnSpark::getBusVoltage},
-        (values) -> inputs.turnAppliedVolts = values[0] * values[1]);
-    ifOk(turnSpark, turnSpark::getOutputCurrent, (value) -> inputs.turnCurrentAmps = value);
-    inputs.turnConnected = turnConnectedDebounce.calculate(!sparkStickyFault);
+    boolean turnOk = readStatus(turnSpark, turnEncoder, turnValues);
+    if (turnOk && !turnReadOk) {
+      turnWriter.invalidate();
+      applyStatusConfig(turnSpark, turnStatusConfig);
+    }
+    turnReadOk = turnOk;
+    inputs.turnConnected = turnConnectedDebounce.calculate(turnOk);
+    if (!Double.isNaN(turnValues[positionIndex])) {
+      inputs.turnPosition = new Rotation2d(turnValues[positionIndex] - zeroRotation.getRadians());
+    }
+    if (!Double.isNaN(turnValues[velocityIndex])) {
+      inputs.turnVelocityRadPerSec = turnValues[velocityIndex];
+    }
+    double turnAppliedVolts = turnValues[appliedOutputIndex] * turnValues[busVoltageIndex];
+    if (!Double.isNaN(turnAppliedVolts)) {
+      inputs.turnAppliedVolts = turnAppliedVolts;
+    }
+    if (!Double.isNaN(turnValues[currentIndex])) {
+      inputs.turnCurrentAmps = turnValues[currentIndex];
+    }
+
+    // Refreshed along with every other main loop signal by the drive
+    boolean absoluteOk = turnAbsolutePosition.getStatus().isOK();
+    if (absoluteOk) {
+      inputs.turnAbsolutePositionRad = turnAbsolutePosition.getValueAsDouble() * 2 * Math.PI;
+    }
+
+    // Check the turn encoder against the CANcoder, and re-seed it once the module is at rest
+    double seedPositionRad =
+        turnDriftMonitor.update(
+            turnValues[positionIndex],
+            turnValues[velocityIndex],
+            driveValues[velocityIndex],
+            absoluteOk ? inputs.turnAbsolutePositionRad : Double.NaN);
+    inputs.turnDriftRad = turnDriftMonitor.getDriftRad();
+    if (!Double.isNaN(seedPositionRad)
+        && turnEncoder.setPosition(seedPositionRad) == REVLibError.kOk) {
+      turnReseedCount++;
+    }
+    inputs.turnReseedCount = turnReseedCount;
 
     // Update odometry inputs
-    inputs.odometryTimestamps =
-        timestampQueue.stream().mapToDouble((Double value) -> value).toArray();
-    inputs.odometryDrivePositionsRad =
-        drivePositionQueue.stream().mapToDouble((Double value) -> value).toArray();
-    inputs.odometryTurnPositions =
-        turnPositionQueue.stream()
-            .map((Double value) -> new Rotation2d(value).minus(zeroRotation))
-            .toArray(Rotation2d[]::new);
-    timestampQueue.clear();
-    drivePositionQueue.clear();
-    turnPositionQueue.clear();
-
-    Logger.recordOutput(
-        "ABS ENCODER" + moduleID, turnAbsoluteEncoder.getAbsolutePosition().getValueAsDouble());
+    int sampleCount = SparkOdometryThread.getInstance().getLatchedSampleCount(timestampBuffer);
+    inputs.odometryTimestamps = timestampBuffer.drainExactly(sampleCount);
+    drivePositionBuffer.drain(drivePositionSamples, 0, sampleCount);
+    turnPositionBuffer.drain(turnPositionSamples, 0, sampleCount);
+    inputs.odometryDrivePositionsRad = new double[sampleCount];
+    inputs.odometryTurnPositionsRad = new double[sampleCount];
+    inputs.odometryValidMasks = new int[sampleCount];
+    for (int i = 0; i < sampleCount; i++) {
+      // Failed reads arrive as NaN, record them in the mask instead of the value
+      int validMask = 0;
+      if (Double.isNaN(drivePositionSamples[i])) {
+        inputs.odometryDrivePositionsRad[i] = 0.0;
+      } else {
+        inputs.odometryDrivePositionsRad[i] = drivePositionSamples[i];
+        validMask |= driveValidBit;
+      }
+      if (Double.isNaN(turnPositionSamples[i])) {
+        inputs.odometryTurnPositionsRad[i] = 0.0;
+      } else {
+        inputs.odometryTurnPositionsRad[i] =
+            MathUtil.angleModulus(turnPositionSamples[i] - zeroRotation.getRadians());
+        validMask |= turnValidBit;
+      }
+      inputs.odometryValidMasks[i] = validMask;
+    }
+
+    // Update absolute turn inputs, dropping any samples the CANcoder failed to report
+    int absoluteSampleCount =
+        PhoenixOdometryThread.getInstance().getLatchedSampleCount(turnAbsoluteBuffers);
+    turnAbsoluteBuffers.values.drain(turnAbsolutePositionSamples, 0, absoluteSampleCount);
+    turnAbsoluteBuffers.timestamps.drain(turnAbsoluteTimestampSamples, 0, absoluteSampleCount);
+    int validAbsoluteCount = 0;
+    for (int i = 0; i < absoluteSampleCount; i++) {
+      if (!Double.isNaN(turnAbsolutePositionSamples[i])) {
+        turnAbsolutePositionSamples[validAbsoluteCount] = turnAbsolutePositionSamples[i];
+        turnAbsoluteTimestampSamples[validAbsoluteCount] = turnAbsoluteTimestampSamples[i];
+        validAbsoluteCount++;
+      }
+    }
+    inputs.odometryTurnAbsoluteTimestamps = new double[validAbsoluteCount];
+    inputs.odometryTurnAbsolutePositionsRad = new double[validAbsoluteCount];
+    for (int i = 0; i < validAbsoluteCount; i++) {
+      inputs.odometryTurnAbsoluteTimestamps[i] = turnAbsoluteTimestampSamples[i];
+      inputs.odometryTurnAbsolutePositionsRad[i] =
+          MathUtil.angleModulus(
+              turnAbsolutePositionSamples[i] * 2 * Math.PI - zeroRotation.getRadians());
+    }
+  }
+
+  /**
+   * Applies status periods assigned by the CAN bus planner, without persisting them.
+   *
+   * @return Whether the periods were applied, which is false if none are assigned yet.
+   */
+  private static boolean applyStatusConfig(SparkBase spark, SparkMaxConfig config) {
+    if (config == null) {
+      return false;
+    }
+    for (int i = 0; i < 5; i++) {
+      REVLibError error =
+          spark.configure(
+              config, ResetMode.kNoResetSafeParameters, PersistMode.kNoPersistParameters);
+      if (error == REVLibError.kOk) {
+        return true;
+      }
+      sparkStickyFault = true;
+    }
+    return false;
+  }
+
+  /**
+   * Reads the status values of a motor from its cached status frames in one pass, without
+   * allocating. A value that fails to read is stored as NaN.
+   *
+   * @return Whether every value was read.
+   */
+  static boolean readStatus(SparkBase spark, RelativeEncoder encoder, double[] values) {
+    values[positionIndex] = encoder.getPosition();
+    boolean ok = checkRead(spark, values, positionIndex);
+    values[velocityIndex] = encoder.getVelocity();
+    ok &= checkRead(spark, values, velocityIndex);
+    values[appliedOutputIndex] = spark.getAppliedOutput();
+    ok &= checkRead(spark, values, appliedOutputIndex);
+    values[busVoltageIndex] = spark.getBusVoltage();
+    ok &= checkRead(spark, values, busVoltageIndex);
+    values[currentIndex] = spark.getOutputCurrent();
+    ok &= checkRead(spark, values, currentIndex);
+    return ok;
+  }
+
+  /** Replaces the value just read with NaN if the read failed, and returns whether it worked. */
+  private static boolean checkRead(SparkBase spark, double[] values, int index) {
+    if (spark.getLastError() == REVLibError.kOk) {
+      return true;
+    }
+    values[index] = Double.NaN;
+    return false;
+  }
+
+  @Override
+  public boolean getLatestOdometrySample(double[] positionsRad) {
+    double drivePosition = drivePositionBuffer.peekNewest();
+    double turnPosition = turnPositionBuffer.peekNewest();
+    if (Double.isNaN(drivePosition) || Double.isNaN(turnPosition)) {
+      return false;
+    }
+    positionsRad[0] = drivePosition;
+    positionsRad[1] = MathUtil.angleModulus(turnPosition - zeroRotation.getRadians());
+    return true;
   }
 
   @Override
   public void setDriveOpenLoop(double output) {
-    driveSpark.setVoltage(output);
+    if (driveWriter.shouldWrite(openLoopMode, output, 0.0)) {
+      driveSpark.setVoltage(output);
+    }
   }
 
   @Override
   public void setTurnOpenLoop(double output) {
-    turnSpark.setVoltage(output);
+    if (turnWriter.shouldWrite(openLoopMode, output, 0.0)) {
+      turnSpark.setVoltage(output);
+    }
   }
 
   @Override
   public void setDriveVelocity(double velocityRadPerSec) {
+    if (!driveWriter.shouldWrite(
+        closedLoopMode, velocityRadPerSec, driveVelocityWriteDeadband)) {
+      return;
+    }
     double ffVolts = driveKs * Math.signum(velocityRadPerSec) + driveKv * velocityRadPerSec;
     driveController.setReference(
         velocityRadPerSec,
@@ -299,10 +529,12 @@ public class ModuleIOSpark implements ModuleIO {
   }
 
   @Override
-  public void setTurnPosition(Rotation2d rotation) {
+  public void setTurnPosition(double angleRad) {
     double setpoint =
         MathUtil.inputModulus(
-            rotation.plus(zeroRotation).getRadians(), turnPIDMinInput, turnPIDMaxInput);
-    turnController.setReference(setpoint, ControlType.kPosition);
+            angleRad + zeroRotation.getRadians(), turnPIDMinInput, turnPIDMaxInput);
+    if (turnWriter.shouldWrite(closedLoopMode, setpoint, turnPositionWriteDeadband)) {
+      turnController.setReference(setpoint, ControlType.kPosition);
+    }
   }
 }
@@ -0,0 +1,316 @@
+package frc.robot.subsystems.drive;
+
+import edu.wpi.first.math.MathUtil;
+import java.util.Arrays;
+
+/**
+ * Merges module and gyro odometry samples onto a common timeline.
+ *
+ * <p>The timeline is made of the module sample timestamps, merged across modules. Every source is
+ * interpolated onto each timeline point, so sources may run at different rates or drop samples
+ * without shifting the others. A point is only emitted once every live source has a sample at or
+ * after it. Points past that horizon wait for the next cycle. A source that has not reported for
+ * {@link #staleSourceTimeout} no longer holds back the horizon and holds its last value instead.
+ *
+ * <p>When the samples come from the odometry thread, their sequence numbers can be added too, and
+ * {@link #getLastEmittedSequence()} returns the newest one emitted. The pose estimate only
+ * includes the emitted samples, so that is the sequence to tag it with for {@link LiveOdometry}.
+ */
+public class OdometryFusion {
+  /** Time after which a silent source stops holding back the timeline. */
+  public static final double staleSourceTimeout = 0.1; // Secs
+
+  private static final int historyCapacity = 64;
+  private static final double timestampTolerance = 1e-4; // Secs
+  private static final int moduleCount = 4;
+
+  private final SampleHistory[] moduleHistories = new SampleHistory[moduleCount];
+  private final SampleHistory gyroHistory = new SampleHistory();
+  private double lastEmittedTimestamp = Double.NEGATIVE_INFINITY;
+
+  // Sequence numbers of odometry thread samples that have not been emitted yet
+  private final long[] pendingSequences = new long[historyCapacity];
+  private final double[] pendingSequenceTimestamps = new double[historyCapacity];
+  private int pendingSequenceCount = 0;
+  private long lastEmittedSequence = 0;
+
+  // Output of the last call to process()
+  private final double[] timeline = new double[historyCapacity * moduleCount];
+  private final double[][] outputDistances = new double[moduleCount][timeline.length];
+  private final double[][] outputAngles = new double[moduleCount][timeline.length];
+  private final double[] outputYaws = new double[timeline.length];
+  private int outputCount = 0;
+
+  public OdometryFusion() {
+    for (int i = 0; i < moduleCount; i++) {
+      moduleHistories[i] = new SampleHistory();
+    }
+  }
+
+  /** Adds this cycle's samples for one module. */
+  public void addModuleSamples(
+      int module,
+      double[] timestamps,
+      double[] distancesMeters,
+      double[] anglesRad,
+      int sampleCount) {
+    for (int i = 0; i < sampleCount; i++) {
+      moduleHistories[module].add(timestamps[i], distancesMeters[i], anglesRad[i]);
+    }
+  }
+
+  /** Adds this cycle's gyro samples. */
+  public void addGyroSamples(double[] timestamps, double[] yawPositionsRad) {
+    int count = Math.min(timestamps.length, yawPositionsRad.length);
+    for (int i = 0; i < count; i++) {
+      gyroHistory.add(timestamps[i], yawPositionsRad[i], 0.0);
+    }
+  }
+
+  /**
+   * Adds the odometry thread sequence numbers of this cycle's samples, which are numbered
+   * consecutively.
+   *
+   * @param timestamps Timestamps of the samples, oldest first.
+   * @param lastSequence Sequence number of the newest sample.
+   */
+  public void addSampleSequences(double[] timestamps, int sampleCount, long lastSequence) {
+    for (int i = 0; i < sampleCount; i++) {
+      if (pendingSequenceCount == historyCapacity) {
+        // Count the oldest as emitted, since the module histories have dropped it too
+        lastEmittedSequence = pendingSequences[0];
+        pendingSequenceCount--;
+        System.arraycopy(pendingSequences, 1, pendingSequences, 0, pendingSequenceCount);
+        System.arraycopy(
+            pendingSequenceTimestamps, 1, pendingSequenceTimestamps, 0, pendingSequenceCount);
+      }
+      pendingSequences[pendingSequenceCount] = lastSequence - sampleCount + 1 + i;
+      pendingSequenceTimestamps[pendingSequenceCount] = timestamps[i];
+      pendingSequenceCount++;
+    }
+  }
+
+  /**
+   * Builds the timeline of samples that can be emitted this cycle.
+   *
+   * @param useGyro Whether the gyro is connected and should hold back the timeline.
+   * @return The number of timeline points, readable through the getters below.
+   */
+  public int process(boolean useGyro) {
+    // Find the newest sample from any source
+    double newestTimestamp = Double.NEGATIVE_INFINITY;
+    for (var history : moduleHistories) {
+      newestTimestamp = Math.max(newestTimestamp, history.getLatestTimestamp());
+    }
+    if (useGyro) {
+      newestTimestamp = Math.max(newestTimestamp, gyroHistory.getLatestTimestamp());
+    }
+
+    // Emit up to the oldest latest sample among live sources
+    double horizon = Double.POSITIVE_INFINITY;
+    for (var history : moduleHistories) {
+      horizon = limitHorizon(horizon, history, newestTimestamp);
+    }
+    boolean gyroLive = useGyro && isLive(gyroHistory, newestTimestamp);
+    if (gyroLive) {
+      horizon = limitHorizon(horizon, gyroHistory, newestTimestamp);
+    }
+
+    // Merge module timestamps within the window
+    int candidateCount = 0;
+    for (var history : moduleHistories) {
+      for (int i = 0; i < history.count; i++) {
+        double timestamp = history.timestamps[i];
+        if (timestamp > lastEmittedTimestamp && timestamp <= horizon) {
+          timeline[candidateCount++] = timestamp;
+        }
+      }
+    }
+    Arrays.sort(timeline, 0, candidateCount);
+    outputCount = 0;
+    for (int i = 0; i < candidateCount; i++) {
+      if (outputCount == 0 || timeline[i] - timeline[outputCount - 1] > timestampTolerance) {
+        timeline[outputCount++] = timeline[i];
+      }
+    }
+
+    // Interpolate every source onto the timeline
+    for (int i = 0; i < outputCount; i++) {
+      double timestamp = timeline[i];
+      for (int module = 0; module < moduleCount; module++) {
+        SampleHistory history = moduleHistories[module];
+        outputDistances[module][i] = history.interpolateLinear(timestamp);
+        outputAngles[module][i] = history.interpolateAngle(timestamp);
+      }
+      outputYaws[i] = gyroLive ? gyroHistory.interpolateYaw(timestamp) : Double.NaN;
+    }
+
+    // Drop history that is no longer needed for interpolation
+    if (outputCount > 0) {
+      lastEmittedTimestamp = timeline[outputCount - 1];
+    }
+    int emittedSequenceCount = 0;
+    while (emittedSequenceCount < pendingSequenceCount
+        && pendingSequenceTimestamps[emittedSequenceCount] <= lastEmittedTimestamp) {
+      lastEmittedSequence = pendingSequences[emittedSequenceCount];
+      emittedSequenceCount++;
+    }
+    pendingSequenceCount -= emittedSequenceCount;
+    System.arraycopy(
+        pendingSequences, emittedSequenceCount, pendingSequences, 0, pendingSequenceCount);
+    System.arraycopy(
+        pendingSequenceTimestamps,
+        emittedSequenceCount,
+        pendingSequenceTimestamps,
+        0,
+        pendingSequenceCount);
+    for (var history : moduleHistories) {
+      history.prune(lastEmittedTimestamp);
+    }
+    gyroHistory.prune(useGyro ? lastEmittedTimestamp : Double.POSITIVE_INFINITY);
+    return outputCount;
+  }
+
+  /**
+   * Returns the sequence number of the newest emitted sample added with {@link
+   * #addSampleSequences}, which is 0 before the first.
+   */
+  public long getLastEmittedSequence() {
+    return lastEmittedSequence;
+  }
+
+  /** Returns the timestamp of a timeline point. */
+  public double getTimestamp(int sample) {
+    return timeline[sample];
+  }
+
+  /** Returns a module's drive distance in meters interpolated to a timeline point. */
+  public double getModuleDistanceMeters(int module, int sample) {
+    return outputDistances[module][sample];
+  }
+
+  /** Returns a module's turn angle in radians interpolated to a timeline point. */
+  public double getModuleAngleRad(int module, int sample) {
+    return outputAngles[module][sample];
+  }
+
+  /** Returns whether gyro data is available at a timeline point. */
+  public boolean hasGyroYaw(int sample) {
+    return !Double.isNaN(outputYaws[sample]);
+  }
+
+  /** Returns the gyro yaw in radians interpolated to a timeline point. */
+  public double getGyroYawRad(int sample) {
+    return outputYaws[sample];
+  }
+
+  private static boolean isLive(SampleHistory history, double newestTimestamp) {
+    return history.count > 0
+        && history.getLatestTimestamp() >= newestTimestamp - staleSourceTimeout;
+  }
+
+  private static double limitHorizon(
+      double horizon, SampleHistory history, double newestTimestamp) {
+    return isLive(history, newestTimestamp)
+        ? Math.min(horizon, history.getLatestTimestamp())
+        : horizon;
+  }
+
+  /** Recent samples of one source, oldest first. */
+  private static class SampleHistory {
+    private final double[] timestamps = new double[historyCapacity];
+    private final double[] first = new double[historyCapacity];
+    private final double[] second = new double[historyCapacity];
+    private int count = 0;
+
+    /** Adds a sample, discarding out of order samples and the oldest sample when full. */
+    void add(double timestamp, double firstValue, double secondValue) {
+      if (count > 0 && timestamp <= timestamps[count - 1]) {
+        return;
+      }
+      if (count == historyCapacity) {
+        removeOldest(1);
+      }
+      timestamps[count] = timestamp;
+      first[count] = firstValue;
+      second[count] = secondValue;
+      count++;
+    }
+
+    double getLatestTimestamp() {
+      return count > 0 ? timestamps[count - 1] : Double.NEGATIVE_INFINITY;
+    }
+
+    /** Keeps the newest sample at or before the timestamp and everything after it. */
+    void prune(double timestamp) {
+      int keepFrom = 0;
+      while (keepFrom + 1 < count && timestamps[keepFrom + 1] <= timestamp) {
+        keepFrom++;
+      }
+      removeOldest(keepFrom);
+    }
+
+    private void removeOldest(int removeCount) {
+      if (removeCount <= 0) {
+        return;
+      }
+      System.arraycopy(timestamps, removeCount, timestamps, 0, count - removeCount);
+      System.arraycopy(first, removeCount, first, 0, count - removeCount);
+      System.arraycopy(second, removeCount, second, 0, count - removeCount);
+      count -= removeCount;
+    }
+
+    /** Returns the index of the last sample at or before the timestamp, or -1. */
+    private int floorIndex(double timestamp) {
+      int index = -1;
+      while (index + 1 < count && timestamps[index + 1] <= timestamp) {
+        index++;
+      }
+      return index;
+    }
+
+    private double fraction(int index, double timestamp) {
+      return (timestamp - timestamps[index]) / (timestamps[index + 1] - timestamps[index]);
+    }
+
+    /** Interpolates the first value, holding the nearest sample outside the range. */
+    double interpolateLinear(double timestamp) {
+      if (count == 0) {
+        return 0.0;
+      }
+      int index = floorIndex(timestamp);
+      if (index < 0) {
+        return first[0];
+      }
+      if (index == count - 1) {
+        return first[index];
+      }
+      return MathUtil.interpolate(first[index], first[index + 1], fraction(index, timestamp));
+    }
+
+    /** Interpolates the second value as an angle, taking the shortest path. */
+    double interpolateAngle(double timestamp) {
+      return interpolateAngle(second, timestamp);
+    }
+
+    /** Interpolates the first value as a continuous yaw, taking the shortest path. */
+    double interpolateYaw(double timestamp) {
+      return interpolateAngle(first, timestamp);
+    }
+
+    private double interpolateAngle(double[] values, double timestamp) {
+      if (count == 0) {
+        return 0.0;
+      }
+      int index = floorIndex(timestamp);
+      if (index < 0) {
+        return values[0];
+      }
+      if (index == count - 1) {
+        return values[index];
+      }
+      double delta = MathUtil.angleModulus(values[index + 1] - values[index]);
+      return values[index] + delta * fraction(index, timestamp);
+    }
+  }
+}
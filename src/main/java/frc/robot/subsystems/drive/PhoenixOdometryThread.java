@@ -0,0 +1,189 @@
+package frc.robot.subsystems.drive;
+
+import com.ctre.phoenix6.BaseStatusSignal;
+import com.ctre.phoenix6.CANBus;
+import com.ctre.phoenix6.StatusCode;
+import com.ctre.phoenix6.StatusSignal;
+import edu.wpi.first.wpilibj.RobotController;
+import frc.robot.util.DoubleRingBuffer;
+import frc.robot.util.LogPolicy;
+import frc.robot.util.LogPolicy.Tier;
+import java.util.ArrayList;
+import java.util.List;
+import org.littletonrobotics.junction.Logger;
+
+/**
+ * Provides an interface for asynchronously reading high-frequency Phoenix 6 signals to a set of
+ * primitive ring buffers.
+ *
+ * <p>On a CAN FD bus, the thread blocks in {@link BaseStatusSignal#waitForAll} until every
+ * registered signal has received a new frame, so samples are taken when the devices publish.
+ * Phoenix can only synchronize signals that way on CAN FD, so on a CAN 2.0 bus such as the
+ * roboRIO's, the thread sleeps for one odometry period and then refreshes every signal at once.
+ * Each signal gets its own timestamp, which is the FPGA time at receipt minus the latency reported
+ * by Phoenix for that signal. A signal that fails to update is stored as NaN.
+ *
+ * <p>Like {@link SparkOdometryThread}, every sample is written to all buffers or to none of them,
+ * and the main loop calls {@link #latchSamples()} once per cycle so that every IO layer drains the
+ * same set of samples.
+ */
+public class PhoenixOdometryThread extends Thread {
+  /** Buffers receiving the values and latency-compensated timestamps of one signal. */
+  public static class SignalBuffers {
+    public final DoubleRingBuffer values =
+        new DoubleRingBuffer(SparkOdometryThread.bufferCapacity);
+    public final DoubleRingBuffer timestamps =
+        new DoubleRingBuffer(SparkOdometryThread.bufferCapacity);
+  }
+
+  private static final long periodMillis = Math.round(1000.0 / DriveConstants.odometryFrequency);
+
+  // Every Phoenix device on the drive uses the roboRIO bus
+  private final boolean isCANFD = new CANBus().isNetworkFD();
+  private final List<BaseStatusSignal> signalList = new ArrayList<>();
+  private final List<SignalBuffers> bufferList = new ArrayList<>();
+  private BaseStatusSignal[] signals = new BaseStatusSignal[] {};
+  private SignalBuffers[] buffers = new SignalBuffers[] {};
+
+  // Signals the main loop reads, refreshed together once per cycle
+  private final List<BaseStatusSignal> loopSignalList = new ArrayList<>();
+  private BaseStatusSignal[] loopSignals = new BaseStatusSignal[] {};
+
+  // Sample sequence handoff between the odometry thread and the main loop
+  private volatile long publishedSampleCount = 0; // Only written by the odometry thread
+  private long latchedSampleCount = 0; // Only accessed by the main loop
+
+  // Statistics, written by the odometry thread and logged by the main loop
+  private final LogPolicy.Output statisticsOutput =
+      LogPolicy.output("Odometry/PhoenixThread", Tier.VERBOSE, 5.0);
+  private final String overflowedSamplesKey = statisticsOutput.getKey() + "/OverflowedSamples";
+  private volatile long overflowedSampleCount = 0;
+
+  private static PhoenixOdometryThread instance = null;
+
+  public static PhoenixOdometryThread getInstance() {
+    if (instance == null) {
+      instance = new PhoenixOdometryThread();
+    }
+    return instance;
+  }
+
+  private PhoenixOdometryThread() {
+    setName("PhoenixOdometryThread");
+    setDaemon(true);
+  }
+
+  @Override
+  public synchronized void start() {
+    if (signalList.size() > 0 && !isAlive()) {
+      signals = signalList.toArray(new BaseStatusSignal[0]);
+      buffers = bufferList.toArray(new SignalBuffers[0]);
+      super.start();
+    }
+  }
+
+  /**
+   * Registers a Phoenix signal to be read from the thread. Must be called before {@link #start()}.
+   * Pass a clone of any signal that the main loop also refreshes.
+   */
+  public SignalBuffers registerSignal(StatusSignal<?> signal) {
+    if (isAlive()) {
+      throw new IllegalStateException("Odometry signals must be registered before starting");
+    }
+    SignalBuffers signalBuffers = new SignalBuffers();
+    signalList.add(signal);
+    bufferList.add(signalBuffers);
+    return signalBuffers;
+  }
+
+  /**
+   * Registers Phoenix signals that the main loop reads, so that {@link #refreshLoopSignals()}
+   * refreshes all of them in one call. Must be called while the IO layers are constructed.
+   */
+  public void registerLoopSignals(BaseStatusSignal... signals) {
+    for (BaseStatusSignal signal : signals) {
+      loopSignalList.add(signal);
+    }
+    loopSignals = loopSignalList.toArray(new BaseStatusSignal[0]);
+  }
+
+  /**
+   * Refreshes every main loop signal at once. Must be called from the main loop before any IO
+   * layer reads them. Each signal keeps its own status, which IO layers check for connection.
+   */
+  public void refreshLoopSignals() {
+    if (loopSignals.length > 0) {
+      BaseStatusSignal.refreshAll(loopSignals);
+    }
+  }
+
+  /**
+   * Captures the samples published so far as the set to process this cycle. Must be called from
+   * the main loop before any IO layer reads its buffers.
+   */
+  public void latchSamples() {
+    latchedSampleCount = publishedSampleCount;
+  }
+
+  /** Returns the number of samples in the buffers that belong to the latched set. */
+  public int getLatchedSampleCount(SignalBuffers signalBuffers) {
+    return (int) Math.max(0, latchedSampleCount - signalBuffers.values.getReadIndex());
+  }
+
+  /** Logs sample statistics for the thread. Must be called from the main loop. */
+  public void logStatistics() {
+    if (!isAlive() || !statisticsOutput.shouldRecord()) {
+      return;
+    }
+    Logger.recordOutput(overflowedSamplesKey, overflowedSampleCount);
+  }
+
+  @Override
+  public void run() {
+    while (true) {
+      try {
+        if (isCANFD) {
+          // Wait for a new frame from every signal, backing off if the devices are unreachable
+          StatusCode status =
+              BaseStatusSignal.waitForAll(2.0 / DriveConstants.odometryFrequency, signals);
+          if (status.isError() && status != StatusCode.RxTimeout) {
+            Thread.sleep(periodMillis);
+          }
+        } else {
+          // CAN 2.0 cannot wait on several signals at once, so sample on a timer instead
+          Thread.sleep(periodMillis);
+          BaseStatusSignal.refreshAll(signals);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+      double receiveTimestamp = RobotController.getFPGATime() / 1e6;
+
+      // Skip the sample if any buffer is full, which keeps every buffer on the same sequence
+      boolean hasCapacity = true;
+      for (int i = 0; i < buffers.length; i++) {
+        if (!buffers[i].values.hasCapacity() || !buffers[i].timestamps.hasCapacity()) {
+          hasCapacity = false;
+          break;
+        }
+      }
+      if (!hasCapacity) {
+        // Drop the sample and give the main loop a chance to drain the buffers
+        overflowedSampleCount = overflowedSampleCount + 1;
+        Thread.yield();
+        continue;
+      }
+
+      // Add values and latency-compensated timestamps to buffers
+      for (int i = 0; i < signals.length; i++) {
+        BaseStatusSignal signal = signals[i];
+        buffers[i].values.offer(signal.getStatus().isOK() ? signal.getValueAsDouble() : Double.NaN);
+        buffers[i].timestamps.offer(receiveTimestamp - signal.getTimestamp().getLatency());
+      }
+
+      // Publish the completed sample to the main loop
+      publishedSampleCount = publishedSampleCount + 1;
+    }
+  }
+}
@@ -0,0 +1,85 @@
+package frc.robot.subsystems.drive;
+
+import static frc.robot.subsystems.drive.DriveConstants.*;
+
+import edu.wpi.first.math.MathUtil;
+
+/**
+ * Weights each module's odometry sample by how well it agrees with the rest of the drive.
+ *
+ * <p>For each module, a chassis twist is fit to the other three modules, using the gyro rotation
+ * when it is available. The farther the module's displacement is from what that twist predicts,
+ * the less it is trusted, so a single slipping, lifted or pushed wheel cannot drag the fit toward
+ * itself. Modules whose weight falls below {@link DriveConstants#slipExcludeWeight} are excluded.
+ * Each module also starts from a prior weight, which drops as its drive current approaches the
+ * current that breaks traction.
+ */
+public class SlipDetector {
+  private final DriveKinematics kinematics;
+
+  // Scratch space, reused between calls
+  private final double[] leaveOneOutWeights = new double[DriveKinematics.moduleCount];
+  private final double[] twist = new double[3];
+
+  public SlipDetector(DriveKinematics kinematics) {
+    this.kinematics = kinematics;
+  }
+
+  /** Returns the prior weight of a module from its drive current. */
+  public static double getCurrentWeight(double driveCurrentAmps) {
+    double excess =
+        (Math.abs(driveCurrentAmps) / wheelTractionCurrentAmps - slipCurrentOnsetFraction)
+            / (1.0 - slipCurrentOnsetFraction);
+    return 1.0 - (1.0 - slipMinCurrentWeight) * MathUtil.clamp(excess, 0.0, 1.0);
+  }
+
+  /**
+   * Computes the weight of each module for one odometry sample.
+   *
+   * @param deltasMeters Displacement of each module since the last sample.
+   * @param anglesRad Angle of each module.
+   * @param gyroRotationRad Rotation measured by the gyro since the last sample, or NaN.
+   * @param priorWeights Prior weight of each module, such as from {@link #getCurrentWeight}.
+   * @param weights Output weight of each module.
+   * @return The number of modules excluded from the sample.
+   */
+  public int computeWeights(
+      double[] deltasMeters,
+      double[] anglesRad,
+      double gyroRotationRad,
+      double[] priorWeights,
+      double[] weights) {
+    // Residuals grow with speed from scrub and encoder noise, so the tolerance does too
+    double meanDelta = 0.0;
+    for (int i = 0; i < DriveKinematics.moduleCount; i++) {
+      meanDelta += Math.abs(deltasMeters[i]) / DriveKinematics.moduleCount;
+    }
+    double tolerance = slipResidualToleranceMeters + slipResidualFraction * meanDelta;
+
+    // Compare each module to the fit of the others
+    int excludedCount = 0;
+    int includedCount = 0;
+    for (int i = 0; i < DriveKinematics.moduleCount; i++) {
+      System.arraycopy(priorWeights, 0, leaveOneOutWeights, 0, DriveKinematics.moduleCount);
+      leaveOneOutWeights[i] = 0.0;
+      kinematics.toTwistWeighted(
+          deltasMeters, anglesRad, leaveOneOutWeights, gyroRotationRad, twist);
+      double residual = kinematics.getResidual(i, deltasMeters[i], anglesRad[i], twist);
+      double ratio = residual / tolerance;
+      weights[i] = priorWeights[i] / (1.0 + ratio * ratio);
+      if (weights[i] < slipExcludeWeight) {
+        weights[i] = 0.0;
+        excludedCount++;
+      } else {
+        includedCount++;
+      }
+    }
+
+    // Without enough modules left to solve the twist, fall back to the priors
+    if (includedCount < (Double.isNaN(gyroRotationRad) ? 2 : 1)) {
+      System.arraycopy(priorWeights, 0, weights, 0, DriveKinematics.moduleCount);
+      return 0;
+    }
+    return excludedCount;
+  }
+}
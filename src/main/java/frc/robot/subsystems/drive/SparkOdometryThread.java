@@ -17,25 +17,63 @@ import com.revrobotics.REVLibError;
 import com.revrobotics.spark.SparkBase;
 import edu.wpi.first.wpilibj.Notifier;
 import edu.wpi.first.wpilibj.RobotController;
+import frc.robot.util.DoubleRingBuffer;
+import frc.robot.util.LogPolicy;
+import frc.robot.util.LogPolicy.Tier;
+import frc.robot.util.TimingHistogram;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Queue;
-import java.util.concurrent.ArrayBlockingQueue;
 import java.util.function.DoubleSupplier;
+import org.littletonrobotics.junction.Logger;
 
 /**
- * Provides an interface for asynchronously reading high-frequency measurements to a set of queues.
+ * Provides an interface for asynchronously reading high-frequency measurements to a set of
+ * primitive ring buffers.
  *
- * <p>This version includes an overload for Spark signals, which checks for errors to ensure that
- * all measurements in the sample are valid.
+ * <p>This version includes an overload for Spark signals, which checks for errors on each read. A
+ * value that could not be read is stored as NaN so that one bad device only invalidates its own
+ * signal rather than the whole sample.
+ *
+ * <p>The thread and the main loop never share a lock. Each sample is written to every buffer or to
+ * none of them, so all buffers share one sequence of sample indices. Once a sample is complete,
+ * the thread publishes its sequence number with a single volatile write. The main loop calls {@link
+ * #latchSamples()} once per cycle, and every IO layer then drains exactly the samples up to that
+ * sequence number, so all IO layers see the same set of samples.
  */
 public class SparkOdometryThread {
+  /** Number of samples each buffer holds, enough to ride out several slow main loop cycles. */
+  public static final int bufferCapacity = 32;
+
   private final List<SparkBase> sparks = new ArrayList<>();
   private final List<DoubleSupplier> sparkSignals = new ArrayList<>();
   private final List<DoubleSupplier> genericSignals = new ArrayList<>();
-  private final List<Queue<Double>> sparkQueues = new ArrayList<>();
-  private final List<Queue<Double>> genericQueues = new ArrayList<>();
-  private final List<Queue<Double>> timestampQueues = new ArrayList<>();
+  private final List<DoubleRingBuffer> sparkBuffers = new ArrayList<>();
+  private final List<DoubleRingBuffer> genericBuffers = new ArrayList<>();
+  private final List<DoubleRingBuffer> timestampBuffers = new ArrayList<>();
+  private final List<DoubleRingBuffer> allBuffers = new ArrayList<>();
+  private final List<SampleListener> sampleListeners = new ArrayList<>();
+  private double[] sparkValues = new double[] {};
+  private boolean started = false;
+
+  // Sample sequence handoff between the odometry thread and the main loop
+  private volatile long publishedSampleCount = 0; // Only written by the odometry thread
+  private long latchedSampleCount = 0; // Only accessed by the main loop
+  private int samplesThisCycle = 0; // Only accessed by the main loop
+
+  // Timing statistics, written by the odometry thread and logged by the main loop
+  private final long nominalPeriodMicros = Math.round(1e6 / DriveConstants.odometryFrequency);
+  private final TimingHistogram periodJitterHistogram = new TimingHistogram(20, 250);
+  private final TimingHistogram readDurationHistogram = new TimingHistogram(20, 100);
+  private final LogPolicy.Output statisticsOutput =
+      LogPolicy.output("Odometry/Thread", Tier.VERBOSE, 5.0);
+  private final String periodJitterKey = statisticsOutput.getKey() + "/PeriodJitter";
+  private final String readDurationKey = statisticsOutput.getKey() + "/ReadDuration";
+  private final String samplesPerCycleKey = statisticsOutput.getKey() + "/SamplesPerCycle";
+  private final String missedPeriodsKey = statisticsOutput.getKey() + "/MissedPeriods";
+  private final String overflowedSamplesKey = statisticsOutput.getKey() + "/OverflowedSamples";
+  private long lastStartMicros = 0;
+  private volatile long missedPeriodCount = 0;
+  private volatile long overflowedSampleCount = 0;
 
   private static SparkOdometryThread instance = null;
   private Notifier notifier = new Notifier(this::run);
@@ -47,86 +85,169 @@ public class SparkOdometryThread {
     return instance;
   }
 
+  /** Receives each sample on the odometry thread as soon as it is published. */
+  @FunctionalInterface
+  public static interface SampleListener {
+    /**
+     * Called on the odometry thread after a sample is published. The newest value in each buffer
+     * belongs to this sample.
+     *
+     * @param sequence Sequence number of the sample, starting from 1.
+     * @param timestamp FPGA timestamp of the sample in seconds.
+     */
+    public void onSample(long sequence, double timestamp);
+  }
+
   private SparkOdometryThread() {
     notifier.setName("OdometryThread");
   }
 
   public void start() {
-    if (timestampQueues.size() > 0) {
+    if (timestampBuffers.size() > 0) {
+      started = true;
       notifier.startPeriodic(1.0 / DriveConstants.odometryFrequency);
     }
   }
 
-  /** Registers a Spark signal to be read from the thread. */
-  public Queue<Double> registerSignal(SparkBase spark, DoubleSupplier signal) {
-    Queue<Double> queue = new ArrayBlockingQueue<>(20);
-    Drive.odometryLock.lock();
-    try {
-      sparks.add(spark);
-      sparkSignals.add(signal);
-      sparkQueues.add(queue);
-    } finally {
-      Drive.odometryLock.unlock();
+  /**
+   * Registers a Spark signal to be read from the thread. Must be called before {@link #start()}.
+   */
+  public DoubleRingBuffer registerSignal(SparkBase spark, DoubleSupplier signal) {
+    DoubleRingBuffer buffer = makeBuffer();
+    sparks.add(spark);
+    sparkSignals.add(signal);
+    sparkBuffers.add(buffer);
+    sparkValues = new double[sparkSignals.size()];
+    return buffer;
+  }
+
+  /**
+   * Registers a generic signal to be read from the thread. Must be called before {@link #start()}.
+   */
+  public DoubleRingBuffer registerSignal(DoubleSupplier signal) {
+    DoubleRingBuffer buffer = makeBuffer();
+    genericSignals.add(signal);
+    genericBuffers.add(buffer);
+    return buffer;
+  }
+
+  /**
+   * Returns a new buffer that receives the timestamp of each sample. Must be called before {@link
+   * #start()}.
+   */
+  public DoubleRingBuffer makeTimestampBuffer() {
+    DoubleRingBuffer buffer = makeBuffer();
+    timestampBuffers.add(buffer);
+    return buffer;
+  }
+
+  /**
+   * Registers a listener to run on the odometry thread after each sample. Must be called before
+   * {@link #start()}. Listeners delay the next sample, so they must be quick and must not block.
+   */
+  public void addSampleListener(SampleListener listener) {
+    if (started) {
+      throw new IllegalStateException("Odometry listeners must be registered before starting");
     }
-    return queue;
+    sampleListeners.add(listener);
   }
 
-  /** Registers a generic signal to be read from the thread. */
-  public Queue<Double> registerSignal(DoubleSupplier signal) {
-    Queue<Double> queue = new ArrayBlockingQueue<>(20);
-    Drive.odometryLock.lock();
-    try {
-      genericSignals.add(signal);
-      genericQueues.add(queue);
-    } finally {
-      Drive.odometryLock.unlock();
+  private DoubleRingBuffer makeBuffer() {
+    if (started) {
+      throw new IllegalStateException("Odometry signals must be registered before starting");
     }
-    return queue;
+    DoubleRingBuffer buffer = new DoubleRingBuffer(bufferCapacity);
+    allBuffers.add(buffer);
+    return buffer;
   }
 
-  /** Returns a new queue that returns timestamp values for each sample. */
-  public Queue<Double> makeTimestampQueue() {
-    Queue<Double> queue = new ArrayBlockingQueue<>(20);
-    Drive.odometryLock.lock();
-    try {
-      timestampQueues.add(queue);
-    } finally {
-      Drive.odometryLock.unlock();
+  /**
+   * Captures the samples published so far as the set to process this cycle. Must be called from
+   * the main loop before any IO layer reads its buffers.
+   */
+  public void latchSamples() {
+    long sampleCount = publishedSampleCount;
+    samplesThisCycle = (int) (sampleCount - latchedSampleCount);
+    latchedSampleCount = sampleCount;
+  }
+
+  /** Logs timing and sample statistics for the thread. Must be called from the main loop. */
+  public void logStatistics() {
+    if (!started || !statisticsOutput.shouldRecord()) {
+      return;
     }
-    return queue;
+    periodJitterHistogram.log(periodJitterKey);
+    readDurationHistogram.log(readDurationKey);
+    Logger.recordOutput(samplesPerCycleKey, samplesThisCycle);
+    Logger.recordOutput(missedPeriodsKey, missedPeriodCount);
+    Logger.recordOutput(overflowedSamplesKey, overflowedSampleCount);
+  }
+
+  /**
+   * Returns the sequence number of the newest sample in the latched set, which is 0 before the
+   * first sample. Must be called from the main loop.
+   */
+  public long getLatchedSequence() {
+    return latchedSampleCount;
+  }
+
+  /** Returns the number of samples in the buffer that belong to the latched set. */
+  public int getLatchedSampleCount(DoubleRingBuffer buffer) {
+    return (int) Math.max(0, latchedSampleCount - buffer.getReadIndex());
   }
 
   private void run() {
-    // Save new data to queues
-    Drive.odometryLock.lock();
-    try {
-      // Get sample timestamp
-      double timestamp = RobotController.getFPGATime() / 1e6;
-
-      // Read Spark values, mark invalid in case of error
-      double[] sparkValues = new double[sparkSignals.size()];
-      boolean isValid = true;
+    // Get sample timestamp and track the actual period
+    long startMicros = RobotController.getFPGATime();
+    double timestamp = startMicros / 1e6;
+    if (lastStartMicros != 0) {
+      long periodMicros = startMicros - lastStartMicros;
+      periodJitterHistogram.record(Math.abs(periodMicros - nominalPeriodMicros));
+      long missedPeriods = Math.round((double) periodMicros / nominalPeriodMicros) - 1;
+      if (missedPeriods > 0) {
+        missedPeriodCount = missedPeriodCount + missedPeriods;
+      }
+    }
+    lastStartMicros = startMicros;
+
+    // Read Spark values, mark invalid in case of error
+    for (int i = 0; i < sparkSignals.size(); i++) {
+      sparkValues[i] = sparkSignals.get(i).getAsDouble();
+      if (sparks.get(i).getLastError() != REVLibError.kOk) {
+        sparkValues[i] = Double.NaN;
+      }
+    }
+
+    // Skip the sample if any buffer is full, which keeps every buffer on the same sequence
+    boolean hasCapacity = true;
+    for (int i = 0; i < allBuffers.size(); i++) {
+      if (!allBuffers.get(i).hasCapacity()) {
+        hasCapacity = false;
+        break;
+      }
+    }
+
+    if (hasCapacity) {
+      // Add values to buffers
       for (int i = 0; i < sparkSignals.size(); i++) {
-        sparkValues[i] = sparkSignals.get(i).getAsDouble();
-        if (sparks.get(i).getLastError() != REVLibError.kOk) {
-          isValid = false;
-        }
+        sparkBuffers.get(i).offer(sparkValues[i]);
+      }
+      for (int i = 0; i < genericSignals.size(); i++) {
+        genericBuffers.get(i).offer(genericSignals.get(i).getAsDouble());
+      }
+      for (int i = 0; i < timestampBuffers.size(); i++) {
+        timestampBuffers.get(i).offer(timestamp);
       }
 
-      // If valid, add values to queues
-      if (isValid) {
-        for (int i = 0; i < sparkSignals.size(); i++) {
-          sparkQueues.get(i).offer(sparkValues[i]);
-        }
-        for (int i = 0; i < genericSignals.size(); i++) {
-          genericQueues.get(i).offer(genericSignals.get(i).getAsDouble());
-        }
-        for (int i = 0; i < timestampQueues.size(); i++) {
-          timestampQueues.get(i).offer(timestamp);
-        }
+      // Publish the completed sample to the main loop
+      long sequence = publishedSampleCount + 1;
+      publishedSampleCount = sequence;
+      for (int i = 0; i < sampleListeners.size(); i++) {
+        sampleListeners.get(i).onSample(sequence, timestamp);
       }
-    } finally {
-      Drive.odometryLock.unlock();
+    } else {
+      overflowedSampleCount = overflowedSampleCount + 1;
     }
+    readDurationHistogram.record(RobotController.getFPGATime() - startMicros);
   }
 }
@@ -0,0 +1,49 @@
+package frc.robot.subsystems.drive;
+
+import static frc.robot.subsystems.drive.DriveConstants.*;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.filter.Debouncer;
+
+/**
+ * Compares a module's turn motor encoder with its absolute encoder, and decides when to re-seed the
+ * motor encoder. Re-seeding only happens once the module has been at rest for {@link
+ * DriveConstants#turnDriftStationarySecs}, so the correction never lands mid-move.
+ */
+public class TurnDriftMonitor {
+  private final Debouncer stationaryDebounce = new Debouncer(turnDriftStationarySecs);
+  private double driftRad = 0.0;
+
+  /**
+   * Updates the monitor with the latest readings. Readings that failed are passed as NaN.
+   *
+   * @param turnPositionRad Turn motor encoder position, including any winding.
+   * @param absolutePositionRad Absolute encoder position, or NaN if it failed to read.
+   * @return The position to seed the turn motor encoder with, or NaN to leave it alone.
+   */
+  public double update(
+      double turnPositionRad,
+      double turnVelocityRadPerSec,
+      double driveVelocityRadPerSec,
+      double absolutePositionRad) {
+    boolean turnStopped =
+        Math.abs(turnVelocityRadPerSec) < turnDriftStationaryTurnVelocityRadPerSec;
+    boolean driveStopped =
+        Math.abs(driveVelocityRadPerSec) < turnDriftStationaryDriveVelocityRadPerSec;
+    boolean stationary = stationaryDebounce.calculate(turnStopped && driveStopped);
+    if (Double.isNaN(turnPositionRad) || Double.isNaN(absolutePositionRad)) {
+      return Double.NaN;
+    }
+    driftRad = MathUtil.angleModulus(turnPositionRad - absolutePositionRad);
+    if (stationary && Math.abs(driftRad) > turnDriftReseedThresholdRad) {
+      // Keep the encoder's winding, so only the error is removed
+      return turnPositionRad - driftRad;
+    }
+    return Double.NaN;
+  }
+
+  /** Returns the turn encoder position minus the absolute position from the last valid reading. */
+  public double getDriftRad() {
+    return driftRad;
+  }
+}
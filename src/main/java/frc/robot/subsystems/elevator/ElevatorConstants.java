@@ -7,6 +7,8 @@ public class ElevatorConstants {
     public static final double positionConversionFactor = .0526;
     public static final double velocityConversionFactor = .0526;
 
+    public static final double outputWriteDeadband = 0.002; // Duty cycle, see CoalescingWriter
+
     public class ElevatorSetpoints {
         public static final double StowPosition = 0.0;
         public static final double L1Position = 0.0;
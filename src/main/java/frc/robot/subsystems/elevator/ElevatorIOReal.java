@@ -13,9 +13,13 @@ import edu.wpi.first.math.trajectory.TrapezoidProfile.Constraints;
 import edu.wpi.first.wpilibj2.command.Command;
 import frc.robot.subsystems.elevator.ElevatorConstants.ControllerConstants;
 import frc.robot.subsystems.elevator.ElevatorConstants.ElevatorCANIds;
+import frc.robot.util.CanBusPlanner;
+import frc.robot.util.CoalescingWriter;
+import frc.robot.util.DeviceConfigurator;
 
 public class ElevatorIOReal implements ElevatorIO {
     private SparkFlex leftMotor;
+    private final CoalescingWriter leftWriter = new CoalescingWriter("Elevator/Left");
 
     RelativeEncoder LeftEncoder;
 
@@ -42,16 +46,30 @@ public class ElevatorIOReal implements ElevatorIO {
                 .positionConversionFactor(ElevatorConstants.positionConversionFactor)
                 .velocityConversionFactor(ElevatorConstants.velocityConversionFactor);
 
-        tryUntilOk(
-                leftMotor,
-                5,
-                () -> leftMotor.configure(
-                        leftConfig,
-                        SparkFlex.ResetMode.kResetSafeParameters,
-                        SparkFlex.PersistMode.kPersistParameters));
+        DeviceConfigurator.getInstance()
+                .configureSpark("Elevator/Left", leftMotor, leftConfig);
 
         LeftEncoder = leftMotor.getEncoder();
 
+        // Request status rates, applied once every device is registered
+        CanBusPlanner planner = CanBusPlanner.getInstance();
+        var positionRate = planner.request("Elevator/Left/Position", 50.0, 50.0);
+        var velocityRate = planner.request("Elevator/Left/Velocity", 10.0, 50.0);
+        planner.addFixedLoad("Elevator/Left/Setpoint", 50.0);
+        planner.addApplier(() -> {
+            SparkMaxConfig signalsConfig = new SparkMaxConfig();
+            signalsConfig.signals
+                    .primaryEncoderPositionPeriodMs(positionRate.getAssignedPeriodMs())
+                    .primaryEncoderVelocityPeriodMs(velocityRate.getAssignedPeriodMs());
+            tryUntilOk(
+                    leftMotor,
+                    5,
+                    () -> leftMotor.configure(
+                            signalsConfig,
+                            SparkFlex.ResetMode.kNoResetSafeParameters,
+                            SparkFlex.PersistMode.kNoPersistParameters));
+        });
+
         elevatorPID = new ProfiledPIDController(
                 ControllerConstants.kP,
                 ControllerConstants.kI,
@@ -81,7 +99,7 @@ public class ElevatorIOReal implements ElevatorIO {
 
         double combinedOutput = ffOut + pidOut;
 
-        leftMotor.set(combinedOutput);
+        setLeftMotor(combinedOutput);
     }
 
     @Override
@@ -96,7 +114,7 @@ public class ElevatorIOReal implements ElevatorIO {
 
     @Override
     public void setMotorSpeeds(double speeds) {
-        leftMotor.set(speeds);
+        setLeftMotor(speeds);
     }
 
     @Override
@@ -106,7 +124,14 @@ public class ElevatorIOReal implements ElevatorIO {
 
     @Override
     public void manualElevatorReset() {
-        leftMotor.set(ElevatorConstants.manualElevatorResetSpeed);
+        setLeftMotor(ElevatorConstants.manualElevatorResetSpeed);
+    }
+
+    /** Sets the motor output, skipping the write if it has not changed. */
+    private void setLeftMotor(double output) {
+        if (leftWriter.shouldWrite(0, output, ElevatorConstants.outputWriteDeadband)) {
+            leftMotor.set(output);
+        }
     }
 
     @Override
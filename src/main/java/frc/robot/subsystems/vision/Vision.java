@@ -0,0 +1,123 @@
+package frc.robot.subsystems.vision;
+
+import edu.wpi.first.math.Matrix;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.math.numbers.N1;
+import edu.wpi.first.math.numbers.N3;
+import edu.wpi.first.wpilibj.Alert;
+import edu.wpi.first.wpilibj.Alert.AlertType;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import frc.robot.Constants;
+import frc.robot.Constants.Mode;
+import frc.robot.subsystems.vision.VisionIO.PoseObservation;
+import frc.robot.subsystems.vision.VisionPipeline.SolveResult;
+import frc.robot.subsystems.vision.VisionPipeline.VisionMeasurement;
+import frc.robot.util.LogPolicy;
+import frc.robot.util.LogPolicy.Tier;
+import java.util.ArrayList;
+import java.util.List;
+import org.littletonrobotics.junction.Logger;
+
+/**
+ * Fuses AprilTag pose observations from every camera into the drive pose estimate.
+ *
+ * <p>Each cycle, the observations from all cameras are batched and handed to a {@link
+ * VisionPipeline}, which solves them off the main thread. Observations are rejected when they see
+ * no tags, are too ambiguous, are too far from the tags, float off the carpet or land outside the
+ * field. The standard deviations of accepted observations grow with the square of the average tag
+ * distance and shrink with the number of tags. The solved measurements are passed to the consumer
+ * on the next cycle, oldest first, so the estimator applies them in capture order.
+ */
+public class Vision extends SubsystemBase {
+  private final VisionConsumer consumer;
+  private final VisionIO[] io;
+  private final VisionIOInputsAutoLogged[] inputs;
+  private final Alert[] disconnectedAlerts;
+  private final String[] cameraKeys;
+  private final LogPolicy.Output[] cameraPosesOutputs;
+  private final VisionPipeline pipeline = new VisionPipeline(Constants.currentMode == Mode.REPLAY);
+  private final VisionPipelineInputsAutoLogged pipelineInputs =
+      new VisionPipelineInputsAutoLogged();
+
+  public Vision(VisionConsumer consumer, VisionIO... io) {
+    this.consumer = consumer;
+    this.io = io;
+
+    // Initialize inputs
+    inputs = new VisionIOInputsAutoLogged[io.length];
+    for (int i = 0; i < inputs.length; i++) {
+      inputs[i] = new VisionIOInputsAutoLogged();
+    }
+
+    // Initialize log keys, the per-camera poses are only for debugging
+    cameraKeys = new String[io.length];
+    cameraPosesOutputs = new LogPolicy.Output[io.length];
+    for (int i = 0; i < io.length; i++) {
+      cameraKeys[i] = "Vision/Camera" + Integer.toString(i);
+      cameraPosesOutputs[i] = LogPolicy.output(cameraKeys[i], Tier.DEBUG);
+    }
+
+    // Initialize disconnected alerts
+    disconnectedAlerts = new Alert[io.length];
+    for (int i = 0; i < inputs.length; i++) {
+      disconnectedAlerts[i] =
+          new Alert(
+              "Vision camera " + Integer.toString(i) + " is disconnected.", AlertType.kWarning);
+    }
+  }
+
+  @Override
+  public void periodic() {
+    // Apply the measurements solved since the last cycle
+    List<Pose3d> allRobotPosesAccepted = new ArrayList<>();
+    List<Pose3d> allRobotPosesRejected = new ArrayList<>();
+    pipeline.updateInputs(pipelineInputs);
+    Logger.processInputs("Vision/Pipeline", pipelineInputs);
+    for (SolveResult result : pipeline.collect(pipelineInputs.completedSequence)) {
+      for (VisionMeasurement measurement : result.measurements()) {
+        consumer.accept(measurement.pose(), measurement.timestamp(), measurement.stdDevs());
+        pipeline.recordFusion(measurement, Timer.getFPGATimestamp());
+      }
+      for (int cameraIndex = 0; cameraIndex < result.acceptedPoses().length; cameraIndex++) {
+        LogPolicy.Output cameraPosesOutput = cameraPosesOutputs[cameraIndex];
+        if (cameraPosesOutput.shouldRecord()) {
+          Logger.recordOutput(
+              cameraPosesOutput.getKey() + "/RobotPosesAccepted",
+              result.acceptedPoses()[cameraIndex]);
+          Logger.recordOutput(
+              cameraPosesOutput.getKey() + "/RobotPosesRejected",
+              result.rejectedPoses()[cameraIndex]);
+        }
+        allRobotPosesAccepted.addAll(List.of(result.acceptedPoses()[cameraIndex]));
+        allRobotPosesRejected.addAll(List.of(result.rejectedPoses()[cameraIndex]));
+      }
+    }
+
+    // Read new observations and batch them for the pipeline
+    PoseObservation[][] observations = new PoseObservation[io.length][];
+    for (int i = 0; i < io.length; i++) {
+      io[i].updateInputs(inputs[i]);
+      Logger.processInputs(cameraKeys[i], inputs[i]);
+      disconnectedAlerts[i].set(!inputs[i].connected);
+      observations[i] = inputs[i].poseObservations;
+    }
+    pipeline.submit(observations);
+
+    // Log summary data
+    Logger.recordOutput(
+        "Vision/Summary/RobotPosesAccepted", allRobotPosesAccepted.toArray(new Pose3d[0]));
+    Logger.recordOutput(
+        "Vision/Summary/RobotPosesRejected", allRobotPosesRejected.toArray(new Pose3d[0]));
+    pipeline.logStatistics();
+  }
+
+  @FunctionalInterface
+  public static interface VisionConsumer {
+    public void accept(
+        Pose2d visionRobotPoseMeters,
+        double timestampSeconds,
+        Matrix<N3, N1> visionMeasurementStdDevs);
+  }
+}
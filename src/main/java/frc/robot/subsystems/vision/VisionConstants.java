@@ -0,0 +1,50 @@
+package frc.robot.subsystems.vision;
+
+import edu.wpi.first.apriltag.AprilTagFieldLayout;
+import edu.wpi.first.apriltag.AprilTagFields;
+import edu.wpi.first.math.geometry.Rotation3d;
+import edu.wpi.first.math.geometry.Transform3d;
+import edu.wpi.first.math.util.Units;
+
+public class VisionConstants {
+    // AprilTag layout
+    public static final AprilTagFieldLayout aprilTagLayout =
+            AprilTagFieldLayout.loadField(AprilTagFields.kDefaultField);
+
+    // Camera names and robot to camera transforms
+    public static final String[] cameraNames = new String[] { "front", "back" };
+    public static final Transform3d[] robotToCameras = new Transform3d[] {
+            new Transform3d(
+                    Units.inchesToMeters(11.0),
+                    0.0,
+                    Units.inchesToMeters(8.0),
+                    new Rotation3d(0.0, Units.degreesToRadians(-20.0), 0.0)),
+            new Transform3d(
+                    Units.inchesToMeters(-11.0),
+                    0.0,
+                    Units.inchesToMeters(8.0),
+                    new Rotation3d(0.0, Units.degreesToRadians(-20.0), Math.PI))
+    };
+
+    // Sim camera properties
+    public static final double simCameraHorizontalFovRad = Units.degreesToRadians(70.0);
+    public static final double simCameraMaxRangeMeters = 5.0;
+    public static final double simCameraLatencySecs = 0.035;
+    public static final double simCameraLinearNoiseMeters = 0.02; // Per meter of tag distance
+    public static final double simCameraAngularNoiseRad = 0.02; // Per meter of tag distance
+
+    // Rejection thresholds
+    public static final double maxAmbiguity = 0.3;
+    public static final double maxZError = 0.75; // Meters
+    public static final double maxAverageTagDistance = 4.5; // Meters
+    public static final double fieldBorderMargin = 0.5; // Meters
+
+    // Standard deviation baselines, for 1 meter distance and 1 tag
+    // (Adjusted automatically based on distance and # of tags)
+    public static final double linearStdDevBaseline = 0.02; // Meters
+    public static final double angularStdDevBaseline = 0.06; // Radians
+
+    // Multipliers to apply for each camera
+    // (Adjust to trust some cameras more than others)
+    public static final double[] cameraStdDevFactors = new double[] { 1.0, 1.0 };
+}
@@ -0,0 +1,110 @@
+package frc.robot.subsystems.vision;
+
+import static frc.robot.subsystems.vision.VisionConstants.*;
+
+import edu.wpi.first.apriltag.AprilTag;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.math.geometry.Rotation3d;
+import edu.wpi.first.math.geometry.Transform3d;
+import edu.wpi.first.math.geometry.Translation3d;
+import edu.wpi.first.wpilibj.Timer;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * Simulated camera that produces synthetic AprilTag pose observations from the robot pose.
+ *
+ * <p>A tag is visible when it is within the horizontal field of view and range of the camera and
+ * faces toward it. The observed pose is the supplied pose plus Gaussian noise that grows with tag
+ * distance and shrinks with tag count. Single-tag observations report an ambiguity that grows as
+ * the tag is viewed more obliquely. Observations are timestamped with a fixed capture latency.
+ */
+public class VisionIOSim implements VisionIO {
+  private final Transform3d robotToCamera;
+  private final Supplier<Pose2d> poseSupplier;
+  private final Random random;
+
+  /**
+   * Creates a new simulated camera.
+   *
+   * @param robotToCamera Transform from the robot center to the camera.
+   * @param poseSupplier Supplier for the simulated robot pose.
+   */
+  public VisionIOSim(Transform3d robotToCamera, Supplier<Pose2d> poseSupplier) {
+    this.robotToCamera = robotToCamera;
+    this.poseSupplier = poseSupplier;
+    random = new Random(robotToCamera.hashCode()); // Repeatable noise per camera
+  }
+
+  @Override
+  public void updateInputs(VisionIOInputs inputs) {
+    inputs.connected = true;
+    Pose3d robotPose = new Pose3d(poseSupplier.get());
+    Pose3d cameraPose = robotPose.transformBy(robotToCamera);
+
+    // Find visible tags
+    int[] visibleTagIds = new int[aprilTagLayout.getTags().size()];
+    int tagCount = 0;
+    double totalTagDistance = 0.0;
+    double maxObliqueness = 0.0;
+    for (AprilTag tag : aprilTagLayout.getTags()) {
+      Translation3d tagInCamera = tag.pose.relativeTo(cameraPose).getTranslation();
+      double distance = tagInCamera.getNorm();
+      double horizontalAngle = Math.atan2(tagInCamera.getY(), tagInCamera.getX());
+      if (tagInCamera.getX() <= 0.0
+          || distance > simCameraMaxRangeMeters
+          || Math.abs(horizontalAngle) > simCameraHorizontalFovRad / 2.0) {
+        continue;
+      }
+
+      // Check that the tag faces the camera, using the tag's outward normal
+      Translation3d tagToCamera = cameraPose.getTranslation().minus(tag.pose.getTranslation());
+      Translation3d tagNormal = new Translation3d(1.0, 0.0, 0.0).rotateBy(tag.pose.getRotation());
+      double facing =
+          (tagToCamera.getX() * tagNormal.getX()
+                  + tagToCamera.getY() * tagNormal.getY()
+                  + tagToCamera.getZ() * tagNormal.getZ())
+              / distance;
+      if (facing <= 0.0) {
+        continue;
+      }
+
+      visibleTagIds[tagCount++] = tag.ID;
+      totalTagDistance += distance;
+      maxObliqueness = Math.max(maxObliqueness, 1.0 - facing);
+    }
+
+    if (tagCount == 0) {
+      inputs.poseObservations = new PoseObservation[0];
+      inputs.tagIds = new int[0];
+      return;
+    }
+
+    // Add noise scaled by distance and tag count
+    double averageTagDistance = totalTagDistance / tagCount;
+    double noiseScale = averageTagDistance / Math.sqrt(tagCount);
+    Pose3d observedPose =
+        new Pose3d(
+            robotPose.getX() + random.nextGaussian() * simCameraLinearNoiseMeters * noiseScale,
+            robotPose.getY() + random.nextGaussian() * simCameraLinearNoiseMeters * noiseScale,
+            random.nextGaussian() * simCameraLinearNoiseMeters * noiseScale,
+            new Rotation3d(
+                0.0,
+                0.0,
+                robotPose.getRotation().getZ()
+                    + random.nextGaussian() * simCameraAngularNoiseRad * noiseScale));
+
+    inputs.poseObservations =
+        new PoseObservation[] {
+          new PoseObservation(
+              Timer.getFPGATimestamp() - simCameraLatencySecs,
+              observedPose,
+              tagCount > 1 ? 0.0 : maxObliqueness,
+              tagCount,
+              averageTagDistance)
+        };
+    inputs.tagIds = new int[tagCount];
+    System.arraycopy(visibleTagIds, 0, inputs.tagIds, 0, tagCount);
+  }
+}
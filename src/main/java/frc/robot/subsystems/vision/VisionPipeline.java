@@ -0,0 +1,254 @@
+package frc.robot.subsystems.vision;
+
+import static frc.robot.subsystems.vision.VisionConstants.*;
+
+import edu.wpi.first.math.Matrix;
+import edu.wpi.first.math.VecBuilder;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.math.numbers.N1;
+import edu.wpi.first.math.numbers.N3;
+import frc.robot.subsystems.vision.VisionIO.PoseObservation;
+import frc.robot.util.LogPolicy;
+import frc.robot.util.LogPolicy.Tier;
+import frc.robot.util.ObjectRingBuffer;
+import frc.robot.util.TimingHistogram;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+import org.littletonrobotics.junction.AutoLog;
+import org.littletonrobotics.junction.Logger;
+
+/**
+ * Solves vision pose observations into pose estimator measurements on a worker thread.
+ *
+ * <p>The main loop submits each cycle's observations from every camera as one batch, and the
+ * worker filters them, scales their standard deviations and sorts them by capture time. Batches
+ * and results travel through bounded {@link ObjectRingBuffer}s, so neither thread locks. A batch
+ * submitted on one cycle is collected on the next. The main loop waits at most {@link
+ * #maxResultWaitSecs} for it, and a late result is delivered on a following cycle instead of
+ * stalling the loop.
+ *
+ * <p>Which batches have completed is timing dependent, so it is logged as an input. In replay the
+ * logged sequence number is read back and collection waits for exactly those batches, so every
+ * measurement reaches the estimator on the same cycle it did on the robot. A batch dropped because
+ * the worker fell {@link #queueCapacity} batches behind is the one case replay cannot reproduce.
+ */
+public class VisionPipeline {
+  /** Longest the main loop waits for the previous cycle's result on the robot. */
+  public static final double maxResultWaitSecs = 0.002;
+
+  /** Number of batches that may wait for the worker before new batches are dropped. */
+  public static final int queueCapacity = 4;
+
+  private static final long waitStepNanos = 20_000;
+
+  /** Timing-dependent pipeline state, logged so that replay collects the same batches. */
+  @AutoLog
+  public static class VisionPipelineInputs {
+    public long completedSequence = 0;
+  }
+
+  /** A measurement ready to pass to the pose estimator. */
+  public static record VisionMeasurement(
+      double timestamp, Pose2d pose, Matrix<N3, N1> stdDevs) {}
+
+  /** The solved measurements for one submitted batch. */
+  public static record SolveResult(
+      long sequence,
+      long finishNanos,
+      VisionMeasurement[] measurements,
+      Pose3d[][] acceptedPoses,
+      Pose3d[][] rejectedPoses) {}
+
+  private static record SolveRequest(
+      long sequence, long submitNanos, PoseObservation[][] observations) {}
+
+  private final boolean replay;
+  private final ObjectRingBuffer<SolveRequest> requests = new ObjectRingBuffer<>(queueCapacity);
+  private final ObjectRingBuffer<SolveResult> results = new ObjectRingBuffer<>(queueCapacity);
+  private final Thread worker;
+  private volatile long completedSequence = 0; // Only written by the worker
+
+  // Only accessed by the main loop
+  private long submittedSequence = 0;
+  private long collectedSequence = 0;
+  private long lateResultCount = 0;
+  private final List<SolveResult> collectedResults = new ArrayList<>();
+
+  // Stage latencies, queue and solve recorded by the worker, the rest by the main loop
+  private final TimingHistogram queueWaitHistogram = new TimingHistogram(20, 100);
+  private final TimingHistogram solveDurationHistogram = new TimingHistogram(20, 100);
+  private final TimingHistogram deliveryWaitHistogram = new TimingHistogram(20, 2000);
+  private final TimingHistogram captureToFusionHistogram = new TimingHistogram(20, 10000);
+  private final LogPolicy.Output statisticsOutput =
+      LogPolicy.output("Vision/Pipeline", Tier.VERBOSE, 2.0);
+  private final String queueWaitKey = statisticsOutput.getKey() + "/QueueWait";
+  private final String solveDurationKey = statisticsOutput.getKey() + "/SolveDuration";
+  private final String deliveryWaitKey = statisticsOutput.getKey() + "/DeliveryWait";
+  private final String captureToFusionKey = statisticsOutput.getKey() + "/CaptureToFusion";
+  private final String droppedBatchesKey = statisticsOutput.getKey() + "/DroppedBatches";
+  private final String lateResultsKey = statisticsOutput.getKey() + "/LateResults";
+
+  /**
+   * Creates and starts a new pipeline.
+   *
+   * @param replay Whether the completed batches come from a replayed log rather than the worker.
+   */
+  public VisionPipeline(boolean replay) {
+    this.replay = replay;
+    worker = new Thread(this::run, "VisionPipeline");
+    worker.setDaemon(true);
+    worker.start();
+  }
+
+  /**
+   * Submits one cycle's observations, indexed by camera, for solving. Must be called from the main
+   * loop. The batch is dropped if the worker has fallen too far behind.
+   */
+  public void submit(PoseObservation[][] observations) {
+    if (requests.offer(new SolveRequest(submittedSequence + 1, System.nanoTime(), observations))) {
+      submittedSequence++;
+      LockSupport.unpark(worker);
+    }
+  }
+
+  /**
+   * Waits briefly for the batches submitted so far and records which have completed. Must be
+   * called from the main loop once per cycle, before {@link #collect}. The recorded state is read
+   * back from the log in replay.
+   */
+  public void updateInputs(VisionPipelineInputs inputs) {
+    if (replay) {
+      return;
+    }
+    long deadline = System.nanoTime() + (long) (maxResultWaitSecs * 1e9);
+    while (completedSequence < submittedSequence) {
+      if (System.nanoTime() > deadline) {
+        lateResultCount++;
+        break;
+      }
+      LockSupport.parkNanos(waitStepNanos);
+    }
+    inputs.completedSequence = completedSequence;
+  }
+
+  /**
+   * Returns the results of the batches up to and including the specified sequence number that
+   * have not been collected yet, oldest first. Must be called from the main loop. The returned
+   * list is reused.
+   */
+  public List<SolveResult> collect(long throughSequence) {
+    collectedResults.clear();
+    throughSequence = Math.min(throughSequence, submittedSequence);
+    while (collectedSequence < throughSequence) {
+      SolveResult result = results.poll();
+      if (result == null) {
+        LockSupport.parkNanos(waitStepNanos); // Only waits in replay
+        continue;
+      }
+      collectedSequence = result.sequence();
+      deliveryWaitHistogram.record((System.nanoTime() - result.finishNanos()) / 1000);
+      collectedResults.add(result);
+    }
+    return collectedResults;
+  }
+
+  /** Records how long a measurement took from capture to reaching the estimator. */
+  public void recordFusion(VisionMeasurement measurement, double fusionTimestamp) {
+    captureToFusionHistogram.record(Math.round((fusionTimestamp - measurement.timestamp()) * 1e6));
+  }
+
+  /** Logs the stage latencies and queue statistics. Must be called from the main loop. */
+  public void logStatistics() {
+    if (!statisticsOutput.shouldRecord()) {
+      return;
+    }
+    queueWaitHistogram.log(queueWaitKey);
+    solveDurationHistogram.log(solveDurationKey);
+    deliveryWaitHistogram.log(deliveryWaitKey);
+    captureToFusionHistogram.log(captureToFusionKey);
+    Logger.recordOutput(droppedBatchesKey, requests.getDroppedCount());
+    Logger.recordOutput(lateResultsKey, lateResultCount);
+  }
+
+  private void run() {
+    while (true) {
+      SolveRequest request = requests.poll();
+      if (request == null) {
+        LockSupport.park(this);
+        continue;
+      }
+      long startNanos = System.nanoTime();
+      queueWaitHistogram.record((startNanos - request.submitNanos()) / 1000);
+      SolveResult result = solve(request);
+      solveDurationHistogram.record((result.finishNanos() - startNanos) / 1000);
+
+      // Wait for room rather than dropping, since the main loop expects every result
+      while (!results.hasCapacity()) {
+        LockSupport.parkNanos(waitStepNanos);
+      }
+      results.offer(result);
+      completedSequence = result.sequence();
+    }
+  }
+
+  /** Filters a batch, scales standard deviations and sorts the measurements by capture time. */
+  private static SolveResult solve(SolveRequest request) {
+    int cameraCount = request.observations().length;
+    List<VisionMeasurement> measurements = new ArrayList<>();
+    Pose3d[][] acceptedPoses = new Pose3d[cameraCount][];
+    Pose3d[][] rejectedPoses = new Pose3d[cameraCount][];
+    for (int cameraIndex = 0; cameraIndex < cameraCount; cameraIndex++) {
+      List<Pose3d> robotPosesAccepted = new ArrayList<>();
+      List<Pose3d> robotPosesRejected = new ArrayList<>();
+      for (PoseObservation observation : request.observations()[cameraIndex]) {
+        if (shouldReject(observation)) {
+          robotPosesRejected.add(observation.pose());
+          continue;
+        }
+        robotPosesAccepted.add(observation.pose());
+
+        // Scale standard deviations by distance and tag count
+        double stdDevFactor =
+            Math.pow(observation.averageTagDistance(), 2.0) / observation.tagCount();
+        if (cameraIndex < cameraStdDevFactors.length) {
+          stdDevFactor *= cameraStdDevFactors[cameraIndex];
+        }
+        double linearStdDev = linearStdDevBaseline * stdDevFactor;
+        double angularStdDev = angularStdDevBaseline * stdDevFactor;
+        measurements.add(
+            new VisionMeasurement(
+                observation.timestamp(),
+                observation.pose().toPose2d(),
+                VecBuilder.fill(linearStdDev, linearStdDev, angularStdDev)));
+      }
+      acceptedPoses[cameraIndex] = robotPosesAccepted.toArray(new Pose3d[0]);
+      rejectedPoses[cameraIndex] = robotPosesRejected.toArray(new Pose3d[0]);
+    }
+
+    // Sort so the estimator applies measurements in capture order
+    measurements.sort(Comparator.comparingDouble(VisionMeasurement::timestamp));
+    return new SolveResult(
+        request.sequence(),
+        System.nanoTime(),
+        measurements.toArray(new VisionMeasurement[0]),
+        acceptedPoses,
+        rejectedPoses);
+  }
+
+  /** Returns whether an observation is unreliable and should not reach the pose estimator. */
+  private static boolean shouldReject(PoseObservation observation) {
+    return observation.tagCount() == 0 // Must have at least one tag
+        || (observation.tagCount() == 1 && observation.ambiguity() > maxAmbiguity)
+        || Math.abs(observation.pose().getZ()) > maxZError // Must have realistic Z coordinate
+        || observation.averageTagDistance() > maxAverageTagDistance
+
+        // Must be within the field boundaries
+        || observation.pose().getX() < -fieldBorderMargin
+        || observation.pose().getX() > aprilTagLayout.getFieldLength() + fieldBorderMargin
+        || observation.pose().getY() < -fieldBorderMargin
+        || observation.pose().getY() > aprilTagLayout.getFieldWidth() + fieldBorderMargin;
+  }
+}
@@ -0,0 +1,165 @@
+package frc.robot.util;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.wpilibj.Alert;
+import edu.wpi.first.wpilibj.Alert.AlertType;
+import java.util.ArrayList;
+import java.util.List;
+import org.littletonrobotics.junction.Logger;
+
+/**
+ * Assigns status frame rates to every device on the CAN bus so the expected traffic stays under a
+ * utilization budget.
+ *
+ * <p>While they are constructed, IO layers request each signal they read, with the rate they
+ * require and the rate they would like, and register the traffic they add on their own, such as
+ * setpoint writes. They also register an applier that pushes the assigned rates to their devices.
+ * Once every device is constructed, {@link #planAndApply()} gives every signal its required rate
+ * and splits the remaining budget across the gap to the desired rates in proportion, then runs
+ * the appliers.
+ *
+ * <p>Rates are applied without persisting them, so a Spark that reboots comes back at its default
+ * rates. IO layers that read a Spark on the odometry thread apply its rates again once it reports
+ * after failing to. Phoenix devices restore their update frequencies after a reset on their own.
+ *
+ * <p>Each signal is counted as its own frame of {@link #bitsPerFrame} bits. Devices that pack
+ * several signals into one frame use less than that, so the estimate errs high.
+ */
+public class CanBusPlanner {
+  /** Bit rate of the bus. */
+  public static final double bitRate = 1e6;
+
+  /** Bits in an extended frame with 8 data bytes, plus an allowance for bit stuffing. */
+  public static final double bitsPerFrame = 150.0;
+
+  /** Fraction of the bus the planned traffic may use. */
+  public static final double utilizationBudget = 0.7;
+
+  /** A signal read from a device, with the rate assigned by the planner. */
+  public static class Signal {
+    private final String name;
+    private final double requiredHz;
+    private final double desiredHz;
+    private int assignedPeriodMs;
+
+    private Signal(String name, double requiredHz, double desiredHz) {
+      this.name = name;
+      this.requiredHz = requiredHz;
+      this.desiredHz = Math.max(requiredHz, desiredHz);
+      assignedPeriodMs = periodMsAtLeast(this.desiredHz);
+    }
+
+    /** Returns the assigned period in milliseconds. */
+    public int getAssignedPeriodMs() {
+      return assignedPeriodMs;
+    }
+
+    /** Returns the assigned rate in Hz, matching the assigned period. */
+    public double getAssignedHz() {
+      return 1000.0 / assignedPeriodMs;
+    }
+  }
+
+  private static CanBusPlanner instance = null;
+
+  private final List<Signal> signals = new ArrayList<>();
+  private final List<String> fixedLoadNames = new ArrayList<>();
+  private final List<Double> fixedLoadsHz = new ArrayList<>();
+  private final List<Runnable> appliers = new ArrayList<>();
+  private final Alert overBudgetAlert =
+      new Alert(
+          "CAN bus required traffic exceeds the utilization budget, status rates are at minimum.",
+          AlertType.kWarning);
+  private double expectedUtilization = 0.0;
+
+  public static CanBusPlanner getInstance() {
+    if (instance == null) {
+      instance = new CanBusPlanner();
+    }
+    return instance;
+  }
+
+  /** Creates an empty planner. Outside of tests, use {@link #getInstance()}. */
+  CanBusPlanner() {}
+
+  /**
+   * Requests a status signal. Must be called before {@link #planAndApply()}.
+   *
+   * @param name Device and signal name used in the log, such as "Module0/Drive/Position".
+   * @param requiredHz Lowest rate the reader can work with.
+   * @param desiredHz Rate to use if the budget allows.
+   */
+  public Signal request(String name, double requiredHz, double desiredHz) {
+    Signal signal = new Signal(name, requiredHz, desiredHz);
+    signals.add(signal);
+    return signal;
+  }
+
+  /** Registers traffic the planner cannot change, such as setpoint writes, in frames per second. */
+  public void addFixedLoad(String name, double framesPerSec) {
+    fixedLoadNames.add(name);
+    fixedLoadsHz.add(framesPerSec);
+  }
+
+  /** Registers a function that applies the assigned rates to a device. */
+  public void addApplier(Runnable applier) {
+    appliers.add(applier);
+  }
+
+  /** Assigns a rate to every requested signal, then applies them to the devices. */
+  public void planAndApply() {
+    // Required traffic is always granted, the rest of the budget is shared out
+    double budgetHz = utilizationBudget * bitRate / bitsPerFrame;
+    double requiredHz = 0.0;
+    for (double load : fixedLoadsHz) {
+      requiredHz += load;
+    }
+    double flexibleHz = 0.0;
+    for (Signal signal : signals) {
+      requiredHz += signal.requiredHz;
+      flexibleHz += signal.desiredHz - signal.requiredHz;
+    }
+    double scale =
+        flexibleHz > 0.0 ? MathUtil.clamp((budgetHz - requiredHz) / flexibleHz, 0.0, 1.0) : 1.0;
+    overBudgetAlert.set(requiredHz > budgetHz);
+
+    // Round each rate up to a whole period and total the traffic that results
+    double plannedHz = 0.0;
+    for (double load : fixedLoadsHz) {
+      plannedHz += load;
+    }
+    String[] names = new String[signals.size()];
+    double[] assignedHz = new double[signals.size()];
+    for (int i = 0; i < signals.size(); i++) {
+      Signal signal = signals.get(i);
+      signal.assignedPeriodMs =
+          periodMsAtLeast(signal.requiredHz + scale * (signal.desiredHz - signal.requiredHz));
+      names[i] = signal.name;
+      assignedHz[i] = signal.getAssignedHz();
+      plannedHz += assignedHz[i];
+    }
+    expectedUtilization = plannedHz * bitsPerFrame / bitRate;
+
+    for (Runnable applier : appliers) {
+      applier.run();
+    }
+
+    Logger.recordOutput("CAN/Planner/SignalNames", names);
+    Logger.recordOutput("CAN/Planner/AssignedHz", assignedHz);
+    Logger.recordOutput("CAN/Planner/FixedLoadNames", fixedLoadNames.toArray(new String[0]));
+    double[] fixedLoads = fixedLoadsHz.stream().mapToDouble(Double::doubleValue).toArray();
+    Logger.recordOutput("CAN/Planner/FixedLoadHz", fixedLoads);
+    Logger.recordOutput("CAN/Planner/RequiredUtilization", requiredHz * bitsPerFrame / bitRate);
+    Logger.recordOutput("CAN/Planner/ExpectedUtilization", expectedUtilization);
+  }
+
+  /** Returns the bus utilization expected from the last plan, from 0 to 1. */
+  public double getExpectedUtilization() {
+    return expectedUtilization;
+  }
+
+  /** Returns the longest whole period in milliseconds whose rate is at least the specified rate. */
+  private static int periodMsAtLeast(double hz) {
+    return Math.max(1, (int) Math.floor(1000.0 / hz));
+  }
+}
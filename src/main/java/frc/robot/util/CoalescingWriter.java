@@ -0,0 +1,94 @@
+package frc.robot.util;
+
+import edu.wpi.first.wpilibj.RobotController;
+import java.util.ArrayList;
+import java.util.List;
+import org.littletonrobotics.junction.Logger;
+
+/**
+ * Decides which motor output writes actually need to go out on the CAN bus.
+ *
+ * <p>Motor controllers hold their last setpoint, so writing the same value every cycle only uses
+ * bandwidth. A write is sent when the control mode changes, when the value moves more than the
+ * mode's deadband from the last value sent, or when nothing has been sent for {@link
+ * #keepaliveSecs}. The keepalive bounds how long a dropped frame can leave a device on a stale
+ * setpoint. Every other write is suppressed and counted, and {@link #logAll()} reports the counts
+ * per device.
+ *
+ * <p>One writer tracks one output of one device. Writes are synchronized, since the drive control
+ * loop and the main loop can both command a module while control passes between them.
+ */
+public class CoalescingWriter {
+  /** Longest time a device goes without receiving its setpoint again. */
+  public static final double keepaliveSecs = 0.1;
+
+  private static final List<CoalescingWriter> allWriters = new ArrayList<>();
+  private static final LogPolicy.Output suppressedOutput =
+      LogPolicy.output("CAN/SuppressedWrites", LogPolicy.Tier.VERBOSE, 5.0);
+
+  private final String suppressedKey;
+  private final long keepaliveMicros = Math.round(keepaliveSecs * 1e6);
+
+  private int lastMode = -1;
+  private double lastValue = Double.NaN;
+  private long lastWriteMicros = 0;
+  private volatile long suppressedCount = 0;
+
+  /**
+   * Creates a writer and registers it for logging. Should be created once per device output, when
+   * the IO layer is constructed.
+   *
+   * @param name Device and output name used in the log, such as "Module0/Drive".
+   */
+  public CoalescingWriter(String name) {
+    suppressedKey = suppressedOutput.getKey() + "/" + name;
+    synchronized (allWriters) {
+      allWriters.add(this);
+    }
+  }
+
+  /**
+   * Returns whether a write should be sent, and records it as sent if so.
+   *
+   * @param mode Any number identifying the control mode, so that switching modes always writes.
+   * @param value The output value for the mode.
+   * @param deadband Largest change from the last value sent, in the units of the mode, that may be
+   *     suppressed. Zero suppresses only repeats of the exact value.
+   */
+  public synchronized boolean shouldWrite(int mode, double value, double deadband) {
+    long nowMicros = RobotController.getFPGATime();
+    if (mode == lastMode
+        && Math.abs(value - lastValue) <= deadband
+        && nowMicros - lastWriteMicros < keepaliveMicros) {
+      suppressedCount = suppressedCount + 1;
+      return false;
+    }
+    lastMode = mode;
+    lastValue = value;
+    lastWriteMicros = nowMicros;
+    return true;
+  }
+
+  /** Forces the next write to be sent, such as after the device was reconfigured or rebooted. */
+  public synchronized void invalidate() {
+    lastMode = -1;
+  }
+
+  /** Returns the total number of writes suppressed. */
+  public long getSuppressedCount() {
+    return suppressedCount;
+  }
+
+  /** Logs the suppressed write count of every writer. Must be called from the main loop. */
+  public static void logAll() {
+    if (!suppressedOutput.shouldRecord()) {
+      return;
+    }
+    synchronized (allWriters) {
+      for (int i = 0; i < allWriters.size(); i++) {
+        CoalescingWriter writer = allWriters.get(i);
+        Logger.recordOutput(writer.suppressedKey, writer.suppressedCount);
+      }
+    }
+  }
+}
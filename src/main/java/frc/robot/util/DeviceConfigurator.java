@@ -0,0 +1,276 @@
+package frc.robot.util;
+
+import com.revrobotics.REVLibError;
+import com.revrobotics.spark.SparkBase;
+import com.revrobotics.spark.SparkBase.PersistMode;
+import com.revrobotics.spark.SparkBase.ResetMode;
+import com.revrobotics.spark.config.SparkBaseConfig;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Filesystem;
+import edu.wpi.first.wpilibj.RobotBase;
+import edu.wpi.first.wpilibj.RobotController;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+import org.littletonrobotics.junction.Logger;
+
+/**
+ * Configures devices at startup on a pool of worker threads, so the round trips to each device
+ * overlap instead of running one after another.
+ *
+ * <p>IO layers submit one task per device while they are constructed. A task holds everything
+ * that touches its device in order, such as applying the config and then seeding an encoder, so
+ * tasks for different devices can run in any order. Once every device is constructed, {@link
+ * #awaitAll()} waits for the tasks and logs how long each took. It must run before {@link
+ * CanBusPlanner#planAndApply()}, since applying a config resets the status rates, and before the
+ * odometry threads start, so they never sample an encoder before it is seeded.
+ *
+ * <p>Spark configs are always applied, but only written to flash when they differ from the last
+ * config persisted to that CAN ID. A hash of each persisted config is kept in {@link #hashFileName}
+ * on the roboRIO. Delete the file to persist every config again, such as after replacing a motor
+ * controller without changing its CAN ID.
+ *
+ * <p>Tasks retry their own commands and report failures to {@link #awaitAll()}, which raises
+ * {@link SparkUtil#sparkStickyFault} from the main thread. They must not call the {@link
+ * SparkUtil} helpers, which write that flag without synchronization.
+ */
+public class DeviceConfigurator {
+  /** Number of devices configured at once. */
+  public static final int threadCount = 4;
+
+  /** Number of times each command sent to a Spark is tried. */
+  public static final int maxAttempts = 5;
+
+  /** File in the operating directory holding the hash of the config persisted to each device. */
+  public static final String hashFileName = "device-config-hashes.properties";
+
+  /** A device configuration task, with the time it took once it has run. */
+  private static record Task(String name, Future<Boolean> future, double[] durationMs) {}
+
+  private static DeviceConfigurator instance = null;
+
+  private final ExecutorService executor =
+      Executors.newFixedThreadPool(
+          threadCount,
+          runnable -> {
+            Thread thread = new Thread(runnable, "DeviceConfigurator");
+            thread.setDaemon(true);
+            return thread;
+          });
+  private final List<Task> tasks = new ArrayList<>();
+  private final List<String> persistedNames = new ArrayList<>();
+  private final Properties persistedHashes = new Properties();
+  private final File hashFile;
+  private final long startMicros = RobotController.getFPGATime();
+
+  public static DeviceConfigurator getInstance() {
+    if (instance == null) {
+      // Only the roboRIO keeps hashes between boots, simulated devices start empty every time
+      instance =
+          new DeviceConfigurator(
+              RobotBase.isReal()
+                  ? new File(Filesystem.getOperatingDirectory(), hashFileName)
+                  : null);
+    }
+    return instance;
+  }
+
+  /**
+   * Creates a configurator. Outside of tests, use {@link #getInstance()}.
+   *
+   * @param hashFile File holding the persisted config hashes, or null to not keep them.
+   */
+  DeviceConfigurator(File hashFile) {
+    this.hashFile = hashFile;
+    if (hashFile != null && hashFile.exists()) {
+      try (FileInputStream stream = new FileInputStream(hashFile)) {
+        persistedHashes.load(stream);
+      } catch (IOException e) {
+        DriverStation.reportWarning(
+            "Failed to read device config hashes: " + e.getMessage(), false);
+      }
+    }
+  }
+
+  /**
+   * Submits a task that configures one device. Must be called before {@link #awaitAll()}.
+   *
+   * @param name Device name used in the log, such as "Module0/Drive".
+   * @param task Runs on a worker thread, and must only touch this device.
+   */
+  public void submit(String name, Runnable task) {
+    submitTask(
+        name,
+        () -> {
+          task.run();
+          return true;
+        });
+  }
+
+  /** Submits a task that returns whether it succeeded. */
+  private void submitTask(String name, BooleanSupplier task) {
+    double[] durationMs = new double[1];
+    Future<Boolean> future =
+        executor.submit(
+            () -> {
+              long taskStartMicros = RobotController.getFPGATime();
+              boolean ok = task.getAsBoolean();
+              durationMs[0] = (RobotController.getFPGATime() - taskStartMicros) / 1000.0;
+              return ok;
+            });
+    tasks.add(new Task(name, future, durationMs));
+  }
+
+  /**
+   * Submits a task that applies a config to a Spark, persisting it only if it changed since the
+   * last time it was persisted. Must be called before {@link #awaitAll()}.
+   *
+   * @param name Device name used in the log, such as "Module0/Drive".
+   * @param spark The Spark to configure.
+   * @param config The full config, applied after resetting the safe parameters.
+   * @param afterConfigure Runs on the same worker thread once the config is applied, such as to
+   *     seed the encoder position. Retried like the config until it returns {@code kOk}.
+   */
+  public void configureSpark(
+      String name,
+      SparkBase spark,
+      SparkBaseConfig config,
+      Supplier<REVLibError> afterConfigure) {
+    String key = getHashKey(spark.getDeviceId());
+    String hash = hash(config.flatten());
+    boolean persist = shouldPersist(key, hash);
+    PersistMode persistMode =
+        persist ? PersistMode.kPersistParameters : PersistMode.kNoPersistParameters;
+    submitTask(
+        name,
+        () -> {
+          boolean configured =
+              tryUntilOk(
+                  () -> spark.configure(config, ResetMode.kResetSafeParameters, persistMode));
+          if (configured && persist) {
+            markPersisted(name, key, hash);
+          }
+          return tryUntilOk(afterConfigure) && configured;
+        });
+  }
+
+  /**
+   * Submits a task that applies a config to a Spark, like {@link #configureSpark(String,
+   * SparkBase, SparkBaseConfig, Supplier)} with nothing to run afterward.
+   */
+  public void configureSpark(String name, SparkBase spark, SparkBaseConfig config) {
+    configureSpark(name, spark, config, () -> REVLibError.kOk);
+  }
+
+  /**
+   * Waits for every submitted task, then logs the results and saves the persisted hashes. Must be
+   * called from the main loop thread.
+   *
+   * @return Whether every task succeeded.
+   */
+  public boolean awaitAll() {
+    String[] names = new String[tasks.size()];
+    double[] durationsMs = new double[tasks.size()];
+    List<String> failedNames = new ArrayList<>();
+    for (int i = 0; i < tasks.size(); i++) {
+      Task task = tasks.get(i);
+      boolean ok = false;
+      try {
+        ok = task.future().get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        DriverStation.reportError(
+            "Failed to configure " + task.name() + ": " + cause, cause.getStackTrace());
+      }
+      if (!ok) {
+        failedNames.add(task.name());
+      }
+      names[i] = task.name();
+      durationsMs[i] = task.durationMs()[0];
+    }
+    tasks.clear();
+    executor.shutdown();
+    if (!failedNames.isEmpty()) {
+      SparkUtil.sparkStickyFault = true;
+    }
+
+    String[] persisted;
+    synchronized (persistedHashes) {
+      persisted = persistedNames.toArray(new String[0]);
+      if (hashFile != null && persisted.length > 0) {
+        try (FileOutputStream stream = new FileOutputStream(hashFile)) {
+          persistedHashes.store(stream, "Hash of the config last persisted to each CAN ID");
+        } catch (IOException e) {
+          DriverStation.reportWarning(
+              "Failed to save device config hashes: " + e.getMessage(), false);
+        }
+      }
+    }
+
+    Logger.recordOutput("DeviceConfig/Names", names);
+    Logger.recordOutput("DeviceConfig/DurationsMs", durationsMs);
+    Logger.recordOutput("DeviceConfig/Persisted", persisted);
+    Logger.recordOutput("DeviceConfig/Failed", failedNames.toArray(new String[0]));
+    Logger.recordOutput(
+        "DeviceConfig/TotalMs", (RobotController.getFPGATime() - startMicros) / 1000.0);
+    return failedNames.isEmpty();
+  }
+
+  /** Returns the key a Spark's persisted config hash is stored under. */
+  static String getHashKey(int canId) {
+    return "Spark" + canId;
+  }
+
+  /** Returns whether a config differs from the last one persisted under the key. */
+  boolean shouldPersist(String key, String hash) {
+    synchronized (persistedHashes) {
+      return hash.isEmpty() || !hash.equals(persistedHashes.getProperty(key));
+    }
+  }
+
+  /** Records that a config was persisted, to be saved by {@link #awaitAll()}. */
+  void markPersisted(String name, String key, String hash) {
+    synchronized (persistedHashes) {
+      persistedHashes.setProperty(key, hash);
+      persistedNames.add(name);
+    }
+  }
+
+  /** Runs a command until it returns {@code kOk}, up to {@link #maxAttempts} times. */
+  private static boolean tryUntilOk(Supplier<REVLibError> command) {
+    for (int i = 0; i < maxAttempts; i++) {
+      if (command.get() == REVLibError.kOk) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** Returns the SHA-256 hash of a flattened config as a hex string. */
+  static String hash(String flattenedConfig) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      byte[] bytes = digest.digest(flattenedConfig.getBytes(StandardCharsets.UTF_8));
+      return HexFormat.of().formatHex(bytes);
+    } catch (NoSuchAlgorithmException e) {
+      // Every Java platform supports SHA-256, but fall back to always persisting
+      return "";
+    }
+  }
+}
@@ -0,0 +1,117 @@
+package frc.robot.util;
+
+/**
+ * Fixed-capacity ring buffer of primitive doubles for handing samples from one producer thread to
+ * one consumer thread.
+ *
+ * <p>Neither side locks or allocates. The producer publishes each value with a single volatile
+ * write of the tail index, so the consumer never observes a partially written slot. When the buffer
+ * is full, new values are rejected rather than overwriting unread data. Producers that write a
+ * sample to several buffers check {@link #hasCapacity()} first and count skipped samples
+ * themselves, so every buffer stays on the same sequence.
+ */
+public class DoubleRingBuffer {
+  private final double[] buffer;
+  private final int mask;
+
+  private volatile long head = 0; // Next index to read, only written by the consumer
+  private volatile long tail = 0; // Next index to write, only written by the producer
+
+  /** Creates a buffer holding at least the specified number of values. */
+  public DoubleRingBuffer(int minCapacity) {
+    if (minCapacity < 1) {
+      throw new IllegalArgumentException("Capacity must be positive");
+    }
+    int capacity = Integer.highestOneBit(minCapacity);
+    if (capacity < minCapacity) {
+      capacity <<= 1;
+    }
+    buffer = new double[capacity];
+    mask = capacity - 1;
+  }
+
+  /**
+   * Adds a value to the buffer. Must only be called from the producer thread.
+   *
+   * @return False if the buffer was full and the value was dropped.
+   */
+  public boolean offer(double value) {
+    long currentTail = tail;
+    if (currentTail - head >= buffer.length) {
+      return false;
+    }
+    buffer[(int) (currentTail & mask)] = value;
+    tail = currentTail + 1;
+    return true;
+  }
+
+  /**
+   * Copies up to {@code maxCount} of the oldest values into the destination and removes them from
+   * the buffer. Must only be called from the consumer thread.
+   *
+   * @return The number of values copied.
+   */
+  public int drain(double[] destination, int offset, int maxCount) {
+    long currentHead = head;
+    int count = (int) Math.min(tail - currentHead, Math.min(maxCount, destination.length - offset));
+    for (int i = 0; i < count; i++) {
+      destination[offset + i] = buffer[(int) ((currentHead + i) & mask)];
+    }
+    head = currentHead + count;
+    return count;
+  }
+
+  /**
+   * Copies as many of the oldest values as fit into the destination and removes them from the
+   * buffer. Must only be called from the consumer thread.
+   *
+   * @return The number of values copied.
+   */
+  public int drain(double[] destination) {
+    return drain(destination, 0, destination.length);
+  }
+
+  /**
+   * Removes the specified number of values and returns them in a new array sized to fit exactly,
+   * which can be stored in logged inputs. Must only be called from the consumer thread.
+   */
+  public double[] drainExactly(int count) {
+    double[] destination = new double[count];
+    drain(destination, 0, count);
+    return destination;
+  }
+
+  /**
+   * Returns the most recently added value, or NaN if no value has been added. Must only be called
+   * from the producer thread.
+   */
+  public double peekNewest() {
+    long currentTail = tail;
+    return currentTail == 0 ? Double.NaN : buffer[(int) ((currentTail - 1) & mask)];
+  }
+
+  /** Returns the number of values waiting to be read. */
+  public int size() {
+    return (int) (tail - head);
+  }
+
+  /** Returns whether another value can be added without dropping it. */
+  public boolean hasCapacity() {
+    return tail - head < buffer.length;
+  }
+
+  /** Returns the total number of values read so far, which is the index of the next value. */
+  public long getReadIndex() {
+    return head;
+  }
+
+  /** Returns the maximum number of values the buffer can hold. */
+  public int capacity() {
+    return buffer.length;
+  }
+
+  /** Discards all unread values. Must only be called from the consumer thread. */
+  public void clear() {
+    head = tail;
+  }
+}
@@ -0,0 +1,39 @@
+package frc.robot.util;
+
+import frc.robot.Constants;
+
+/**
+ * Lets the gain tuner try controller gains in simulation without editing the constants.
+ *
+ * <p>A gain constant reads its value through {@link #get}, which returns the value of the system
+ * property {@value #propertyPrefix} followed by the gain name, if the property is set. Properties
+ * are only read in simulation, so the real robot always runs the hand-written values. See {@link
+ * frc.robot.GainTuner}.
+ */
+public final class GainOverrides {
+  /** Prefix of the system properties that override gains, such as "gains.turnKp". */
+  public static final String propertyPrefix = "gains.";
+
+  private GainOverrides() {}
+
+  /**
+   * Returns the override for a gain in simulation, or the specified value if there is none.
+   *
+   * @param name Gain name, matching the name of its constant.
+   * @param defaultValue Value used on the real robot, and in simulation without an override.
+   */
+  public static double get(String name, double defaultValue) {
+    if (Constants.currentMode != Constants.Mode.SIM) {
+      return defaultValue;
+    }
+    String value = System.getProperty(propertyPrefix + name);
+    if (value == null) {
+      return defaultValue;
+    }
+    try {
+      return Double.parseDouble(value);
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid override for gain " + name + ": " + value, e);
+    }
+  }
+}
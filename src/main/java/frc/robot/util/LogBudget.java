@@ -0,0 +1,158 @@
+package frc.robot.util;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import org.littletonrobotics.junction.LogDataReceiver;
+import org.littletonrobotics.junction.LogTable;
+import org.littletonrobotics.junction.LogTable.LogValue;
+import org.littletonrobotics.junction.Logger;
+
+/**
+ * Measures how many bytes per second each top-level folder of the log adds, such as "Drive" or
+ * "Vision".
+ *
+ * <p>Runs as a data receiver on the logger's receiver thread, so measuring adds nothing to the
+ * main loop. Like the log writer, it only counts an entry in cycles where the value changed. Each
+ * change costs the encoded size of the value plus {@link #recordOverheadBytes} for the record
+ * header. NetworkTables also only sends changes, so the totals are close for both. Outputs count
+ * toward the folder under the outputs table, so they join the inputs of the same folder. Outputs
+ * logged under their own folder, such as "SwerveStates", are reported separately.
+ */
+public class LogBudget implements LogDataReceiver {
+  /** Estimated bytes in the header of each log record. */
+  public static final int recordOverheadBytes = 8;
+
+  /** Length of logged time each report covers. */
+  public static final double reportPeriodSecs = 1.0;
+
+  /** Rates measured over one report period. */
+  private static record Report(
+      String[] folders,
+      double[] bytesPerSec,
+      double inputBytesPerSec,
+      double outputBytesPerSec) {}
+
+  // Only touched by the receiver thread
+  private final Map<String, LogValue> lastValues = new HashMap<>();
+  private final Map<String, long[]> folderBytes = new TreeMap<>();
+  private long inputBytes = 0;
+  private long outputBytes = 0;
+  private long reportStartMicros = Long.MIN_VALUE;
+
+  private volatile Report report = new Report(new String[] {}, new double[] {}, 0.0, 0.0);
+
+  @Override
+  public void putTable(LogTable table) {
+    long timestamp = table.getTimestamp();
+    if (reportStartMicros == Long.MIN_VALUE) {
+      reportStartMicros = timestamp;
+    }
+
+    for (Map.Entry<String, LogValue> entry : table.getAll(false).entrySet()) {
+      LogValue value = entry.getValue();
+      if (value.equals(lastValues.put(entry.getKey(), value))) {
+        continue;
+      }
+      long bytes = recordOverheadBytes + getValueBytes(value);
+
+      // Group by the first folder, looking inside the outputs table
+      String key = entry.getKey().startsWith("/") ? entry.getKey().substring(1) : entry.getKey();
+      boolean isOutput = key.startsWith("RealOutputs/") || key.startsWith("ReplayOutputs/");
+      if (isOutput) {
+        key = key.substring(key.indexOf('/') + 1);
+        outputBytes += bytes;
+      } else {
+        inputBytes += bytes;
+      }
+      int slash = key.indexOf('/');
+      String folder = slash >= 0 ? key.substring(0, slash) : key;
+      folderBytes.computeIfAbsent(folder, name -> new long[1])[0] += bytes;
+    }
+
+    // Publish the rates once a full period is counted
+    double elapsedSecs = (timestamp - reportStartMicros) / 1e6;
+    if (elapsedSecs >= reportPeriodSecs) {
+      String[] folders = new String[folderBytes.size()];
+      double[] bytesPerSec = new double[folderBytes.size()];
+      int i = 0;
+      for (Map.Entry<String, long[]> entry : folderBytes.entrySet()) {
+        folders[i] = entry.getKey();
+        bytesPerSec[i] = entry.getValue()[0] / elapsedSecs;
+        entry.getValue()[0] = 0;
+        i++;
+      }
+      report =
+          new Report(folders, bytesPerSec, inputBytes / elapsedSecs, outputBytes / elapsedSecs);
+      inputBytes = 0;
+      outputBytes = 0;
+      reportStartMicros = timestamp;
+    }
+  }
+
+  /** Logs the latest report. Must be called from the main loop. */
+  public void log() {
+    Report current = report;
+    Logger.recordOutput("LogBudget/Folders", current.folders());
+    Logger.recordOutput("LogBudget/BytesPerSec", current.bytesPerSec());
+    Logger.recordOutput("LogBudget/InputBytesPerSec", current.inputBytesPerSec());
+    Logger.recordOutput("LogBudget/OutputBytesPerSec", current.outputBytesPerSec());
+    Logger.recordOutput(
+        "LogBudget/TotalBytesPerSec", current.inputBytesPerSec() + current.outputBytesPerSec());
+  }
+
+  /** Returns the rate of a folder in the latest report, or zero if it wasn't logged. */
+  double getFolderBytesPerSec(String folder) {
+    Report current = report;
+    for (int i = 0; i < current.folders().length; i++) {
+      if (current.folders()[i].equals(folder)) {
+        return current.bytesPerSec()[i];
+      }
+    }
+    return 0.0;
+  }
+
+  /** Returns the rate of all inputs in the latest report. */
+  double getInputBytesPerSec() {
+    return report.inputBytesPerSec();
+  }
+
+  /** Returns the rate of all outputs in the latest report. */
+  double getOutputBytesPerSec() {
+    return report.outputBytesPerSec();
+  }
+
+  /** Returns the encoded size of a value in bytes. */
+  private static long getValueBytes(LogValue value) {
+    switch (value.type) {
+      case Raw:
+        return value.getRaw().length;
+      case Boolean:
+        return 1;
+      case Integer:
+      case Double:
+        return 8;
+      case Float:
+        return 4;
+      case String:
+        return value.getString().length();
+      case BooleanArray:
+        return value.getBooleanArray().length;
+      case IntegerArray:
+        return 8L * value.getIntegerArray().length;
+      case FloatArray:
+        return 4L * value.getFloatArray().length;
+      case DoubleArray:
+        return 8L * value.getDoubleArray().length;
+      case StringArray:
+        // Each string is prefixed with its length
+        long bytes = 4;
+        for (String string : value.getStringArray()) {
+          bytes += 4 + string.length();
+        }
+        return bytes;
+      default:
+        return 0;
+    }
+  }
+}
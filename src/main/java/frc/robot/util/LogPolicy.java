@@ -0,0 +1,128 @@
+package frc.robot.util;
+
+import edu.wpi.first.wpilibj.DriverStation;
+import org.littletonrobotics.junction.Logger;
+
+/**
+ * Decides which outputs are recorded each cycle, so the log stays within budget in a match.
+ *
+ * <p>Each output that is not needed every cycle gets an {@link Output} with a tier and an optional
+ * rate limit, and is only recorded when {@link Output#shouldRecord()} returns true. Outside of
+ * competition, every tier up to {@link #practiceTier} is recorded. In competition mode, which
+ * starts when the FMS is attached, only tiers up to {@link #competitionTier} are. The decision
+ * depends only on the logged timestamp and driver station state, so it repeats the same way in
+ * replay.
+ *
+ * <p>Inputs logged with {@link Logger#processInputs} are never limited, since replay needs all of
+ * them. {@link LogBudget} reports how many bytes per second each part of the log adds.
+ */
+public final class LogPolicy {
+  /** How important an output is, from most to least. */
+  public static enum Tier {
+    /** Needed to review a match, such as the pose estimate. Always recorded. */
+    CRITICAL,
+
+    /** Needed to debug a mechanism, such as setpoints and measured states. */
+    DEBUG,
+
+    /** Detailed diagnostics, such as timing histograms and error counters. */
+    VERBOSE
+  }
+
+  /** Least important tier recorded outside of competition. */
+  public static final Tier practiceTier = Tier.VERBOSE;
+
+  /** Least important tier recorded in competition mode. */
+  public static final Tier competitionTier = Tier.CRITICAL;
+
+  /** Whether competition mode starts when the FMS is attached. */
+  public static final boolean competitionModeWithFms = true;
+
+  /** Forces competition mode, such as to check the budget on a practice field. */
+  public static final boolean forceCompetitionMode = false;
+
+  /** An output, or a folder of outputs recorded together, with its tier and rate limit. */
+  public static class Output {
+    private final String key;
+    private final Tier tier;
+    private final long periodMicros;
+    private long nextRecordMicros = Long.MIN_VALUE;
+
+    private Output(String key, Tier tier, double maxRateHz) {
+      this.key = key;
+      this.tier = tier;
+      periodMicros = Double.isInfinite(maxRateHz) ? 0 : Math.round(1e6 / maxRateHz);
+    }
+
+    /** Returns the key to record under. */
+    public String getKey() {
+      return key;
+    }
+
+    /**
+     * Returns whether to record the output this cycle, and counts it as recorded if so. Must be
+     * called from the main loop, at most once per cycle.
+     */
+    public boolean shouldRecord() {
+      if (tier.compareTo(activeTier) > 0) {
+        return false;
+      }
+      long timestamp = Logger.getTimestamp();
+      if (timestamp < nextRecordMicros) {
+        return false;
+      }
+
+      // Keep to the average rate despite loop jitter, but don't catch up after a gap
+      nextRecordMicros += periodMicros;
+      if (nextRecordMicros <= timestamp) {
+        nextRecordMicros = timestamp + periodMicros;
+      }
+      return true;
+    }
+  }
+
+  private static final LogBudget budget = new LogBudget();
+  private static boolean competitionMode = forceCompetitionMode;
+  private static Tier activeTier = forceCompetitionMode ? competitionTier : practiceTier;
+
+  private LogPolicy() {}
+
+  /** Creates an output recorded every cycle while its tier is active. */
+  public static Output output(String key, Tier tier) {
+    return new Output(key, tier, Double.POSITIVE_INFINITY);
+  }
+
+  /**
+   * Creates an output recorded while its tier is active, at most at the specified rate.
+   *
+   * @param key Key of the output, or of the folder when several outputs are recorded together.
+   * @param tier How important the output is.
+   * @param maxRateHz Highest rate to record at. Counters and histograms lose nothing by being
+   *     recorded less often.
+   */
+  public static Output output(String key, Tier tier, double maxRateHz) {
+    return new Output(key, tier, maxRateHz);
+  }
+
+  /** Returns the receiver that measures the log, to add before the logger starts. */
+  public static LogBudget getBudget() {
+    return budget;
+  }
+
+  /** Returns whether only the competition tiers are recorded. */
+  public static boolean isCompetitionMode() {
+    return competitionMode;
+  }
+
+  /**
+   * Updates the mode and logs the budget. Must be called from the main loop before any subsystem
+   * records outputs.
+   */
+  public static void periodic() {
+    competitionMode =
+        forceCompetitionMode || (competitionModeWithFms && DriverStation.isFMSAttached());
+    activeTier = competitionMode ? competitionTier : practiceTier;
+    Logger.recordOutput("LogBudget/CompetitionMode", competitionMode);
+    budget.log();
+  }
+}
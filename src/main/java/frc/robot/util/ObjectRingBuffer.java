@@ -0,0 +1,95 @@
+package frc.robot.util;
+
+/**
+ * Fixed-capacity ring buffer of objects for handing work from one producer thread to one consumer
+ * thread.
+ *
+ * <p>This is the object counterpart of {@link DoubleRingBuffer}. Neither side locks, and the
+ * producer publishes each element with a single volatile write of the tail index, which also makes
+ * the element's fields visible to the consumer. When the buffer is full, new elements are dropped
+ * and counted rather than overwriting unread data.
+ */
+public class ObjectRingBuffer<T> {
+  private final Object[] buffer;
+  private final int mask;
+
+  private volatile long head = 0; // Next index to read, only written by the consumer
+  private volatile long tail = 0; // Next index to write, only written by the producer
+  private volatile long droppedCount = 0; // Only written by the producer
+
+  /** Creates a buffer holding at least the specified number of elements. */
+  public ObjectRingBuffer(int minCapacity) {
+    if (minCapacity < 1) {
+      throw new IllegalArgumentException("Capacity must be positive");
+    }
+    int capacity = Integer.highestOneBit(minCapacity);
+    if (capacity < minCapacity) {
+      capacity <<= 1;
+    }
+    buffer = new Object[capacity];
+    mask = capacity - 1;
+  }
+
+  /**
+   * Adds an element to the buffer. Must only be called from the producer thread.
+   *
+   * @return False if the buffer was full and the element was dropped.
+   */
+  public boolean offer(T element) {
+    long currentTail = tail;
+    if (currentTail - head >= buffer.length) {
+      droppedCount++;
+      return false;
+    }
+    buffer[(int) (currentTail & mask)] = element;
+    tail = currentTail + 1;
+    return true;
+  }
+
+  /**
+   * Removes and returns the oldest element, or null if the buffer is empty. Must only be called
+   * from the consumer thread.
+   */
+  @SuppressWarnings("unchecked")
+  public T poll() {
+    long currentHead = head;
+    if (currentHead == tail) {
+      return null;
+    }
+    int index = (int) (currentHead & mask);
+    T element = (T) buffer[index];
+    buffer[index] = null; // Don't hold on to consumed elements
+    head = currentHead + 1;
+    return element;
+  }
+
+  /**
+   * Returns the oldest element without removing it, or null if the buffer is empty. Must only be
+   * called from the consumer thread.
+   */
+  @SuppressWarnings("unchecked")
+  public T peek() {
+    long currentHead = head;
+    return currentHead == tail ? null : (T) buffer[(int) (currentHead & mask)];
+  }
+
+  /** Returns the number of elements waiting to be read. */
+  public int size() {
+    return (int) (tail - head);
+  }
+
+  /** Returns whether another element can be added without dropping it. */
+  public boolean hasCapacity() {
+    return tail - head < buffer.length;
+  }
+
+  /** Returns the maximum number of elements the buffer can hold. */
+  public int capacity() {
+    return buffer.length;
+  }
+
+  /** Returns the total number of elements dropped because the buffer was full. */
+  public long getDroppedCount() {
+    return droppedCount;
+  }
+}
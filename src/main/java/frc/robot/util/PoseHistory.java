@@ -0,0 +1,112 @@
+package frc.robot.util;
+
+import edu.wpi.first.math.MathUtil;
+
+/**
+ * Fixed-size history of timestamped poses, stored as primitives in a circular array.
+ *
+ * <p>Samples older than the history duration are dropped as new samples arrive, and the oldest
+ * sample is overwritten once the capacity is reached. Lookups binary search the timestamps and
+ * interpolate between the neighboring samples along the twist connecting them, so memory and lookup
+ * cost are fixed by the capacity. Poses are arrays of x, y and heading.
+ */
+public class PoseHistory {
+  private final double durationSecs;
+  private final double[] timestamps;
+  private final double[][] poses;
+  private int start = 0;
+  private int count = 0;
+
+  /**
+   * Creates a new history.
+   *
+   * @param durationSecs How long samples are kept.
+   * @param capacity Maximum number of samples kept.
+   */
+  public PoseHistory(double durationSecs, int capacity) {
+    this.durationSecs = durationSecs;
+    timestamps = new double[capacity];
+    poses = new double[capacity][3];
+  }
+
+  /** Adds a sample. Samples that are not newer than the latest sample are ignored. */
+  public void add(double timestamp, double[] pose) {
+    if (count > 0 && timestamp <= getNewestTimestamp()) {
+      return;
+    }
+
+    // Drop samples that have aged out of the history or no longer fit
+    while (count > 0
+        && (count == timestamps.length || timestamps[start] < timestamp - durationSecs)) {
+      start = (start + 1) % timestamps.length;
+      count--;
+    }
+    int index = index(count);
+    timestamps[index] = timestamp;
+    PoseMath.copy(pose, poses[index]);
+    count++;
+  }
+
+  /** Removes every sample. */
+  public void clear() {
+    count = 0;
+  }
+
+  /** Returns whether the history has no samples. */
+  public boolean isEmpty() {
+    return count == 0;
+  }
+
+  /** Returns the number of samples in the history. */
+  public int size() {
+    return count;
+  }
+
+  /** Returns the timestamp of the oldest sample, or NaN if the history is empty. */
+  public double getOldestTimestamp() {
+    return count > 0 ? timestamps[start] : Double.NaN;
+  }
+
+  /** Returns the timestamp of the newest sample, or NaN if the history is empty. */
+  public double getNewestTimestamp() {
+    return count > 0 ? timestamps[index(count - 1)] : Double.NaN;
+  }
+
+  /**
+   * Writes the pose at a timestamp to the output, interpolating between samples. Timestamps outside
+   * the history are clamped to its oldest or newest sample.
+   *
+   * @return Whether a pose was written, which is false if the history is empty.
+   */
+  public boolean sample(double timestamp, double[] pose) {
+    if (count == 0) {
+      return false;
+    }
+    timestamp = MathUtil.clamp(timestamp, getOldestTimestamp(), getNewestTimestamp());
+
+    // Binary search for the last sample at or before the timestamp
+    int low = 0;
+    int high = count - 1;
+    while (low < high) {
+      int mid = (low + high + 1) >>> 1;
+      if (timestamps[index(mid)] <= timestamp) {
+        low = mid;
+      } else {
+        high = mid - 1;
+      }
+    }
+    int floor = index(low);
+    if (low == count - 1) {
+      PoseMath.copy(poses[floor], pose);
+      return true;
+    }
+    int ceiling = index(low + 1);
+    double fraction = (timestamp - timestamps[floor]) / (timestamps[ceiling] - timestamps[floor]);
+    PoseMath.interpolate(poses[floor], poses[ceiling], fraction, pose);
+    return true;
+  }
+
+  private int index(int offset) {
+    return (start + offset) % timestamps.length;
+  }
+}
@@ -0,0 +1,92 @@
+package frc.robot.util;
+
+import edu.wpi.first.math.MathUtil;
+
+/**
+ * Pose operations on primitive arrays of x, y and heading, matching {@code Pose2d.exp}, {@code
+ * Pose2d.log} and {@code Pose2d.interpolate} without allocating.
+ */
+public final class PoseMath {
+  private PoseMath() {}
+
+  /** Copies a pose or twist. */
+  public static void copy(double[] source, double[] destination) {
+    destination[0] = source[0];
+    destination[1] = source[1];
+    destination[2] = source[2];
+  }
+
+  /**
+   * Applies a robot-relative twist to a pose. The output may be the same array as the pose or the
+   * twist.
+   */
+  public static void exp(double[] pose, double[] twist, double[] output) {
+    exp(pose, twist[0], twist[1], twist[2], output);
+  }
+
+  /** Applies a robot-relative twist to a pose. The output may be the same array as the pose. */
+  public static void exp(double[] pose, double dx, double dy, double dTheta, double[] output) {
+    double sinTheta = Math.sin(dTheta);
+    double cosTheta = Math.cos(dTheta);
+    double s;
+    double c;
+    if (Math.abs(dTheta) < 1e-9) {
+      s = 1.0 - 1.0 / 6.0 * dTheta * dTheta;
+      c = 0.5 * dTheta;
+    } else {
+      s = sinTheta / dTheta;
+      c = (1 - cosTheta) / dTheta;
+    }
+    double localX = dx * s - dy * c;
+    double localY = dx * c + dy * s;
+    double cos = Math.cos(pose[2]);
+    double sin = Math.sin(pose[2]);
+    double x = pose[0] + localX * cos - localY * sin;
+    double y = pose[1] + localX * sin + localY * cos;
+    output[0] = x;
+    output[1] = y;
+    output[2] = MathUtil.angleModulus(pose[2] + dTheta);
+  }
+
+  /**
+   * Writes the twist that moves the start pose to the end pose. The output may be the same array as
+   * either pose.
+   */
+  public static void log(double[] start, double[] end, double[] output) {
+    double cos = Math.cos(start[2]);
+    double sin = Math.sin(start[2]);
+    double dx = end[0] - start[0];
+    double dy = end[1] - start[1];
+    double localX = dx * cos + dy * sin;
+    double localY = -dx * sin + dy * cos;
+    double dTheta = MathUtil.angleModulus(end[2] - start[2]);
+    double halfDTheta = dTheta / 2.0;
+    double cosMinusOne = Math.cos(dTheta) - 1;
+    double halfThetaByTanOfHalfDTheta;
+    if (Math.abs(cosMinusOne) < 1e-9) {
+      halfThetaByTanOfHalfDTheta = 1.0 - 1.0 / 12.0 * dTheta * dTheta;
+    } else {
+      halfThetaByTanOfHalfDTheta = -(halfDTheta * Math.sin(dTheta)) / cosMinusOne;
+    }
+    output[0] = localX * halfThetaByTanOfHalfDTheta + localY * halfDTheta;
+    output[1] = localY * halfThetaByTanOfHalfDTheta - localX * halfDTheta;
+    output[2] = dTheta;
+  }
+
+  /**
+   * Interpolates between two poses along the twist connecting them. The output must not be the
+   * same array as the start pose.
+   */
+  public static void interpolate(double[] start, double[] end, double fraction, double[] output) {
+    if (fraction <= 0.0) {
+      copy(start, output);
+      return;
+    }
+    if (fraction >= 1.0) {
+      copy(end, output);
+      return;
+    }
+    log(start, end, output);
+    exp(start, output[0] * fraction, output[1] * fraction, output[2] * fraction, output);
+  }
+}
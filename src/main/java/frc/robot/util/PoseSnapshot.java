@@ -0,0 +1,50 @@
+package frc.robot.util;
+
+/**
+ * A timestamped pose written by one thread and read consistently by any number of others.
+ *
+ * <p>This is a sequence lock over primitive fields. The writer makes the sequence odd while it
+ * updates the fields and even again once they are complete, and a reader retries if the sequence
+ * was odd or changed while it copied them. Neither side locks or allocates, and a reader never sees
+ * the x of one pose with the heading of another.
+ */
+public class PoseSnapshot {
+  private volatile long sequence = 0; // Only written by the writer thread
+  private volatile double timestamp = Double.NaN;
+  private volatile double x = 0.0;
+  private volatile double y = 0.0;
+  private volatile double headingRad = 0.0;
+
+  /** Publishes a new pose. Must only be called from a single thread. */
+  public void publish(double timestamp, double[] pose) {
+    long currentSequence = sequence;
+    sequence = currentSequence + 1;
+    this.timestamp = timestamp;
+    x = pose[0];
+    y = pose[1];
+    headingRad = pose[2];
+    sequence = currentSequence + 2;
+  }
+
+  /**
+   * Copies the newest pose into the array as x, y and heading.
+   *
+   * @return The timestamp of the pose, or NaN if no pose has been published.
+   */
+  public double read(double[] pose) {
+    while (true) {
+      long startSequence = sequence;
+      if ((startSequence & 1) != 0) {
+        Thread.onSpinWait();
+        continue;
+      }
+      double readTimestamp = timestamp;
+      pose[0] = x;
+      pose[1] = y;
+      pose[2] = headingRad;
+      if (sequence == startSequence) {
+        return readTimestamp;
+      }
+    }
+  }
+}
@@ -0,0 +1,49 @@
+package frc.robot.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.littletonrobotics.junction.Logger;
+
+/**
+ * Fixed-bucket histogram of durations in microseconds, recorded from one thread and logged from
+ * another.
+ *
+ * <p>Recording is a single array increment with no allocation or locking. The last bucket collects
+ * every value past the end of the range.
+ */
+public class TimingHistogram {
+  private final long bucketWidthMicros;
+  private final AtomicLongArray counts;
+  private volatile long maxMicros = 0; // Only written by the recording thread
+  private volatile long totalMicros = 0; // Only written by the recording thread
+  private volatile long sampleCount = 0; // Only written by the recording thread
+
+  public TimingHistogram(int bucketCount, long bucketWidthMicros) {
+    this.bucketWidthMicros = bucketWidthMicros;
+    counts = new AtomicLongArray(bucketCount);
+  }
+
+  /** Records a duration. Must only be called from a single thread. */
+  public void record(long micros) {
+    int bucket = (int) Math.min(Math.max(micros, 0) / bucketWidthMicros, counts.length() - 1);
+    counts.lazySet(bucket, counts.get(bucket) + 1);
+    if (micros > maxMicros) {
+      maxMicros = micros;
+    }
+    totalMicros = totalMicros + micros;
+    sampleCount = sampleCount + 1;
+  }
+
+  /** Logs the bucket counts and summary statistics under the specified key. */
+  public void log(String key) {
+    // A new array each time, since the logger keeps a reference to each logged array
+    long[] snapshot = new long[counts.length()];
+    for (int i = 0; i < snapshot.length; i++) {
+      snapshot[i] = counts.get(i);
+    }
+    long count = sampleCount;
+    Logger.recordOutput(key + "/BucketCounts", snapshot);
+    Logger.recordOutput(key + "/BucketWidthMicros", bucketWidthMicros);
+    Logger.recordOutput(key + "/MaxMicros", maxMicros);
+    Logger.recordOutput(key + "/MeanMicros", count > 0 ? (double) totalMicros / count : 0.0);
+  }
+}
@@ -0,0 +1,92 @@
+package frc.robot.subsystems.drive;
+
+import static frc.robot.subsystems.drive.DriveConstants.moduleTranslations;
+
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
+import edu.wpi.first.math.kinematics.SwerveModuleState;
+import frc.robot.util.Benchmarks;
+import java.util.Random;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+/** Times DriveKinematics against the WPILib kinematics it replaced. Run with gradlew benchmark. */
+@Tag("benchmark")
+class DriveKinematicsBenchmark {
+  private static final int inputCount = 1024;
+  private static final double maxSpeed = 4.8;
+
+  private final DriveKinematics kinematics = new DriveKinematics(moduleTranslations);
+  private final SwerveDriveKinematics wpilibKinematics =
+      new SwerveDriveKinematics(moduleTranslations);
+  private final double[][] inputs = new double[inputCount][3];
+  private int nextInput = 0;
+
+  DriveKinematicsBenchmark() {
+    Random random = new Random(6328);
+    for (double[] input : inputs) {
+      input[0] = (random.nextDouble() * 2.0 - 1.0) * 5.0;
+      input[1] = (random.nextDouble() * 2.0 - 1.0) * 5.0;
+      input[2] = (random.nextDouble() * 2.0 - 1.0) * 10.0;
+    }
+  }
+
+  @Test
+  void inverseKinematics() {
+    // Both sides discretize, desaturate and solve module states like Drive.runVelocity does
+    double[] discrete = new double[3];
+    double[] speeds = new double[4];
+    double[] angles = new double[4];
+    Benchmarks.compare(
+        "Discretize, module states and desaturate",
+        () -> {
+          double[] input = nextInput();
+          ChassisSpeeds discreteSpeeds =
+              ChassisSpeeds.discretize(new ChassisSpeeds(input[0], input[1], input[2]), 0.02);
+          SwerveModuleState[] states = wpilibKinematics.toSwerveModuleStates(discreteSpeeds);
+          SwerveDriveKinematics.desaturateWheelSpeeds(states, maxSpeed);
+          return states[0].speedMetersPerSecond + states[3].angle.getRadians();
+        },
+        () -> {
+          double[] input = nextInput();
+          kinematics.discretize(input[0], input[1], input[2], 0.02, discrete);
+          double scale =
+              kinematics.getDesaturationScale(discrete[0], discrete[1], discrete[2], maxSpeed);
+          kinematics.toModuleStates(
+              discrete[0] * scale, discrete[1] * scale, discrete[2] * scale, speeds, angles);
+          return speeds[0] + angles[3];
+        });
+  }
+
+  @Test
+  void forwardKinematics() {
+    SwerveModuleState[] states = new SwerveModuleState[4];
+    double[] speeds = new double[4];
+    double[] angles = new double[4];
+    double[] output = new double[3];
+    Benchmarks.compare(
+        "Chassis speeds from module states",
+        () -> {
+          double[] input = nextInput();
+          for (int i = 0; i < 4; i++) {
+            states[i] = new SwerveModuleState(input[i % 3], new Rotation2d(input[(i + 1) % 3]));
+          }
+          return wpilibKinematics.toChassisSpeeds(states).omegaRadiansPerSecond;
+        },
+        () -> {
+          double[] input = nextInput();
+          for (int i = 0; i < 4; i++) {
+            speeds[i] = input[i % 3];
+            angles[i] = input[(i + 1) % 3];
+          }
+          kinematics.toChassisSpeeds(speeds, angles, output);
+          return output[2];
+        });
+  }
+
+  private double[] nextInput() {
+    nextInput = (nextInput + 1) % inputCount;
+    return inputs[nextInput];
+  }
+}
@@ -0,0 +1,158 @@
+package frc.robot.subsystems.drive;
+
+import static frc.robot.subsystems.drive.DriveConstants.moduleTranslations;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
+import edu.wpi.first.math.kinematics.SwerveModuleState;
+import frc.robot.util.Allocations;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class DriveKinematicsTest {
+  private static final double epsilon = 1e-9;
+  private static final int randomCases = 1000;
+
+  private final DriveKinematics kinematics = new DriveKinematics(moduleTranslations);
+  private final SwerveDriveKinematics wpilibKinematics =
+      new SwerveDriveKinematics(moduleTranslations);
+  private final Random random = new Random(6328);
+
+  @Test
+  void toModuleStatesMatchesWpilib() {
+    double[] speeds = new double[4];
+    double[] angles = new double[4];
+    for (int testCase = 0; testCase < randomCases; testCase++) {
+      ChassisSpeeds chassisSpeeds =
+          new ChassisSpeeds(randomSpeed(5.0), randomSpeed(5.0), randomSpeed(10.0));
+      kinematics.toModuleStates(
+          chassisSpeeds.vxMetersPerSecond,
+          chassisSpeeds.vyMetersPerSecond,
+          chassisSpeeds.omegaRadiansPerSecond,
+          speeds,
+          angles);
+      SwerveModuleState[] expected = wpilibKinematics.toSwerveModuleStates(chassisSpeeds);
+      for (int i = 0; i < 4; i++) {
+        assertEquals(expected[i].speedMetersPerSecond, speeds[i], epsilon);
+        assertEquals(
+            0.0, MathUtil.angleModulus(expected[i].angle.getRadians() - angles[i]), epsilon);
+      }
+    }
+  }
+
+  @Test
+  void toModuleStatesHoldsAnglesWhenStopped() {
+    double[] speeds = new double[4];
+    double[] angles = new double[4];
+    kinematics.toModuleStates(1.0, 2.0, 3.0, speeds, angles);
+    double[] movingAngles = angles.clone();
+    kinematics.toModuleStates(0.0, 0.0, 0.0, speeds, angles);
+    for (int i = 0; i < 4; i++) {
+      assertEquals(0.0, speeds[i]);
+      assertEquals(movingAngles[i], angles[i]);
+    }
+  }
+
+  @Test
+  void toChassisSpeedsMatchesWpilib() {
+    double[] speeds = new double[4];
+    double[] angles = new double[4];
+    double[] output = new double[3];
+    SwerveModuleState[] states = new SwerveModuleState[4];
+    for (int testCase = 0; testCase < randomCases; testCase++) {
+      for (int i = 0; i < 4; i++) {
+        states[i] = new SwerveModuleState(randomSpeed(5.0), randomAngle());
+        speeds[i] = states[i].speedMetersPerSecond;
+        angles[i] = states[i].angle.getRadians();
+      }
+      kinematics.toChassisSpeeds(speeds, angles, output);
+      ChassisSpeeds expected = wpilibKinematics.toChassisSpeeds(states);
+      assertEquals(expected.vxMetersPerSecond, output[0], epsilon);
+      assertEquals(expected.vyMetersPerSecond, output[1], epsilon);
+      assertEquals(expected.omegaRadiansPerSecond, output[2], epsilon);
+    }
+  }
+
+  @Test
+  void discretizeMatchesWpilib() {
+    double[] output = new double[3];
+    for (int testCase = 0; testCase < randomCases; testCase++) {
+      ChassisSpeeds speeds =
+          new ChassisSpeeds(randomSpeed(5.0), randomSpeed(5.0), randomSpeed(10.0));
+      kinematics.discretize(
+          speeds.vxMetersPerSecond,
+          speeds.vyMetersPerSecond,
+          speeds.omegaRadiansPerSecond,
+          0.02,
+          output);
+      ChassisSpeeds expected = ChassisSpeeds.discretize(speeds, 0.02);
+      assertEquals(expected.vxMetersPerSecond, output[0], epsilon);
+      assertEquals(expected.vyMetersPerSecond, output[1], epsilon);
+      assertEquals(expected.omegaRadiansPerSecond, output[2], epsilon);
+    }
+  }
+
+  @Test
+  void equalWeightsMatchPlainKinematics() {
+    double[] deltas = new double[4];
+    double[] angles = new double[4];
+    double[] weights = {2.5, 2.5, 2.5, 2.5};
+    double[] expected = new double[3];
+    double[] output = new double[3];
+    for (int testCase = 0; testCase < randomCases; testCase++) {
+      for (int i = 0; i < 4; i++) {
+        deltas[i] = randomSpeed(0.05);
+        angles[i] = randomAngle().getRadians();
+      }
+      kinematics.toChassisSpeeds(deltas, angles, expected);
+      kinematics.toTwistWeighted(deltas, angles, weights, Double.NaN, output);
+      assertEquals(expected[0], output[0], epsilon);
+      assertEquals(expected[1], output[1], epsilon);
+      assertEquals(expected[2], output[2], epsilon);
+    }
+  }
+
+  @Test
+  void zeroWeightIgnoresModule() {
+    // Module 0 reads a large displacement, the others agree on a pure translation
+    double[] deltas = {1.0, 0.01, 0.01, 0.01};
+    double[] angles = new double[4];
+    double[] weights = {0.0, 1.0, 1.0, 1.0};
+    double[] output = new double[3];
+    kinematics.toTwistWeighted(deltas, angles, weights, 0.0, output);
+    assertEquals(0.01, output[0], epsilon);
+    assertEquals(0.0, output[1], epsilon);
+    kinematics.toTwistWeighted(deltas, angles, weights, Double.NaN, output);
+    assertEquals(0.01, output[0], epsilon);
+    assertEquals(0.0, output[1], epsilon);
+    assertEquals(0.0, output[2], epsilon);
+  }
+
+  @Test
+  void kinematicsDoesNotAllocate() {
+    double[] speeds = new double[4];
+    double[] angles = new double[4];
+    double[] output = new double[3];
+    long allocatedBytes =
+        Allocations.measure(
+            () -> {
+              kinematics.discretize(1.0, 2.0, 3.0, 0.02, output);
+              kinematics.toModuleStates(output[0], output[1], output[2], speeds, angles);
+              kinematics.toChassisSpeeds(speeds, angles, output);
+            },
+            10000);
+    assertTrue(allocatedBytes < Allocations.toleranceBytes, allocatedBytes + " bytes allocated");
+  }
+
+  private double randomSpeed(double max) {
+    return (random.nextDouble() * 2.0 - 1.0) * max;
+  }
+
+  private Rotation2d randomAngle() {
+    return new Rotation2d(random.nextDouble() * 2.0 * Math.PI);
+  }
+}
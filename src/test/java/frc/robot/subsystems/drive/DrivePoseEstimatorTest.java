@@ -0,0 +1,123 @@
+package frc.robot.subsystems.drive;
+
+import static frc.robot.subsystems.drive.DriveConstants.moduleTranslations;
+import static frc.robot.subsystems.drive.DriveConstants.wheelRadiusMeters;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import frc.robot.util.Allocations;
+import org.junit.jupiter.api.Test;
+
+class DrivePoseEstimatorTest {
+  private static final int samplesPerCycle = 5;
+  private static final double samplePeriodSecs = 0.004;
+
+  /**
+   * Reports samples while driving forward. Unlike a real IO it reuses its arrays, so only the
+   * allocations of the pipeline are measured.
+   */
+  private static class DrivingModuleIO implements ModuleIO {
+    private final double[] timestamps = new double[samplesPerCycle];
+    private final double[] drivePositionsRad = new double[samplesPerCycle];
+    private final double[] turnPositionsRad = new double[samplesPerCycle];
+    private double timestamp = 0.0;
+
+    @Override
+    public void updateInputs(ModuleIOInputs inputs) {
+      for (int i = 0; i < samplesPerCycle; i++) {
+        timestamp += samplePeriodSecs;
+        timestamps[i] = timestamp;
+        drivePositionsRad[i] = timestamp / wheelRadiusMeters;
+      }
+      inputs.odometryTimestamps = timestamps;
+      inputs.odometryDrivePositionsRad = drivePositionsRad;
+      inputs.odometryTurnPositionsRad = turnPositionsRad;
+    }
+  }
+
+  private final DrivePoseEstimator estimator =
+      new DrivePoseEstimator(
+          moduleTranslations, 250.0, new double[] {0.1, 0.1, 0.1}, new double[] {0.9, 0.9, 0.9});
+  private final double[] distances = new double[4];
+  private final double[] angles = new double[4];
+  private final double[] pose = new double[3];
+
+  @Test
+  void integratesStraightDriving() {
+    for (int i = 1; i <= 100; i++) {
+      for (int module = 0; module < 4; module++) {
+        distances[module] = i * 0.01;
+      }
+      estimator.update(i * 0.02, 0.0, distances, angles);
+    }
+    estimator.getEstimatedPose(pose);
+    assertEquals(1.0, pose[0], 1e-9);
+    assertEquals(0.0, pose[1], 1e-9);
+    assertEquals(0.0, pose[2], 1e-9);
+  }
+
+  @Test
+  void visionPullsEstimateTowardMeasurement() {
+    for (int i = 1; i <= 10; i++) {
+      estimator.update(i * 0.02, 0.0, distances, angles);
+    }
+    estimator.addVisionMeasurement(new Pose2d(1.0, 0.0, Rotation2d.kZero), 0.2);
+    estimator.getEstimatedPose(pose);
+    assertTrue(pose[0] > 0.0 && pose[0] < 1.0, "Estimate should move partway toward vision");
+  }
+
+  @Test
+  void updateAndVisionDoNotAllocate() {
+    Pose2d visionPose = new Pose2d(0.5, 0.5, Rotation2d.kZero);
+    double[] timestamp = {0.0};
+    long allocatedBytes =
+        Allocations.measure(
+            () -> {
+              timestamp[0] += 0.02;
+              for (int module = 0; module < 4; module++) {
+                distances[module] += 0.01;
+              }
+              estimator.update(timestamp[0], 0.0, distances, angles);
+              estimator.setVisionStdDevs(0.5, 0.5, 1.0);
+              estimator.addVisionMeasurement(visionPose, timestamp[0] - 0.05);
+              estimator.sampleAt(timestamp[0] - 0.1, pose);
+            },
+            5000);
+    assertTrue(allocatedBytes < Allocations.toleranceBytes, allocatedBytes + " bytes allocated");
+  }
+
+  @Test
+  void odometryPipelineDoesNotAllocate() {
+    Module[] modules = new Module[4];
+    for (int i = 0; i < 4; i++) {
+      modules[i] = new Module(new DrivingModuleIO(), i);
+    }
+    OdometryFusion fusion = new OdometryFusion();
+    long allocatedBytes =
+        Allocations.measure(
+            () -> {
+              // The odometry part of Drive.periodic(), without a gyro
+              for (int i = 0; i < 4; i++) {
+                modules[i].periodic();
+                fusion.addModuleSamples(
+                    i,
+                    modules[i].getOdometryTimestamps(),
+                    modules[i].getOdometryDrivePositionsMeters(),
+                    modules[i].getOdometryTurnPositionsRad(),
+                    modules[i].getOdometryTimestamps().length);
+              }
+              int sampleCount = fusion.process(false);
+              for (int i = 0; i < sampleCount; i++) {
+                for (int module = 0; module < 4; module++) {
+                  distances[module] = fusion.getModuleDistanceMeters(module, i);
+                  angles[module] = fusion.getModuleAngleRad(module, i);
+                }
+                estimator.update(fusion.getTimestamp(i), Double.NaN, distances, angles);
+              }
+            },
+            2000);
+    assertTrue(allocatedBytes < Allocations.toleranceBytes, allocatedBytes + " bytes allocated");
+  }
+}
@@ -0,0 +1,73 @@
+package frc.robot.subsystems.drive;
+
+import static frc.robot.subsystems.drive.DriveConstants.maxSteerVelocityRadPerSec;
+import static frc.robot.subsystems.drive.DriveConstants.moduleTranslations;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.wpi.first.math.MathUtil;
+import frc.robot.util.Allocations;
+import org.junit.jupiter.api.Test;
+
+class DriveSetpointGeneratorTest {
+  private static final double dt = 0.02;
+
+  private final DriveSetpointGenerator generator = new DriveSetpointGenerator(moduleTranslations);
+
+  @Test
+  void reachesRequestedSpeedsOverSeveralCycles() {
+    generator.generate(1.0, 0.0, 0.0, dt);
+    assertTrue(generator.getVx() < 1.0, "Speed should be limited in one cycle");
+    for (int cycle = 0; cycle < 100; cycle++) {
+      generator.generate(1.0, 0.0, 0.0, dt);
+    }
+    assertEquals(1.0, generator.getVx(), 1e-9);
+    for (int i = 0; i < 4; i++) {
+      assertEquals(1.0, Math.abs(generator.getModuleSpeeds()[i]), 1e-9);
+    }
+  }
+
+  @Test
+  void stoppedModulesTurnBeforeDriving() {
+    // Modules point forward, so driving sideways needs a quarter turn first
+    generator.generate(0.0, 1.0, 0.0, dt);
+    assertEquals(0.0, generator.getVy());
+    for (int i = 0; i < 4; i++) {
+      assertEquals(maxSteerVelocityRadPerSec * dt, Math.abs(generator.getModuleAngles()[i]), 1e-9);
+    }
+  }
+
+  @Test
+  void steeringIsRateLimited() {
+    double[] angles = new double[4];
+    generator.reset(1.0, 0.0, 0.0, new double[] {1.0, 1.0, 1.0, 1.0}, angles);
+    generator.generate(0.0, 1.0, 0.0, dt);
+    for (int i = 0; i < 4; i++) {
+      double turnRad = MathUtil.angleModulus(generator.getModuleAngles()[i] - angles[i]);
+      assertTrue(Math.abs(turnRad) <= maxSteerVelocityRadPerSec * dt + 1e-9);
+    }
+  }
+
+  @Test
+  void holdsAnglesWhenStopped() {
+    double[] angles = {0.1, 0.2, 0.3, 0.4};
+    generator.reset(0.0, 0.0, 0.0, new double[4], angles);
+    generator.generate(0.0, 0.0, 0.0, dt);
+    for (int i = 0; i < 4; i++) {
+      assertEquals(angles[i], generator.getModuleAngles()[i], 1e-12);
+      assertEquals(0.0, generator.getModuleSpeeds()[i], 1e-12);
+    }
+  }
+
+  @Test
+  void generateDoesNotAllocate() {
+    long allocatedBytes =
+        Allocations.measure(
+            () -> {
+              generator.generate(1.0, 0.5, 2.0, dt);
+              generator.generate(-1.0, 0.0, -1.0, dt);
+            },
+            10000);
+    assertTrue(allocatedBytes < Allocations.toleranceBytes, allocatedBytes + " bytes allocated");
+  }
+}
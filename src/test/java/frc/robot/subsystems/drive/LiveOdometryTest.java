@@ -0,0 +1,137 @@
+package frc.robot.subsystems.drive;
+
+import static frc.robot.subsystems.drive.DriveConstants.moduleTranslations;
+import static frc.robot.subsystems.drive.DriveConstants.wheelRadiusMeters;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+
+class LiveOdometryTest {
+  private static final double samplePeriodSecs = 0.01;
+  private static final double speedMetersPerSec = 1.0;
+
+  /** Reports samples like the Spark IO, driving straight forward at a constant speed. */
+  private static class DrivingModuleIO implements ModuleIO {
+    private final double[] pendingTimestamps = new double[16];
+    private int pendingCount = 0;
+    private double latestPositionRad = 0.0;
+
+    void addSample(double timestamp, double positionRad) {
+      pendingTimestamps[pendingCount++] = timestamp;
+      latestPositionRad = positionRad;
+    }
+
+    @Override
+    public void updateInputs(ModuleIOInputs inputs) {
+      inputs.odometryTimestamps = Arrays.copyOf(pendingTimestamps, pendingCount);
+      inputs.odometryDrivePositionsRad = new double[pendingCount];
+      for (int i = 0; i < pendingCount; i++) {
+        inputs.odometryDrivePositionsRad[i] = getPositionRad(pendingTimestamps[i]);
+      }
+      inputs.odometryTurnPositionsRad = new double[pendingCount];
+      pendingCount = 0;
+    }
+
+    @Override
+    public boolean getLatestOdometrySample(double[] positionsRad) {
+      positionsRad[0] = latestPositionRad;
+      positionsRad[1] = 0.0;
+      return true;
+    }
+  }
+
+  private final DrivingModuleIO[] moduleIOs = new DrivingModuleIO[4];
+  private final Module[] modules = new Module[4];
+  private final OdometryFusion fusion = new OdometryFusion();
+  private final DrivePoseEstimator estimator =
+      new DrivePoseEstimator(
+          moduleTranslations, 100.0, new double[] {0.1, 0.1, 0.1}, new double[] {0.9, 0.9, 0.9});
+  private final LiveOdometry liveOdometry;
+  private final double[] distances = new double[4];
+  private final double[] angles = new double[4];
+  private long sequence = 0;
+
+  LiveOdometryTest() {
+    for (int i = 0; i < 4; i++) {
+      moduleIOs[i] = new DrivingModuleIO();
+      modules[i] = new Module(moduleIOs[i], i);
+    }
+    liveOdometry = new LiveOdometry(modules, moduleTranslations);
+  }
+
+  @Test
+  void livePoseIncludesSamplesWithheldForTheGyro() {
+    // The gyro lags two samples behind the modules, so the fusion withholds them
+    for (int i = 0; i < 5; i++) {
+      sample();
+    }
+    runMainLoop(3);
+    assertEquals(3, fusion.getLastEmittedSequence());
+
+    // The live pose replays the withheld samples onto the anchor
+    sample();
+    double[] livePose = new double[3];
+    liveOdometry.getPose(livePose);
+    assertEquals(getPositionRad(getTimestamp(sequence)) * wheelRadiusMeters, livePose[0], 1e-9);
+
+    // Once the gyro catches up, the estimate matches the live pose
+    runMainLoop(6);
+    double[] estimatedPose = new double[3];
+    estimator.getEstimatedPose(estimatedPose);
+    assertEquals(estimatedPose[0], livePose[0], 1e-9);
+    assertEquals(estimatedPose[1], livePose[1], 1e-9);
+    assertEquals(estimatedPose[2], livePose[2], 1e-9);
+  }
+
+  /** Takes one sample on the "odometry thread". */
+  private void sample() {
+    sequence++;
+    double timestamp = getTimestamp(sequence);
+    for (var io : moduleIOs) {
+      io.addSample(timestamp, getPositionRad(timestamp));
+    }
+    liveOdometry.onSample(sequence, timestamp);
+  }
+
+  /** Runs the odometry part of a main loop cycle, like {@link Drive#periodic()}. */
+  private void runMainLoop(long gyroSequence) {
+    for (int i = 0; i < 4; i++) {
+      modules[i].periodic();
+      fusion.addModuleSamples(
+          i,
+          modules[i].getOdometryTimestamps(),
+          modules[i].getOdometryDrivePositionsMeters(),
+          modules[i].getOdometryTurnPositionsRad(),
+          modules[i].getOdometryTimestamps().length);
+    }
+    double[] timestamps = modules[0].getOdometryTimestamps();
+    fusion.addSampleSequences(timestamps, timestamps.length, sequence);
+    double[] gyroTimestamps = new double[(int) gyroSequence];
+    for (int i = 0; i < gyroSequence; i++) {
+      gyroTimestamps[i] = getTimestamp(i + 1);
+    }
+    fusion.addGyroSamples(gyroTimestamps, new double[(int) gyroSequence]);
+
+    int sampleCount = fusion.process(true);
+    for (int i = 0; i < sampleCount; i++) {
+      for (int module = 0; module < 4; module++) {
+        distances[module] = fusion.getModuleDistanceMeters(module, i);
+        angles[module] = fusion.getModuleAngleRad(module, i);
+      }
+      estimator.update(fusion.getTimestamp(i), fusion.getGyroYawRad(i), distances, angles);
+    }
+    double[] anchorPose = new double[3];
+    estimator.getEstimatedPose(anchorPose);
+    liveOdometry.setAnchor(fusion.getLastEmittedSequence(), anchorPose);
+  }
+
+  private static double getTimestamp(long sequence) {
+    return sequence * samplePeriodSecs;
+  }
+
+  /** Returns the drive position, which starts at zero on the first sample. */
+  private static double getPositionRad(double timestamp) {
+    return (timestamp - samplePeriodSecs) * speedMetersPerSec / wheelRadiusMeters;
+  }
+}
@@ -0,0 +1,90 @@
+package frc.robot.subsystems.drive;
+
+import static frc.robot.util.SparkUtil.ifOk;
+import static frc.robot.util.SparkUtil.sparkStickyFault;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.revrobotics.RelativeEncoder;
+import com.revrobotics.spark.SparkLowLevel.MotorType;
+import com.revrobotics.spark.SparkMax;
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.math.geometry.Rotation2d;
+import frc.robot.util.Benchmarks;
+import java.util.function.DoubleSupplier;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Times the batched Spark status read in ModuleIOSpark against the SparkUtil.ifOk reads it
+ * replaced, on simulated Sparks. Run with gradlew benchmark.
+ */
+@Tag("benchmark")
+class ModuleIOSparkReadBenchmark {
+  private static SparkMax driveSpark;
+  private static SparkMax turnSpark;
+  private static RelativeEncoder driveEncoder;
+  private static RelativeEncoder turnEncoder;
+
+  @BeforeAll
+  static void createSparks() {
+    assertTrue(HAL.initialize(500, 0));
+    driveSpark = new SparkMax(41, MotorType.kBrushless);
+    turnSpark = new SparkMax(42, MotorType.kBrushless);
+    driveEncoder = driveSpark.getEncoder();
+    turnEncoder = turnSpark.getEncoder();
+  }
+
+  @AfterAll
+  static void closeSparks() {
+    driveSpark.close();
+    turnSpark.close();
+    sparkStickyFault = false;
+  }
+
+  @Test
+  void moduleStatusReads() {
+    ModuleIOInputsAutoLogged inputs = new ModuleIOInputsAutoLogged();
+    Rotation2d zeroRotation = Rotation2d.kZero;
+    double[] driveValues = new double[5];
+    double[] turnValues = new double[5];
+    Benchmarks.compare(
+        "Module status reads",
+        () -> {
+          // The reads ModuleIOSpark.updateInputs made before they were batched
+          sparkStickyFault = false;
+          ifOk(driveSpark, driveEncoder::getPosition, (value) -> inputs.drivePositionRad = value);
+          ifOk(
+              driveSpark,
+              driveEncoder::getVelocity,
+              (value) -> inputs.driveVelocityRadPerSec = value);
+          ifOk(
+              driveSpark,
+              new DoubleSupplier[] {driveSpark::getAppliedOutput, driveSpark::getBusVoltage},
+              (values) -> inputs.driveAppliedVolts = values[0] * values[1]);
+          ifOk(
+              driveSpark, driveSpark::getOutputCurrent, (value) -> inputs.driveCurrentAmps = value);
+          inputs.driveConnected = !sparkStickyFault;
+          sparkStickyFault = false;
+          ifOk(
+              turnSpark,
+              turnEncoder::getPosition,
+              (value) -> inputs.turnPosition = new Rotation2d(value).minus(zeroRotation));
+          ifOk(
+              turnSpark, turnEncoder::getVelocity, (value) -> inputs.turnVelocityRadPerSec = value);
+          ifOk(
+              turnSpark,
+              new DoubleSupplier[] {turnSpark::getAppliedOutput, turnSpark::getBusVoltage},
+              (values) -> inputs.turnAppliedVolts = values[0] * values[1]);
+          ifOk(turnSpark, turnSpark::getOutputCurrent, (value) -> inputs.turnCurrentAmps = value);
+          inputs.turnConnected = !sparkStickyFault;
+          return inputs.driveAppliedVolts + inputs.turnPosition.getRadians();
+        },
+        () -> {
+          inputs.driveConnected = ModuleIOSpark.readStatus(driveSpark, driveEncoder, driveValues);
+          inputs.turnConnected = ModuleIOSpark.readStatus(turnSpark, turnEncoder, turnValues);
+          return driveValues[ModuleIOSpark.currentIndex] + turnValues[ModuleIOSpark.positionIndex];
+        });
+  }
+}
@@ -0,0 +1,45 @@
+package frc.robot.subsystems.drive;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.revrobotics.sim.SparkMaxSim;
+import com.revrobotics.spark.SparkLowLevel.MotorType;
+import com.revrobotics.spark.SparkMax;
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.math.system.plant.DCMotor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+class ModuleIOSparkTest {
+  private final SparkMax spark = new SparkMax(40, MotorType.kBrushless);
+  private final SparkMaxSim sparkSim = new SparkMaxSim(spark, DCMotor.getNEO(1));
+  private final double[] values = new double[5];
+
+  @BeforeAll
+  static void initializeHal() {
+    assertTrue(HAL.initialize(500, 0));
+  }
+
+  @AfterEach
+  void closeSpark() {
+    spark.close();
+  }
+
+  @Test
+  void readStatusReadsEveryValue() {
+    sparkSim.getRelativeEncoderSim().setPosition(3.0);
+    sparkSim.getRelativeEncoderSim().setVelocity(-2.0);
+    sparkSim.setAppliedOutput(0.5);
+    sparkSim.setBusVoltage(12.0);
+    sparkSim.setMotorCurrent(7.0);
+
+    assertTrue(ModuleIOSpark.readStatus(spark, spark.getEncoder(), values));
+    assertEquals(3.0, values[ModuleIOSpark.positionIndex], 1e-6);
+    assertEquals(-2.0, values[ModuleIOSpark.velocityIndex], 1e-6);
+    assertEquals(0.5, values[ModuleIOSpark.appliedOutputIndex], 1e-6);
+    assertEquals(12.0, values[ModuleIOSpark.busVoltageIndex], 1e-6);
+    assertEquals(7.0, values[ModuleIOSpark.currentIndex], 1e-6);
+  }
+}
@@ -0,0 +1,97 @@
+package frc.robot.subsystems.drive;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class OdometryFusionTest {
+  private final OdometryFusion fusion = new OdometryFusion();
+
+  @Test
+  void mergesModuleTimestampsInOrder() {
+    addModuleSamples(0, 0.01, 0.03);
+    for (int module = 1; module < 4; module++) {
+      addModuleSamples(module, 0.02, 0.03);
+    }
+
+    assertEquals(3, fusion.process(false));
+    assertEquals(0.01, fusion.getTimestamp(0), 1e-9);
+    assertEquals(0.02, fusion.getTimestamp(1), 1e-9);
+    assertEquals(0.03, fusion.getTimestamp(2), 1e-9);
+
+    // Sources are interpolated onto the merged timeline, holding before their first sample
+    assertEquals(getDistance(0.02), fusion.getModuleDistanceMeters(0, 1), 1e-9);
+    assertEquals(getDistance(0.02), fusion.getModuleDistanceMeters(1, 0), 1e-9);
+    assertFalse(fusion.hasGyroYaw(0));
+  }
+
+  @Test
+  void withholdsSamplesUntilGyroCatchesUp() {
+    double[] timestamps = {0.01, 0.02, 0.03, 0.04, 0.05};
+    addAllModuleSamples(timestamps);
+    fusion.addSampleSequences(timestamps, timestamps.length, 5);
+    fusion.addGyroSamples(new double[] {0.01, 0.03}, new double[] {0.0, 0.2});
+
+    assertEquals(3, fusion.process(true));
+    assertEquals(0.03, fusion.getTimestamp(2), 1e-9);
+    assertEquals(0.1, fusion.getGyroYawRad(1), 1e-9);
+    assertEquals(3, fusion.getLastEmittedSequence());
+
+    // The withheld samples are emitted once the gyro reports them, without repeating others
+    fusion.addGyroSamples(new double[] {0.05}, new double[] {0.4});
+    assertEquals(2, fusion.process(true));
+    assertEquals(0.04, fusion.getTimestamp(0), 1e-9);
+    assertEquals(0.3, fusion.getGyroYawRad(0), 1e-9);
+    assertEquals(getDistance(0.05), fusion.getModuleDistanceMeters(3, 1), 1e-9);
+    assertEquals(5, fusion.getLastEmittedSequence());
+  }
+
+  @Test
+  void staleGyroStopsHoldingBackTimeline() {
+    fusion.addGyroSamples(new double[] {0.01}, new double[] {0.0});
+    double[] timestamps = new double[20];
+    for (int i = 0; i < timestamps.length; i++) {
+      timestamps[i] = (i + 1) * 0.01;
+    }
+    addAllModuleSamples(timestamps);
+
+    assertEquals(20, fusion.process(true));
+    assertTrue(Double.isNaN(fusion.getGyroYawRad(19)));
+  }
+
+  @Test
+  void interpolatesAnglesAcrossPi() {
+    addModuleSamples(0, 0.01, 0.02, 0.03);
+    double[] timestamps = {0.01, 0.03};
+    double[] angles = {Math.PI - 0.1, -Math.PI + 0.1};
+    for (int module = 1; module < 4; module++) {
+      fusion.addModuleSamples(module, timestamps, new double[2], angles, 2);
+    }
+
+    // Halfway between the samples is a half turn, not back through zero
+    assertEquals(3, fusion.process(false));
+    assertEquals(Math.PI, fusion.getModuleAngleRad(1, 1), 1e-9);
+  }
+
+  private void addAllModuleSamples(double[] timestamps) {
+    for (int module = 0; module < 4; module++) {
+      addModuleSamples(module, timestamps);
+    }
+  }
+
+  private void addModuleSamples(int module, double... timestamps) {
+    double[] distances = new double[timestamps.length];
+    for (int i = 0; i < timestamps.length; i++) {
+      distances[i] = getDistance(timestamps[i]);
+    }
+    fusion.addModuleSamples(
+        module, timestamps, distances, new double[timestamps.length], timestamps.length);
+  }
+
+  /** Returns the drive distance at a timestamp, driving at 10 meters per second. */
+  private static double getDistance(double timestamp) {
+    return timestamp * 10.0;
+  }
+}
@@ -0,0 +1,79 @@
+package frc.robot.subsystems.drive;
+
+import static frc.robot.subsystems.drive.DriveConstants.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class SlipDetectorTest {
+  private final DriveKinematics kinematics = new DriveKinematics(moduleTranslations);
+  private final SlipDetector detector = new SlipDetector(kinematics);
+  private final double[] priorWeights = {1.0, 1.0, 1.0, 1.0};
+  private final double[] weights = new double[4];
+  private final double[] angles = new double[4];
+
+  @Test
+  void agreeingModulesKeepTheirPriors() {
+    double[] deltas = {0.01, 0.01, 0.01, 0.01};
+    int excluded = detector.computeWeights(deltas, angles, 0.0, priorWeights, weights);
+    assertEquals(0, excluded);
+    for (int i = 0; i < 4; i++) {
+      assertEquals(1.0, weights[i], 1e-9);
+    }
+  }
+
+  @Test
+  void slippingModuleIsDownWeighted() {
+    double[] deltas = {0.015, 0.01, 0.01, 0.01};
+    detector.computeWeights(deltas, angles, 0.0, priorWeights, weights);
+    assertTrue(weights[0] < 0.5, "Slipping module weight " + weights[0]);
+    for (int i = 1; i < 4; i++) {
+      assertTrue(weights[0] < weights[i]);
+    }
+  }
+
+  @Test
+  void currentWeightDropsTowardTractionLimit() {
+    assertEquals(1.0, SlipDetector.getCurrentWeight(0.0), 1e-9);
+    assertEquals(
+        1.0, SlipDetector.getCurrentWeight(slipCurrentOnsetFraction * wheelTractionCurrentAmps));
+    assertEquals(
+        slipMinCurrentWeight, SlipDetector.getCurrentWeight(-wheelTractionCurrentAmps), 1e-9);
+    assertEquals(
+        slipMinCurrentWeight, SlipDetector.getCurrentWeight(2.0 * wheelTractionCurrentAmps), 1e-9);
+  }
+
+  @Test
+  void slipAwareEstimateIgnoresSlippingWheel() {
+    DrivePoseEstimator plain = createEstimator(false);
+    DrivePoseEstimator slipAware = createEstimator(true);
+    double[] distances = new double[4];
+    for (int sample = 1; sample <= 100; sample++) {
+      distances[0] += 0.015;
+      for (int i = 1; i < 4; i++) {
+        distances[i] += 0.01;
+      }
+      plain.update(sample * 0.01, 0.0, distances, angles);
+      slipAware.update(sample * 0.01, 0.0, distances, angles);
+    }
+
+    // The other three modules drove 1 meter
+    double[] pose = new double[3];
+    plain.getEstimatedPose(pose);
+    double plainError = Math.abs(pose[0] - 1.0);
+    slipAware.getEstimatedPose(pose);
+    double slipAwareError = Math.abs(pose[0] - 1.0);
+    assertTrue(
+        slipAwareError < plainError / 2.0,
+        "Slip-aware error " + slipAwareError + ", plain error " + plainError);
+  }
+
+  private static DrivePoseEstimator createEstimator(boolean slipAware) {
+    DrivePoseEstimator estimator =
+        new DrivePoseEstimator(
+            moduleTranslations, 100.0, new double[] {0.1, 0.1, 0.1}, new double[] {0.9, 0.9, 0.9});
+    estimator.setSlipAware(slipAware);
+    return estimator;
+  }
+}
@@ -0,0 +1,79 @@
+package frc.robot.subsystems.drive;
+
+import static frc.robot.subsystems.drive.DriveConstants.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.wpilibj.simulation.SimHooks;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class TurnDriftMonitorTest {
+  private static final double drift = 2.0 * turnDriftReseedThresholdRad;
+
+  private TurnDriftMonitor monitor;
+
+  @BeforeEach
+  void pauseTiming() {
+    assertTrue(HAL.initialize(500, 0));
+    SimHooks.pauseTiming();
+    monitor = new TurnDriftMonitor();
+  }
+
+  @AfterEach
+  void resumeTiming() {
+    SimHooks.resumeTiming();
+  }
+
+  @Test
+  void reseedsOnceStationary() {
+    assertTrue(Double.isNaN(monitor.update(1.0 + drift, 0.0, 0.0, 1.0)));
+    assertEquals(drift, monitor.getDriftRad(), 1e-9);
+    SimHooks.stepTiming(turnDriftStationarySecs / 2.0);
+    assertTrue(Double.isNaN(monitor.update(1.0 + drift, 0.0, 0.0, 1.0)));
+    SimHooks.stepTiming(turnDriftStationarySecs);
+    assertEquals(1.0, monitor.update(1.0 + drift, 0.0, 0.0, 1.0), 1e-9);
+  }
+
+  @Test
+  void keepsWindingWhenReseeding() {
+    // Two full turns of winding on the motor encoder, the absolute encoder wraps
+    double position = 4.0 * Math.PI + 0.5 + drift;
+    monitor.update(position, 0.0, 0.0, 0.5);
+    SimHooks.stepTiming(2.0 * turnDriftStationarySecs);
+    assertEquals(4.0 * Math.PI + 0.5, monitor.update(position, 0.0, 0.0, 0.5), 1e-9);
+    assertEquals(drift, monitor.getDriftRad(), 1e-9);
+  }
+
+  @Test
+  void ignoresDriftWhileMoving() {
+    monitor.update(1.0 + drift, 0.0, 0.0, 1.0);
+    SimHooks.stepTiming(2.0 * turnDriftStationarySecs);
+    double driveVelocity = 2.0 * turnDriftStationaryDriveVelocityRadPerSec;
+    assertTrue(Double.isNaN(monitor.update(1.0 + drift, 0.0, driveVelocity, 1.0)));
+    double turnVelocity = 2.0 * turnDriftStationaryTurnVelocityRadPerSec;
+    assertTrue(Double.isNaN(monitor.update(1.0 + drift, turnVelocity, 0.0, 1.0)));
+
+    // Moving restarts the wait
+    assertTrue(Double.isNaN(monitor.update(1.0 + drift, 0.0, 0.0, 1.0)));
+  }
+
+  @Test
+  void ignoresDriftWithinThreshold() {
+    double smallDrift = turnDriftReseedThresholdRad / 2.0;
+    monitor.update(1.0 + smallDrift, 0.0, 0.0, 1.0);
+    SimHooks.stepTiming(2.0 * turnDriftStationarySecs);
+    assertTrue(Double.isNaN(monitor.update(1.0 + smallDrift, 0.0, 0.0, 1.0)));
+    assertEquals(smallDrift, monitor.getDriftRad(), 1e-9);
+  }
+
+  @Test
+  void keepsLastDriftWhenAbsoluteFails() {
+    monitor.update(1.0 + drift, 0.0, 0.0, 1.0);
+    SimHooks.stepTiming(2.0 * turnDriftStationarySecs);
+    assertTrue(Double.isNaN(monitor.update(5.0, 0.0, 0.0, Double.NaN)));
+    assertEquals(drift, monitor.getDriftRad(), 1e-9);
+  }
+}
@@ -0,0 +1,31 @@
+package frc.robot.util;
+
+import java.lang.management.ManagementFactory;
+
+/** Measures the bytes the current thread allocates while running code, for allocation tests. */
+public final class Allocations {
+  /** Total bytes below which a measured loop counts as allocation free. */
+  public static final long toleranceBytes = 1024;
+
+  private static final com.sun.management.ThreadMXBean threadBean =
+      (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+  private Allocations() {}
+
+  /**
+   * Runs the task repeatedly to warm it up, then returns the bytes allocated over the specified
+   * number of further runs. Any allocation per run adds up to far more than {@link
+   * #toleranceBytes}.
+   */
+  public static long measure(Runnable task, int iterations) {
+    for (int i = 0; i < iterations; i++) {
+      task.run();
+    }
+    long threadId = Thread.currentThread().getId();
+    long start = threadBean.getThreadAllocatedBytes(threadId);
+    for (int i = 0; i < iterations; i++) {
+      task.run();
+    }
+    return threadBean.getThreadAllocatedBytes(threadId) - start;
+  }
+}
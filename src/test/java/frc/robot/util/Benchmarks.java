@@ -0,0 +1,45 @@
+package frc.robot.util;
+
+import java.util.function.DoubleSupplier;
+
+/** Times code against the code it replaced, for the tests tagged "benchmark". */
+public final class Benchmarks {
+  private static final int warmupRuns = 200_000;
+  private static final int rounds = 10;
+  private static final int runsPerRound = 200_000;
+
+  /** Accumulates results so the JIT can't remove the timed code. */
+  private static double sink = 0.0;
+
+  private Benchmarks() {}
+
+  /**
+   * Warms the task up, then returns its fastest average nanoseconds per run over several rounds.
+   * The task returns a value that depends on its work so that the work isn't optimized away.
+   */
+  public static double measureNanos(DoubleSupplier task) {
+    for (int i = 0; i < warmupRuns; i++) {
+      sink += task.getAsDouble();
+    }
+    double bestNanos = Double.POSITIVE_INFINITY;
+    for (int round = 0; round < rounds; round++) {
+      long start = System.nanoTime();
+      for (int i = 0; i < runsPerRound; i++) {
+        sink += task.getAsDouble();
+      }
+      bestNanos = Math.min(bestNanos, (double) (System.nanoTime() - start) / runsPerRound);
+    }
+    return bestNanos;
+  }
+
+  /** Times both tasks, prints the comparison and returns the speedup of the current task. */
+  public static double compare(String name, DoubleSupplier baseline, DoubleSupplier current) {
+    double baselineNanos = measureNanos(baseline);
+    double currentNanos = measureNanos(current);
+    double speedup = baselineNanos / currentNanos;
+    System.out.printf(
+        "%s: baseline %.1f ns, current %.1f ns, %.2fx (sink %.3g)%n",
+        name, baselineNanos, currentNanos, speedup, sink);
+    return speedup;
+  }
+}
@@ -0,0 +1,61 @@
+package frc.robot.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class CanBusPlannerTest {
+  private final CanBusPlanner planner = new CanBusPlanner();
+
+  @Test
+  void grantsDesiredRatesUnderBudget() {
+    CanBusPlanner.Signal[] signals = new CanBusPlanner.Signal[4];
+    for (int i = 0; i < signals.length; i++) {
+      signals[i] = planner.request("Signal" + i, 50.0, 100.0);
+    }
+    planner.addFixedLoad("Setpoints", 100.0);
+    int[] applied = {0};
+    planner.addApplier(() -> applied[0]++);
+    planner.planAndApply();
+
+    for (var signal : signals) {
+      assertEquals(10, signal.getAssignedPeriodMs());
+    }
+    assertEquals(1, applied[0]);
+    double expectedFrames = 100.0 + signals.length * 100.0;
+    assertEquals(
+        expectedFrames * CanBusPlanner.bitsPerFrame / CanBusPlanner.bitRate,
+        planner.getExpectedUtilization(),
+        1e-9);
+  }
+
+  @Test
+  void sharesRemainingBudgetAcrossDesiredRates() {
+    double budgetHz =
+        CanBusPlanner.utilizationBudget * CanBusPlanner.bitRate / CanBusPlanner.bitsPerFrame;
+    planner.addFixedLoad("Setpoints", budgetHz - 1010.0);
+    CanBusPlanner.Signal[] signals = new CanBusPlanner.Signal[10];
+    for (int i = 0; i < signals.length; i++) {
+      signals[i] = planner.request("Signal" + i, 50.0, 500.0);
+    }
+    CanBusPlanner.Signal fixed = planner.request("Fixed", 10.0, 5.0);
+    planner.planAndApply();
+
+    // 510 Hz of the 1010 Hz left is required, the other 500 Hz covers 1/9 of the gap to desired
+    double shareHz = 50.0 + (500.0 - 50.0) / 9.0;
+    for (var signal : signals) {
+      assertTrue(signal.getAssignedHz() >= shareHz - 1e-9, "Assigned " + signal.getAssignedHz());
+      assertTrue(signal.getAssignedHz() < 500.0, "Assigned " + signal.getAssignedHz());
+    }
+    assertEquals(100, fixed.getAssignedPeriodMs());
+  }
+
+  @Test
+  void keepsRequiredRatesOverBudget() {
+    planner.addFixedLoad("Setpoints", 10000.0);
+    CanBusPlanner.Signal signal = planner.request("Signal", 50.0, 200.0);
+    planner.planAndApply();
+    assertEquals(20, signal.getAssignedPeriodMs());
+  }
+}
@@ -0,0 +1,63 @@
+package frc.robot.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.wpilibj.simulation.SimHooks;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class CoalescingWriterTest {
+  private final CoalescingWriter writer = new CoalescingWriter("Test");
+
+  @BeforeEach
+  void pauseTiming() {
+    assertTrue(HAL.initialize(500, 0));
+    SimHooks.pauseTiming();
+  }
+
+  @AfterEach
+  void resumeTiming() {
+    SimHooks.resumeTiming();
+  }
+
+  @Test
+  void suppressesRepeatsWithinDeadband() {
+    assertTrue(writer.shouldWrite(0, 1.0, 0.1));
+    assertFalse(writer.shouldWrite(0, 1.0, 0.1));
+    assertFalse(writer.shouldWrite(0, 1.05, 0.1));
+    assertTrue(writer.shouldWrite(0, 1.2, 0.1));
+    assertEquals(2, writer.getSuppressedCount());
+
+    // The deadband is measured from the last value sent, so slow drift still gets through
+    assertFalse(writer.shouldWrite(0, 1.28, 0.1));
+    assertTrue(writer.shouldWrite(0, 1.31, 0.1));
+  }
+
+  @Test
+  void writesOnModeChange() {
+    assertTrue(writer.shouldWrite(0, 1.0, 0.1));
+    assertTrue(writer.shouldWrite(1, 1.0, 0.1));
+    assertFalse(writer.shouldWrite(1, 1.0, 0.1));
+  }
+
+  @Test
+  void resendsAfterKeepalive() {
+    assertTrue(writer.shouldWrite(0, 1.0, 0.0));
+    SimHooks.stepTiming(CoalescingWriter.keepaliveSecs / 2.0);
+    assertFalse(writer.shouldWrite(0, 1.0, 0.0));
+    SimHooks.stepTiming(CoalescingWriter.keepaliveSecs / 2.0);
+    assertTrue(writer.shouldWrite(0, 1.0, 0.0));
+  }
+
+  @Test
+  void invalidateForcesNextWrite() {
+    assertTrue(writer.shouldWrite(0, 1.0, 0.0));
+    writer.invalidate();
+    assertTrue(writer.shouldWrite(0, 1.0, 0.0));
+    assertFalse(writer.shouldWrite(0, 1.0, 0.0));
+  }
+}
@@ -0,0 +1,77 @@
+package frc.robot.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.wpi.first.hal.HAL;
+import java.io.File;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class DeviceConfiguratorTest {
+  @TempDir File tempDir;
+
+  @BeforeAll
+  static void initializeHal() {
+    assertTrue(HAL.initialize(500, 0));
+  }
+
+  @AfterEach
+  void clearStickyFault() {
+    SparkUtil.sparkStickyFault = false;
+  }
+
+  @Test
+  void persistsOnlyChangedConfigsPerCanId() {
+    File hashFile = new File(tempDir, DeviceConfigurator.hashFileName);
+    String hash = DeviceConfigurator.hash("config");
+    DeviceConfigurator first = new DeviceConfigurator(hashFile);
+    assertTrue(first.shouldPersist(DeviceConfigurator.getHashKey(1), hash));
+    first.markPersisted("Module0/Drive", DeviceConfigurator.getHashKey(1), hash);
+    first.awaitAll();
+
+    // After a reboot, only a changed config or a different CAN ID is persisted
+    DeviceConfigurator second = new DeviceConfigurator(hashFile);
+    assertFalse(second.shouldPersist(DeviceConfigurator.getHashKey(1), hash));
+    assertTrue(
+        second.shouldPersist(
+            DeviceConfigurator.getHashKey(1), DeviceConfigurator.hash("changed config")));
+    assertTrue(second.shouldPersist(DeviceConfigurator.getHashKey(2), hash));
+    second.awaitAll();
+  }
+
+  @Test
+  void withoutHashFileAlwaysPersists() {
+    DeviceConfigurator configurator = new DeviceConfigurator(null);
+    String hash = DeviceConfigurator.hash("config");
+    configurator.markPersisted("Module0/Drive", DeviceConfigurator.getHashKey(1), hash);
+    configurator.awaitAll();
+    assertTrue(new DeviceConfigurator(null).shouldPersist(DeviceConfigurator.getHashKey(1), hash));
+  }
+
+  @Test
+  void runsEveryTaskAndReportsFailures() {
+    DeviceConfigurator configurator = new DeviceConfigurator(null);
+    AtomicInteger runCount = new AtomicInteger();
+    for (int i = 0; i < 2 * DeviceConfigurator.threadCount; i++) {
+      configurator.submit("Device" + i, runCount::incrementAndGet);
+    }
+    assertTrue(configurator.awaitAll());
+    assertEquals(2 * DeviceConfigurator.threadCount, runCount.get());
+    assertFalse(SparkUtil.sparkStickyFault);
+
+    DeviceConfigurator failing = new DeviceConfigurator(null);
+    failing.submit("Good", () -> {});
+    failing.submit(
+        "Bad",
+        () -> {
+          throw new IllegalStateException("Device unreachable");
+        });
+    assertFalse(failing.awaitAll());
+    assertTrue(SparkUtil.sparkStickyFault);
+  }
+}
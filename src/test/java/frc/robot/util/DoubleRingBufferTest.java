@@ -0,0 +1,79 @@
+package frc.robot.util;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class DoubleRingBufferTest {
+  @Test
+  void roundsCapacityUpToPowerOfTwo() {
+    assertEquals(1, new DoubleRingBuffer(1).capacity());
+    assertEquals(8, new DoubleRingBuffer(5).capacity());
+    assertEquals(8, new DoubleRingBuffer(8).capacity());
+    assertThrows(IllegalArgumentException.class, () -> new DoubleRingBuffer(0));
+  }
+
+  @Test
+  void drainsInOrderAcrossWraparound() {
+    DoubleRingBuffer buffer = new DoubleRingBuffer(4);
+    double[] destination = new double[4];
+    double next = 0.0;
+    double expected = 0.0;
+    for (int cycle = 0; cycle < 10; cycle++) {
+      for (int i = 0; i < 3; i++) {
+        assertTrue(buffer.offer(next++));
+      }
+      assertEquals(3, buffer.drain(destination));
+      for (int i = 0; i < 3; i++) {
+        assertEquals(expected++, destination[i]);
+      }
+    }
+    assertEquals(30, buffer.getReadIndex());
+    assertEquals(0, buffer.size());
+  }
+
+  @Test
+  void dropsNewValuesWhenFull() {
+    DoubleRingBuffer buffer = new DoubleRingBuffer(2);
+    assertTrue(buffer.offer(1.0));
+    assertTrue(buffer.offer(2.0));
+    assertFalse(buffer.hasCapacity());
+    assertFalse(buffer.offer(3.0));
+    assertEquals(2.0, buffer.peekNewest());
+
+    assertArrayEquals(new double[] {1.0, 2.0}, buffer.drainExactly(2));
+    assertTrue(buffer.hasCapacity());
+  }
+
+  @Test
+  void drainRespectsLimits() {
+    DoubleRingBuffer buffer = new DoubleRingBuffer(8);
+    for (int i = 0; i < 5; i++) {
+      buffer.offer(i);
+    }
+    double[] destination = new double[4];
+    assertEquals(2, buffer.drain(destination, 1, 2));
+    assertArrayEquals(new double[] {0.0, 0.0, 1.0, 0.0}, destination);
+    assertEquals(3, buffer.size());
+
+    buffer.clear();
+    assertEquals(0, buffer.drain(destination));
+  }
+
+  @Test
+  void drainExactlyReturnsNewArrays() {
+    DoubleRingBuffer buffer = new DoubleRingBuffer(4);
+    buffer.offer(1.0);
+    double[] first = buffer.drainExactly(1);
+    buffer.offer(2.0);
+    double[] second = buffer.drainExactly(1);
+    assertNotSame(first, second);
+    assertEquals(1.0, first[0]);
+    assertTrue(Double.isNaN(new DoubleRingBuffer(1).peekNewest()));
+  }
+}
@@ -0,0 +1,48 @@
+package frc.robot.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+import org.littletonrobotics.junction.LogTable;
+
+class LogBudgetTest {
+  private static final double doubleEntryBytes = LogBudget.recordOverheadBytes + 8;
+
+  @Test
+  void reportsBytesPerSecByFolder() {
+    LogBudget budget = new LogBudget();
+
+    LogTable first = new LogTable(0);
+    first.put("Drive/Speed", 1.0);
+    first.put("Vision/Count", 2.0);
+    budget.putTable(first);
+
+    // Drive/Speed is unchanged, so only Vision/Count and the new output count
+    LogTable second = new LogTable(1_000_000);
+    second.put("Drive/Speed", 1.0);
+    second.put("Vision/Count", 3.0);
+    second.put("RealOutputs/Drive/Pose", new double[] {1.0, 2.0, 3.0});
+    budget.putTable(second);
+
+    double poseBytes = LogBudget.recordOverheadBytes + 3 * 8;
+    assertEquals(doubleEntryBytes + poseBytes, budget.getFolderBytesPerSec("Drive"), 1e-9);
+    assertEquals(2 * doubleEntryBytes, budget.getFolderBytesPerSec("Vision"), 1e-9);
+    assertEquals(3 * doubleEntryBytes, budget.getInputBytesPerSec(), 1e-9);
+    assertEquals(poseBytes, budget.getOutputBytesPerSec(), 1e-9);
+  }
+
+  @Test
+  void skipsUnchangedValues() {
+    LogBudget budget = new LogBudget();
+    for (int i = 0; i <= 10; i++) {
+      LogTable table = new LogTable(i * 100_000L);
+      table.put("Drive/Speed", 1.0);
+      table.put("Drive/Position", (double) i);
+      budget.putTable(table);
+    }
+
+    // Speed counts once and Position every cycle, over one second
+    assertEquals(12 * doubleEntryBytes, budget.getFolderBytesPerSec("Drive"), 1e-9);
+    assertEquals(0.0, budget.getFolderBytesPerSec("Vision"), 1e-9);
+  }
+}
@@ -0,0 +1,52 @@
+package frc.robot.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class ObjectRingBufferTest {
+  @Test
+  void roundsCapacityUpToPowerOfTwo() {
+    assertEquals(4, new ObjectRingBuffer<String>(3).capacity());
+    assertEquals(16, new ObjectRingBuffer<String>(16).capacity());
+    assertThrows(IllegalArgumentException.class, () -> new ObjectRingBuffer<String>(-1));
+  }
+
+  @Test
+  void pollsInOrderAcrossWraparound() {
+    ObjectRingBuffer<Integer> buffer = new ObjectRingBuffer<>(4);
+    int next = 0;
+    int expected = 0;
+    for (int cycle = 0; cycle < 10; cycle++) {
+      for (int i = 0; i < 3; i++) {
+        assertTrue(buffer.offer(next++));
+      }
+      assertEquals(expected, buffer.peek());
+      for (int i = 0; i < 3; i++) {
+        assertEquals(expected++, buffer.poll());
+      }
+      assertNull(buffer.poll());
+    }
+  }
+
+  @Test
+  void dropsNewElementsWhenFull() {
+    ObjectRingBuffer<String> buffer = new ObjectRingBuffer<>(2);
+    assertTrue(buffer.offer("a"));
+    assertTrue(buffer.offer("b"));
+    assertFalse(buffer.hasCapacity());
+    assertFalse(buffer.offer("c"));
+    assertEquals(1, buffer.getDroppedCount());
+    assertEquals(2, buffer.size());
+
+    assertEquals("a", buffer.poll());
+    assertTrue(buffer.offer("d"));
+    assertEquals("b", buffer.poll());
+    assertEquals("d", buffer.poll());
+    assertEquals(0, buffer.size());
+  }
+}
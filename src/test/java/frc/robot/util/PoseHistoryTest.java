@@ -0,0 +1,86 @@
+package frc.robot.util;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class PoseHistoryTest {
+  private final double[] pose = new double[3];
+
+  @Test
+  void emptyHistoryWritesNothing() {
+    PoseHistory history = new PoseHistory(1.0, 8);
+    assertTrue(history.isEmpty());
+    assertFalse(history.sample(0.0, pose));
+    assertTrue(Double.isNaN(history.getOldestTimestamp()));
+  }
+
+  @Test
+  void interpolatesBetweenSamples() {
+    PoseHistory history = new PoseHistory(1.0, 8);
+    history.add(0.0, new double[] {0.0, 0.0, 0.0});
+    history.add(0.1, new double[] {1.0, 0.0, 0.0});
+    history.add(0.2, new double[] {1.0, 2.0, 0.0});
+
+    assertTrue(history.sample(0.05, pose));
+    assertArrayEquals(new double[] {0.5, 0.0, 0.0}, pose, 1e-9);
+    history.sample(0.15, pose);
+    assertArrayEquals(new double[] {1.0, 1.0, 0.0}, pose, 1e-9);
+
+    // Exactly on a sample
+    history.sample(0.1, pose);
+    assertArrayEquals(new double[] {1.0, 0.0, 0.0}, pose, 1e-9);
+  }
+
+  @Test
+  void clampsOutsideTheHistory() {
+    PoseHistory history = new PoseHistory(1.0, 8);
+    history.add(1.0, new double[] {1.0, 0.0, 0.0});
+    history.add(2.0, new double[] {2.0, 0.0, 0.0});
+
+    history.sample(0.0, pose);
+    assertArrayEquals(new double[] {1.0, 0.0, 0.0}, pose, 1e-9);
+    history.sample(1.0, pose);
+    assertArrayEquals(new double[] {1.0, 0.0, 0.0}, pose, 1e-9);
+    history.sample(2.0, pose);
+    assertArrayEquals(new double[] {2.0, 0.0, 0.0}, pose, 1e-9);
+    history.sample(3.0, pose);
+    assertArrayEquals(new double[] {2.0, 0.0, 0.0}, pose, 1e-9);
+  }
+
+  @Test
+  void dropsOldSamplesAndIgnoresOutOfOrder() {
+    PoseHistory history = new PoseHistory(0.25, 4);
+    for (int i = 0; i < 10; i++) {
+      history.add(i * 0.1, new double[] {i, 0.0, 0.0});
+    }
+    assertEquals(3, history.size());
+    assertEquals(0.7, history.getOldestTimestamp(), 1e-9);
+    assertEquals(0.9, history.getNewestTimestamp(), 1e-9);
+
+    history.add(0.85, new double[] {100.0, 0.0, 0.0});
+    assertEquals(3, history.size());
+    history.sample(0.85, pose);
+    assertArrayEquals(new double[] {8.5, 0.0, 0.0}, pose, 1e-9);
+  }
+
+  @Test
+  void dropsOldestSampleAtCapacity() {
+    PoseHistory history = new PoseHistory(10.0, 4);
+    for (int i = 0; i < 6; i++) {
+      history.add(i, new double[] {i, 0.0, 0.0});
+    }
+    assertEquals(4, history.size());
+    assertEquals(2.0, history.getOldestTimestamp(), 1e-9);
+
+    // The wrapped samples still interpolate in order
+    history.sample(4.5, pose);
+    assertArrayEquals(new double[] {4.5, 0.0, 0.0}, pose, 1e-9);
+
+    history.clear();
+    assertTrue(history.isEmpty());
+  }
+}
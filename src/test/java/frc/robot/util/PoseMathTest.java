@@ -0,0 +1,75 @@
+package frc.robot.util;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Twist2d;
+import org.junit.jupiter.api.Test;
+
+class PoseMathTest {
+  private final Pose2d start = new Pose2d(1.0, 2.0, Rotation2d.fromDegrees(30.0));
+  private final Pose2d end = new Pose2d(2.5, 1.0, Rotation2d.fromDegrees(-120.0));
+
+  @Test
+  void expMatchesPose2d() {
+    Twist2d twist = new Twist2d(0.3, -0.2, 0.8);
+    double[] output = new double[3];
+    PoseMath.exp(toArray(start), new double[] {twist.dx, twist.dy, twist.dtheta}, output);
+    assertPose(start.exp(twist), output);
+
+    // Straight line, which uses the series expansion
+    PoseMath.exp(toArray(start), 1.0, 0.0, 0.0, output);
+    assertPose(start.exp(new Twist2d(1.0, 0.0, 0.0)), output);
+  }
+
+  @Test
+  void logMatchesPose2d() {
+    Twist2d twist = start.log(end);
+    double[] output = new double[3];
+    PoseMath.log(toArray(start), toArray(end), output);
+    assertArrayEquals(new double[] {twist.dx, twist.dy, twist.dtheta}, output, 1e-9);
+  }
+
+  @Test
+  void interpolateMatchesPose2d() {
+    double[] output = new double[3];
+    for (double fraction : new double[] {0.25, 0.5, 0.75}) {
+      PoseMath.interpolate(toArray(start), toArray(end), fraction, output);
+      assertPose(start.interpolate(end, fraction), output);
+    }
+  }
+
+  @Test
+  void interpolateClampsAtTheEnds() {
+    double[] output = new double[3];
+    PoseMath.interpolate(toArray(start), toArray(end), -0.5, output);
+    assertPose(start, output);
+    PoseMath.interpolate(toArray(start), toArray(end), 0.0, output);
+    assertPose(start, output);
+    PoseMath.interpolate(toArray(start), toArray(end), 1.0, output);
+    assertPose(end, output);
+    PoseMath.interpolate(toArray(start), toArray(end), 1.5, output);
+    assertPose(end, output);
+  }
+
+  @Test
+  void interpolateTakesShortestTurnAcrossPi() {
+    double[] before = {0.0, 0.0, Math.PI - 0.1};
+    double[] after = {0.0, 0.0, -Math.PI + 0.1};
+    double[] output = new double[3];
+    PoseMath.interpolate(before, after, 0.5, output);
+    assertEquals(Math.PI, Math.abs(output[2]), 1e-9);
+  }
+
+  private static double[] toArray(Pose2d pose) {
+    return new double[] {pose.getX(), pose.getY(), pose.getRotation().getRadians()};
+  }
+
+  private static void assertPose(Pose2d expected, double[] actual) {
+    assertEquals(expected.getX(), actual[0], 1e-9);
+    assertEquals(expected.getY(), actual[1], 1e-9);
+    assertEquals(expected.getRotation().getRadians(), actual[2], 1e-9);
+  }
+}